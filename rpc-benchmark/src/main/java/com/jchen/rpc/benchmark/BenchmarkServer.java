@@ -0,0 +1,49 @@
+package com.jchen.rpc.benchmark;
+
+import com.jchen.rpc.annotation.ServiceScan;
+import com.jchen.rpc.enumeration.DispatchMode;
+import com.jchen.rpc.handler.RequestDispatcher;
+import com.jchen.rpc.registry.MemoryServiceRegistry;
+import com.jchen.rpc.transport.netty.TransportConfig;
+import com.jchen.rpc.transport.netty.server.NettyServer;
+
+/**
+ * 在独立线程中启动的压测服务端。
+ * 服务端通过调用栈最底层的类查找 @ServiceScan 注解，而JMH的工作线程并不是main线程，
+ * 因此由该线程类自身作为启动类，扫描压测用的服务实现。中断该线程即可关闭服务端。
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/06/10:40
+ */
+@ServiceScan("com.jchen.rpc.benchmark.service")
+public class BenchmarkServer extends Thread {
+
+    private final String host;
+    private final int port;
+    private final Integer serializer;
+    private final DispatchMode dispatchMode;
+    private final TransportConfig transportConfig;
+
+    public BenchmarkServer(String host, int port, Integer serializer) {
+        this(host, port, serializer, DispatchMode.EXECUTOR);
+    }
+
+    public BenchmarkServer(String host, int port, Integer serializer, DispatchMode dispatchMode) {
+        this(host, port, serializer, dispatchMode, new TransportConfig());
+    }
+
+    public BenchmarkServer(String host, int port, Integer serializer, DispatchMode dispatchMode, TransportConfig transportConfig) {
+        super("benchmark-server");
+        this.host = host;
+        this.port = port;
+        this.serializer = serializer;
+        this.dispatchMode = dispatchMode;
+        this.transportConfig = transportConfig;
+        setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        new NettyServer(host, port, serializer, new MemoryServiceRegistry(), new RequestDispatcher(dispatchMode), transportConfig).start();
+    }
+}
@@ -0,0 +1,71 @@
+package com.jchen.rpc.benchmark;
+
+import com.jchen.rpc.codec.CommonDecoder;
+import com.jchen.rpc.codec.CommonEncoder;
+import com.jchen.rpc.entity.RpcResponse;
+import com.jchen.rpc.serializer.CommonSerializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CommonEncoder与CommonDecoder在Netty pipeline中编解码一个完整MRF协议包的吞吐量，
+ * 使用EmbeddedChannel驱动，不经过真实的网络
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/06/11:20
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    @Param({"0", "1", "2", "3"})
+    private int serializerCode;
+
+    @Param({"64", "1024", "16384"})
+    private int payloadSize;
+
+    private EmbeddedChannel encodeChannel;
+    private EmbeddedChannel decodeChannel;
+    private RpcResponse<String> response;
+    //编码好的完整协议包，解码时每次使用它的一个副本
+    private ByteBuf frame;
+
+    @Setup
+    public void setup() {
+        CommonSerializer serializer = CommonSerializer.getByCode(serializerCode);
+        encodeChannel = new EmbeddedChannel(new CommonEncoder(serializer));
+        decodeChannel = new EmbeddedChannel(new CommonDecoder());
+        response = Payloads.response(payloadSize);
+        encodeChannel.writeOutbound(response);
+        frame = encodeChannel.readOutbound();
+    }
+
+    @TearDown
+    public void tearDown() {
+        frame.release();
+        encodeChannel.finishAndReleaseAll();
+        decodeChannel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public int encode() {
+        encodeChannel.writeOutbound(response);
+        ByteBuf out = encodeChannel.readOutbound();
+        int length = out.readableBytes();
+        out.release();
+        return length;
+    }
+
+    @Benchmark
+    public Object decode() {
+        decodeChannel.writeInbound(frame.retainedDuplicate());
+        return decodeChannel.readInbound();
+    }
+}
@@ -0,0 +1,148 @@
+package com.jchen.rpc.benchmark;
+
+import com.jchen.rpc.api.HelloObject;
+import com.jchen.rpc.benchmark.service.EchoService;
+import com.jchen.rpc.codec.BatchConfig;
+import com.jchen.rpc.enumeration.DispatchMode;
+import com.jchen.rpc.generator.SequenceRequestIdGenerator;
+import com.jchen.rpc.registry.MemoryServiceDiscovery;
+import com.jchen.rpc.transport.RpcClientProxy;
+import com.jchen.rpc.transport.netty.FlushConfig;
+import com.jchen.rpc.transport.netty.NettyTransport;
+import com.jchen.rpc.transport.netty.TransportConfig;
+import com.jchen.rpc.util.ThreadPoolFactory;
+import com.jchen.rpc.util.ThreadPoolMetrics;
+import com.jchen.rpc.transport.netty.client.ChannelSelectStrategy;
+import com.jchen.rpc.transport.netty.client.NettyClient;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在同一进程内通过回环地址启动NettyServer与NettyClient，测量一次完整远程调用的吞吐量与延迟分布(SampleTime模式给出p99)，
+ * 注册中心使用进程内的MemoryServiceRegistry。使用 -t 参数调整并发调用的线程数
+ * asyncFanOut用例通过异步接口一次发出FAN_OUT个调用再等待全部完成，模拟网关扇出的场景
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/06/11:45
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NettyRoundTripBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(NettyRoundTripBenchmark.class);
+    private static final String HOST = "127.0.0.1";
+    private static final int FAN_OUT = 16;
+
+    @Param({"0", "1", "2", "3"})
+    private int serializerCode;
+
+    @Param({"64", "1024", "16384"})
+    private int payloadSize;
+
+    //服务端在IO线程中直接执行请求，或交给业务线程池执行
+    @Param({"DIRECT", "EXECUTOR"})
+    private DispatchMode dispatchMode;
+
+    //客户端与服务端之间的连接数，配合 -t 使用，如 -p connections=4 -t 8
+    @Param({"1"})
+    private int connections;
+
+    @Param({"ROUND_ROBIN"})
+    private ChannelSelectStrategy selectStrategy;
+
+    //客户端批量发送时一个批量包最多合并的请求数，0表示不合并，配合asyncFanOut使用，如 -p batchSize=16
+    @Param({"0"})
+    private int batchSize;
+
+    //客户端与服务端是否合并flush，结束时在日志中输出客户端平均每次flush写出的数据包数
+    @Param({"true"})
+    private boolean consolidateFlush;
+
+    //客户端与服务端的IO实现，epoll不可用时退回NIO
+    @Param({"EPOLL", "NIO"})
+    private NettyTransport transport;
+
+    private BenchmarkServer server;
+    private NettyClient client;
+    private EchoService echoService;
+    private HelloObject payload;
+
+    @Setup
+    public void setup() throws Exception {
+        int port = freePort();
+        TransportConfig serverConfig = new TransportConfig()
+                .setTransport(transport)
+                .setFlushConfig(consolidateFlush ? new FlushConfig() : null);
+        server = new BenchmarkServer(HOST, port, serializerCode, dispatchMode, serverConfig);
+        server.start();
+        awaitServer(port);
+        TransportConfig clientConfig = new TransportConfig()
+                .setTransport(transport)
+                .setFlushConfig(consolidateFlush ? new FlushConfig() : null)
+                .setBatchConfig(batchSize > 0 ? new BatchConfig(batchSize, BatchConfig.DEFAULT_MAX_BATCH_BYTES, 0) : null);
+        client = new NettyClient(serializerCode, new MemoryServiceDiscovery(), new SequenceRequestIdGenerator(),
+                connections, selectStrategy, clientConfig);
+        echoService = new RpcClientProxy(client).getProxy(EchoService.class);
+        payload = Payloads.helloObject(payloadSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        logger.info("client flush: {}", client.getFlushMetrics());
+        //EXECUTOR模式下服务端业务线程池的线程数、队列长度、等待与执行时间
+        for (ThreadPoolMetrics metrics : ThreadPoolFactory.getAllMetrics().values()) {
+            logger.info("thread pool: {}", metrics);
+        }
+        client.close();
+        server.interrupt();
+    }
+
+    @Benchmark
+    public String roundTrip() {
+        return echoService.echo(payload);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FAN_OUT)
+    public void asyncFanOut() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[FAN_OUT];
+        for (int i = 0; i < FAN_OUT; i++) {
+            futures[i] = echoService.echoAsync(payload);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * 等待服务端完成端口绑定
+     */
+    private static void awaitServer(int port) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (System.currentTimeMillis() < deadline) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(HOST, port), 200);
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("压测服务端启动超时");
+    }
+}
@@ -0,0 +1,42 @@
+package com.jchen.rpc.benchmark;
+
+import com.jchen.rpc.api.HelloObject;
+import com.jchen.rpc.benchmark.service.EchoService;
+import com.jchen.rpc.entity.RpcRequest;
+import com.jchen.rpc.entity.RpcResponse;
+
+import java.util.Arrays;
+
+/**
+ * 构造指定负载大小的RpcRequest与RpcResponse，供各个压测用例共用
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/06/10:20
+ */
+public class Payloads {
+
+    private Payloads() {
+    }
+
+    /**
+     * 生成长度为size的消息内容
+     */
+    public static String message(int size) {
+        char[] chars = new char[size];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+
+    public static HelloObject helloObject(int size) {
+        return new HelloObject(size, message(size));
+    }
+
+    public static RpcRequest request(int size) {
+        return new RpcRequest(1L, EchoService.class.getName(), "echo",
+                new Object[]{helloObject(size)}, new Class<?>[]{HelloObject.class}, false);
+    }
+
+    public static RpcResponse<String> response(int size) {
+        return RpcResponse.success(message(size), 1L);
+    }
+}
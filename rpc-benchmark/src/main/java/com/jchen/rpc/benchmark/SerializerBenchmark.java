@@ -0,0 +1,106 @@
+package com.jchen.rpc.benchmark;
+
+import com.jchen.rpc.entity.RpcRequest;
+import com.jchen.rpc.entity.RpcResponse;
+import com.jchen.rpc.serializer.CommonSerializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各序列化器对不同大小的RpcRequest/RpcResponse进行序列化与反序列化的吞吐量
+ * 分别测量byte[]方式与编解码器实际使用的ByteBuf方式（池化的直接内存）
+ * 加上 -prof gc 参数可同时得到每次操作的内存分配量
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/06/11:02
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializerBenchmark {
+
+    //0:Kryo 1:Json 2:Hessian 3:Protobuf
+    @Param({"0", "1", "2", "3"})
+    private int serializerCode;
+
+    //消息内容的字节数
+    @Param({"64", "1024", "16384"})
+    private int payloadSize;
+
+    private CommonSerializer serializer;
+    private RpcRequest request;
+    private RpcResponse<String> response;
+    private byte[] requestBytes;
+    private byte[] responseBytes;
+    //ByteBuf方式序列化写入的缓冲区，每次写入前清空
+    private ByteBuf outBuffer;
+    private ByteBuf requestBuffer;
+    private ByteBuf responseBuffer;
+
+    @Setup
+    public void setup() {
+        serializer = CommonSerializer.getByCode(serializerCode);
+        request = Payloads.request(payloadSize);
+        response = Payloads.response(payloadSize);
+        requestBytes = serializer.serialize(request);
+        responseBytes = serializer.serialize(response);
+        outBuffer = PooledByteBufAllocator.DEFAULT.directBuffer(responseBytes.length + payloadSize);
+        requestBuffer = PooledByteBufAllocator.DEFAULT.directBuffer(requestBytes.length).writeBytes(requestBytes);
+        responseBuffer = PooledByteBufAllocator.DEFAULT.directBuffer(responseBytes.length).writeBytes(responseBytes);
+    }
+
+    @TearDown
+    public void tearDown() {
+        outBuffer.release();
+        requestBuffer.release();
+        responseBuffer.release();
+    }
+
+    @Benchmark
+    public byte[] serializeRequest() {
+        return serializer.serialize(request);
+    }
+
+    @Benchmark
+    public Object deserializeRequest() {
+        return serializer.deserialize(requestBytes, RpcRequest.class);
+    }
+
+    @Benchmark
+    public byte[] serializeResponse() {
+        return serializer.serialize(response);
+    }
+
+    @Benchmark
+    public Object deserializeResponse() {
+        return serializer.deserialize(responseBytes, RpcResponse.class);
+    }
+
+    @Benchmark
+    public int serializeRequestToByteBuf() {
+        serializer.serialize(request, outBuffer.clear());
+        return outBuffer.writerIndex();
+    }
+
+    @Benchmark
+    public Object deserializeRequestFromByteBuf() {
+        return serializer.deserialize(requestBuffer.duplicate(), RpcRequest.class);
+    }
+
+    @Benchmark
+    public int serializeResponseToByteBuf() {
+        serializer.serialize(response, outBuffer.clear());
+        return outBuffer.writerIndex();
+    }
+
+    @Benchmark
+    public Object deserializeResponseFromByteBuf() {
+        return serializer.deserialize(responseBuffer.duplicate(), RpcResponse.class);
+    }
+}
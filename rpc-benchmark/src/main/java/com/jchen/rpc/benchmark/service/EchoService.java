@@ -0,0 +1,19 @@
+package com.jchen.rpc.benchmark.service;
+
+import com.jchen.rpc.api.HelloObject;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 压测用接口，原样返回消息内容，请求与响应的负载大小一致
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/06/10:12
+ */
+public interface EchoService {
+
+    String echo(HelloObject object);
+
+    CompletableFuture<String> echoAsync(HelloObject object);
+
+}
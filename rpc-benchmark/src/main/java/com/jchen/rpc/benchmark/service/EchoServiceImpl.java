@@ -0,0 +1,24 @@
+package com.jchen.rpc.benchmark.service;
+
+import com.jchen.rpc.annotation.Service;
+import com.jchen.rpc.api.HelloObject;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @Auther: jchen
+ * @Date: 2021/04/06/10:13
+ */
+@Service
+public class EchoServiceImpl implements EchoService {
+
+    @Override
+    public String echo(HelloObject object) {
+        return object.getMessage();
+    }
+
+    @Override
+    public CompletableFuture<String> echoAsync(HelloObject object) {
+        return CompletableFuture.completedFuture(object.getMessage());
+    }
+}
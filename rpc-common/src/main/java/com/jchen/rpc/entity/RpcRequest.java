@@ -18,8 +18,8 @@ import java.io.Serializable;
 @AllArgsConstructor
 public class RpcRequest implements Serializable {
 
-    //请求号
-    private String requestId;
+    //请求号，只在协议头中传输，不参与序列化，接收方解码时从协议头中取得
+    private transient Long requestId;
 
     //待调用接口名
     private String interfaceName;
@@ -16,8 +16,8 @@ import java.io.Serializable;
 @NoArgsConstructor
 public class RpcResponse<T> implements Serializable {
 
-    //响应对应的请求号
-    private String requestId;
+    //响应对应的请求号，只在协议头中传输，不参与序列化，客户端据此在反序列化数据之前找到等待响应的请求
+    private transient Long requestId;
 
     //响应状态码
     private Integer statusCode;
@@ -32,7 +32,7 @@ public class RpcResponse<T> implements Serializable {
     /**
      * 生成远程调用成功的响应对象
      */
-    public static <T> RpcResponse<T> success(T data, String requestId) {
+    public static <T> RpcResponse<T> success(T data, Long requestId) {
         RpcResponse<T> response = new RpcResponse<>();
         response.setRequestId(requestId);
         response.setStatusCode(ResponseCode.SUCCESS.getCode());
@@ -43,7 +43,7 @@ public class RpcResponse<T> implements Serializable {
     /**
      * 生成远程调用失败的响应对象
      */
-    public static <T> RpcResponse<T> fail(ResponseCode code, String requestId) {
+    public static <T> RpcResponse<T> fail(ResponseCode code, Long requestId) {
         RpcResponse<T> response = new RpcResponse<>();
         response.setRequestId(requestId);
         response.setStatusCode(code.getCode());
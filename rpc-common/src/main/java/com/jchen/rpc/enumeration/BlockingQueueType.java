@@ -0,0 +1,18 @@
+package com.jchen.rpc.enumeration;
+
+/**
+ * 线程池任务队列的类型
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/18/19:05
+ */
+public enum BlockingQueueType {
+
+    //基于数组的有界队列，容量固定，入队与出队共用一把锁
+    ARRAY,
+    //基于链表的队列，入队与出队分别加锁，容量可以很大
+    LINKED,
+    //不保存任务的队列，没有空闲线程时直接创建新线程，达到最大线程数后拒绝
+    SYNCHRONOUS
+
+}
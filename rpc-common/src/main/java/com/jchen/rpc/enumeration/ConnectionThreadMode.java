@@ -0,0 +1,18 @@
+package com.jchen.rpc.enumeration;
+
+/**
+ * Socket服务端处理连接的线程模型，每个连接由一个线程以阻塞方式读取请求
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/18/16:10
+ */
+public enum ConnectionThreadMode {
+
+    //支持虚拟线程（JDK 21及以上）时使用虚拟线程，否则使用平台线程
+    AUTO,
+    //每个连接与每个请求都在各自的虚拟线程中执行，线程数不受操作系统线程的限制，不支持时退回平台线程
+    VIRTUAL,
+    //连接使用平台线程，请求交给有界的业务线程池执行，线程池已满时返回失败的响应
+    PLATFORM
+
+}
@@ -0,0 +1,16 @@
+package com.jchen.rpc.enumeration;
+
+/**
+ * 服务端执行请求的线程模型
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/12/14:05
+ */
+public enum DispatchMode {
+
+    //在Netty的IO线程中直接执行，适用于执行很快且不会阻塞的服务
+    DIRECT,
+    //交给业务线程池执行，慢方法不会阻塞同一IO线程上的其他连接
+    EXECUTOR
+
+}
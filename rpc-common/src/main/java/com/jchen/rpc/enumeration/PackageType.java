@@ -12,7 +12,12 @@ import lombok.Getter;
 @Getter
 public enum PackageType {
     REQUEST_PACK(0),
-    RESPONSE_PACK(1);
+    RESPONSE_PACK(1),
+    //心跳包，仅在v2协议中使用，不携带数据
+    HEARTBEAT_PACK(2),
+    //批量请求包与批量响应包，仅在v2协议中使用，数据为多个请求或响应
+    BATCH_REQUEST_PACK(3),
+    BATCH_RESPONSE_PACK(4);
 
     private final int code;
 }
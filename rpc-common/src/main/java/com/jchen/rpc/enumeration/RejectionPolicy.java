@@ -0,0 +1,22 @@
+package com.jchen.rpc.enumeration;
+
+/**
+ * 线程池已满时对新任务的处理策略
+ * 服务端执行请求的线程池只能使用ABORT：其余策略下提交任务的一方不知道任务被丢弃或已在自己的线程中执行，
+ * 客户端收不到响应，或业务代码在IO线程中执行，RequestDispatcher不接受这样的线程池
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/18/19:08
+ */
+public enum RejectionPolicy {
+
+    //抛出RejectedExecutionException，由提交任务的一方处理，如服务端向客户端返回失败的响应
+    ABORT,
+    //在提交任务的线程中直接执行，减慢提交的速度
+    CALLER_RUNS,
+    //直接丢弃新任务
+    DISCARD,
+    //丢弃队列中最早的任务，再提交新任务
+    DISCARD_OLDEST
+
+}
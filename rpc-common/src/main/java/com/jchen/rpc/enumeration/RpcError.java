@@ -16,12 +16,17 @@ public enum RpcError {
     SERVICE_NOT_FOUND("找不到对应的服务"),
     SERVICE_NOT_IMPLEMENT_ANY_INTERFACE("注册的服务未实现接口"),
     UNKNOWN_PROTOCOL("不识别的协议包"),
+    UNSUPPORTED_PROTOCOL_VERSION("不再支持v1协议，请升级客户端"),
     UNKNOWN_SERIALIZER("不识别的(反)序列化器"),
     UNKNOWN_PACKAGE_TYPE("不识别的数据包类型"),
+    FRAME_TOO_LONG("数据包长度超出限制"),
     SERIALIZER_NOT_FOUND("找不到序列化器"),
     CLIENT_CONNECT_SERVER_FAILURE("客户端连接服务端失败"),
     RESPONSE_NOT_MATCH("响应与请求号不匹配"),
+    RESPONSE_TIMEOUT("等待服务端响应超时"),
+    CHANNEL_CLOSED("连接已断开，请求未得到响应"),
     FAILED_TO_CONNECT_TO_SERVICE_REGISTRY("连接注册中心失败"),
+    REGISTRY_NOT_FOUND("找不到注册中心"),
     REGISTER_SERVICE_FAILED("注册服务失败"),
     UNKNOWN_ERROR("出现未知错误"),
     SERVICE_SCAN_PACKAGE_NOT_FOUND("启动类ServiceScan注解缺失");
@@ -14,6 +14,10 @@ public class RpcException extends RuntimeException {
         super(error.getMessage() + ": " + detail);
     }
 
+    public RpcException(RpcError error, String detail, Throwable cause) {
+        super(error.getMessage() + ": " + detail, cause);
+    }
+
     public RpcException(String message, Throwable cause) {
         super(message, cause);
     }
@@ -0,0 +1,136 @@
+package com.jchen.rpc.util;
+
+import com.jchen.rpc.enumeration.RejectionPolicy;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 带统计的线程池，记录被拒绝的任务数，以及每个任务在队列中的等待时间与执行时间的分布
+ * 提交的任务包装为TimedTask，记录入队的时刻，开始执行时计算等待时间；在提交线程中执行（CALLER_RUNS）的任务等待时间为0
+ * 队列长度接近容量、等待时间上升时说明线程池已接近饱和，可以在请求被拒绝之前据此调整线程数与队列容量
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/18/19:35
+ */
+public class MonitoredThreadPoolExecutor extends ThreadPoolExecutor {
+
+    private final String name;
+    private final int queueCapacity;
+    private final RejectionPolicy rejectionPolicy;
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LatencyHistogram waitTime = new LatencyHistogram();
+    private final LatencyHistogram executionTime = new LatencyHistogram();
+
+    /**
+     * @param name 线程池名
+     * @param config 线程池配置
+     * @param threadFactory 线程工厂
+     */
+    public MonitoredThreadPoolExecutor(String name, ThreadPoolConfig config, ThreadFactory threadFactory) {
+        super(config.getCorePoolSize(), config.getMaximumPoolSize(), config.getKeepAliveSeconds(), TimeUnit.SECONDS,
+                createQueue(config), threadFactory);
+        this.name = name;
+        this.queueCapacity = getQueue().remainingCapacity();
+        this.rejectionPolicy = config.getRejectionPolicy();
+        RejectedExecutionHandler handler = createHandler(config);
+        setRejectedExecutionHandler((r, executor) -> {
+            rejectedCount.increment();
+            handler.rejectedExecution(r, executor);
+        });
+        if (config.isPrestartAllCoreThreads()) {
+            prestartAllCoreThreads();
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        super.execute(new TimedTask(command));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public RejectionPolicy getRejectionPolicy() {
+        return rejectionPolicy;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    public LatencyHistogram getWaitTime() {
+        return waitTime;
+    }
+
+    public LatencyHistogram getExecutionTime() {
+        return executionTime;
+    }
+
+    /**
+     * 当前各项指标的快照
+     */
+    public ThreadPoolMetrics getMetrics() {
+        return new ThreadPoolMetrics(name, getPoolSize(), getActiveCount(), getCorePoolSize(), getMaximumPoolSize(),
+                getLargestPoolSize(), getQueue().size(), queueCapacity, getCompletedTaskCount(), getRejectedCount(),
+                waitTime, executionTime);
+    }
+
+    private static BlockingQueue<Runnable> createQueue(ThreadPoolConfig config) {
+        switch (config.getQueueType()) {
+            case LINKED:
+                return new LinkedBlockingQueue<>(config.getQueueCapacity());
+            case SYNCHRONOUS:
+                return new SynchronousQueue<>();
+            case ARRAY:
+            default:
+                return new ArrayBlockingQueue<>(config.getQueueCapacity());
+        }
+    }
+
+    private static RejectedExecutionHandler createHandler(ThreadPoolConfig config) {
+        switch (config.getRejectionPolicy()) {
+            case CALLER_RUNS:
+                return new CallerRunsPolicy();
+            case DISCARD:
+                return new DiscardPolicy();
+            case DISCARD_OLDEST:
+                return new DiscardOldestPolicy();
+            case ABORT:
+            default:
+                return new AbortPolicy();
+        }
+    }
+
+    /**
+     * 记录入队时刻的任务包装
+     */
+    private class TimedTask implements Runnable {
+        private final Runnable task;
+        private final long submitTime = System.nanoTime();
+
+        TimedTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            long startTime = System.nanoTime();
+            waitTime.record(startTime - submitTime);
+            try {
+                task.run();
+            } finally {
+                executionTime.record(System.nanoTime() - startTime);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return task.toString();
+        }
+    }
+}
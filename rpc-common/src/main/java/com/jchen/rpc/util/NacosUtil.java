@@ -3,6 +3,7 @@ package com.jchen.rpc.util;
 import com.alibaba.nacos.api.exception.NacosException;
 import com.alibaba.nacos.api.naming.NamingFactory;
 import com.alibaba.nacos.api.naming.NamingService;
+import com.alibaba.nacos.api.naming.listener.EventListener;
 import com.alibaba.nacos.api.naming.pojo.Instance;
 import com.jchen.rpc.enumeration.RpcError;
 import com.jchen.rpc.exception.RpcException;
@@ -10,16 +11,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 管理Nacos连接等工具类：
  * 1.registerService供服务端调用，注册服务；
  * 2.getAllInstance供客户端调用，查找服务对应服务器地址列表；
- * 3.clearRegistry用于注销服务
+ * 3.subscribe供客户端调用，订阅服务实例列表的变更；
+ * 4.clearRegistry用于注销服务
+ * 第一次使用时才连接Nacos，只使用其他注册中心时不会连接；Nacos地址可以通过系统属性rpc.nacos.address指定
  *
  * @Auther: jchen
  * @Date: 2021/03/22/15:48
@@ -27,20 +30,33 @@ import java.util.Set;
 public class NacosUtil {
     private static final Logger logger = LoggerFactory.getLogger(NacosUtil.class);
 
-    private static final NamingService namingService;
-    private static final Set<String> serviceNames = new HashSet<>();
-    private static InetSocketAddress address;
-
+    private static final Set<String> serviceNames = ConcurrentHashMap.newKeySet();
+    private static volatile InetSocketAddress address;
 
+    //指定Nacos地址的系统属性
+    public static final String SERVER_ADDR_PROPERTY = "rpc.nacos.address";
     private static final String SERVER_ADDR = "127.0.0.1:8848";
 
-    static {
-        namingService = getNacosNamingService();
-    }
+    //第一次访问时才创建，创建失败时下次访问重新尝试
+    private static volatile NamingService namingService;
 
     public static NamingService getNacosNamingService() {
+        NamingService service = namingService;
+        if (service == null) {
+            synchronized (NacosUtil.class) {
+                service = namingService;
+                if (service == null) {
+                    service = createNamingService();
+                    namingService = service;
+                }
+            }
+        }
+        return service;
+    }
+
+    private static NamingService createNamingService() {
         try {
-            return NamingFactory.createNamingService(SERVER_ADDR);
+            return NamingFactory.createNamingService(System.getProperty(SERVER_ADDR_PROPERTY, SERVER_ADDR));
         } catch (NacosException e) {
             logger.error("连接到Nacos时有错误发生: ", e);
             throw new RpcException(RpcError.FAILED_TO_CONNECT_TO_SERVICE_REGISTRY);
@@ -54,7 +70,7 @@ public class NacosUtil {
      * @throws NacosException
      */
     public static void registerService(String serviceName, InetSocketAddress address) throws NacosException {
-        namingService.registerInstance(serviceName, address.getHostName(), address.getPort());
+        getNacosNamingService().registerInstance(serviceName, address.getHostName(), address.getPort());
         NacosUtil.address = address;
         serviceNames.add(serviceName);
     }
@@ -66,7 +82,17 @@ public class NacosUtil {
      * @throws NacosException
      */
     public static List<Instance> getAllInstance(String serviceName) throws NacosException {
-        return namingService.getAllInstances(serviceName);
+        return getNacosNamingService().getAllInstances(serviceName);
+    }
+
+    /**
+     * 订阅服务，服务的实例列表发生变化时Nacos推送NamingEvent事件，供客户端调用
+     * @param serviceName 服务名
+     * @param listener 事件监听器
+     * @throws NacosException
+     */
+    public static void subscribe(String serviceName, EventListener listener) throws NacosException {
+        getNacosNamingService().subscribe(serviceName, listener);
     }
 
     /**
@@ -80,7 +106,7 @@ public class NacosUtil {
             while (iterator.hasNext()) {
                 String serviceName = iterator.next();
                 try {
-                    namingService.deregisterInstance(serviceName, host, port);
+                    getNacosNamingService().deregisterInstance(serviceName, host, port);
                 } catch (NacosException e) {
                     logger.error("注销服务{}失败", serviceName, e);
                 }
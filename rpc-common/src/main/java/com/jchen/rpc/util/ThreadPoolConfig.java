@@ -0,0 +1,151 @@
+package com.jchen.rpc.util;
+
+import com.jchen.rpc.enumeration.BlockingQueueType;
+import com.jchen.rpc.enumeration.RejectionPolicy;
+
+/**
+ * 线程池的配置：核心线程数、最大线程数、空闲线程的存活时间、任务队列的类型与容量、拒绝策略以及是否预先启动核心线程
+ * 可以通过ThreadPoolFactory.configure为某个名字的线程池指定，也可以通过系统属性 rpc.threadpool.<线程池名>.<配置项> 指定，
+ * 如 -Drpc.threadpool.rpc-server-handler.maximumPoolSize=200，未指定的配置项使用默认值
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/18/19:10
+ */
+public class ThreadPoolConfig {
+
+    public static final String PROPERTY_PREFIX = "rpc.threadpool.";
+
+    public static final int DEFAULT_CORE_POOL_SIZE = 10;
+    public static final int DEFAULT_MAXIMUM_POOL_SIZE = 100;
+    public static final long DEFAULT_KEEP_ALIVE_SECONDS = 60;
+    public static final int DEFAULT_QUEUE_CAPACITY = 100;
+
+    private int corePoolSize = DEFAULT_CORE_POOL_SIZE;
+    private int maximumPoolSize = DEFAULT_MAXIMUM_POOL_SIZE;
+    private long keepAliveSeconds = DEFAULT_KEEP_ALIVE_SECONDS;
+    private BlockingQueueType queueType = BlockingQueueType.ARRAY;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private RejectionPolicy rejectionPolicy = RejectionPolicy.ABORT;
+    private boolean prestartAllCoreThreads = false;
+
+    /**
+     * 读取线程池名对应的系统属性，未设置的配置项使用默认值
+     * @param threadNamePrefix 线程池名，即线程名的前缀
+     */
+    public static ThreadPoolConfig fromSystemProperties(String threadNamePrefix) {
+        String prefix = PROPERTY_PREFIX + threadNamePrefix + ".";
+        ThreadPoolConfig config = new ThreadPoolConfig();
+        String value;
+        if ((value = System.getProperty(prefix + "corePoolSize")) != null) {
+            config.corePoolSize = Integer.parseInt(value.trim());
+        }
+        if ((value = System.getProperty(prefix + "maximumPoolSize")) != null) {
+            config.maximumPoolSize = Integer.parseInt(value.trim());
+        }
+        if ((value = System.getProperty(prefix + "keepAliveSeconds")) != null) {
+            config.keepAliveSeconds = Long.parseLong(value.trim());
+        }
+        if ((value = System.getProperty(prefix + "queueType")) != null) {
+            config.queueType = BlockingQueueType.valueOf(value.trim().toUpperCase());
+        }
+        if ((value = System.getProperty(prefix + "queueCapacity")) != null) {
+            config.queueCapacity = Integer.parseInt(value.trim());
+        }
+        if ((value = System.getProperty(prefix + "rejectionPolicy")) != null) {
+            config.rejectionPolicy = RejectionPolicy.valueOf(value.trim().toUpperCase());
+        }
+        if ((value = System.getProperty(prefix + "prestartAllCoreThreads")) != null) {
+            config.prestartAllCoreThreads = Boolean.parseBoolean(value.trim());
+        }
+        return config.validate();
+    }
+
+    /**
+     * 检查各项配置是否合法
+     */
+    public ThreadPoolConfig validate() {
+        if (corePoolSize < 0 || maximumPoolSize < 1 || maximumPoolSize < corePoolSize) {
+            throw new IllegalArgumentException("线程数配置不合法: corePoolSize=" + corePoolSize + ", maximumPoolSize=" + maximumPoolSize);
+        }
+        if (keepAliveSeconds < 0) {
+            throw new IllegalArgumentException("keepAliveSeconds不能小于0");
+        }
+        if (queueType != BlockingQueueType.SYNCHRONOUS && queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity必须大于0");
+        }
+        return this;
+    }
+
+    public int getCorePoolSize() {
+        return corePoolSize;
+    }
+
+    public ThreadPoolConfig setCorePoolSize(int corePoolSize) {
+        this.corePoolSize = corePoolSize;
+        return this;
+    }
+
+    public int getMaximumPoolSize() {
+        return maximumPoolSize;
+    }
+
+    public ThreadPoolConfig setMaximumPoolSize(int maximumPoolSize) {
+        this.maximumPoolSize = maximumPoolSize;
+        return this;
+    }
+
+    public long getKeepAliveSeconds() {
+        return keepAliveSeconds;
+    }
+
+    public ThreadPoolConfig setKeepAliveSeconds(long keepAliveSeconds) {
+        this.keepAliveSeconds = keepAliveSeconds;
+        return this;
+    }
+
+    public BlockingQueueType getQueueType() {
+        return queueType;
+    }
+
+    /**
+     * @param queueType 队列类型
+     * @param queueCapacity 队列容量，SYNCHRONOUS队列忽略该值
+     */
+    public ThreadPoolConfig setQueue(BlockingQueueType queueType, int queueCapacity) {
+        this.queueType = queueType;
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public RejectionPolicy getRejectionPolicy() {
+        return rejectionPolicy;
+    }
+
+    public ThreadPoolConfig setRejectionPolicy(RejectionPolicy rejectionPolicy) {
+        this.rejectionPolicy = rejectionPolicy;
+        return this;
+    }
+
+    public boolean isPrestartAllCoreThreads() {
+        return prestartAllCoreThreads;
+    }
+
+    /**
+     * 创建线程池时即启动所有核心线程，避免第一批任务等待线程创建
+     */
+    public ThreadPoolConfig setPrestartAllCoreThreads(boolean prestartAllCoreThreads) {
+        this.prestartAllCoreThreads = prestartAllCoreThreads;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "ThreadPoolConfig{corePoolSize=" + corePoolSize + ", maximumPoolSize=" + maximumPoolSize
+                + ", keepAliveSeconds=" + keepAliveSeconds + ", queueType=" + queueType + ", queueCapacity=" + queueCapacity
+                + ", rejectionPolicy=" + rejectionPolicy + ", prestartAllCoreThreads=" + prestartAllCoreThreads + "}";
+    }
+}
@@ -4,30 +4,71 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.reflect.Method;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.*;
 
 /**
  * 创建 ThreadPool(线程池) 的工具类
+ * 线程池的参数按线程池名（线程名前缀）配置，依次取configure指定的配置、系统属性中的配置与默认配置，见ThreadPoolConfig；
+ * 创建的线程池为MonitoredThreadPoolExecutor，可以通过getMetrics查看线程数、队列长度、拒绝数以及等待与执行时间的分布
  *
  * @Auther: jchen
  * @Date: 2021/03/20/15:14
  */
 public class ThreadPoolFactory {
-    /**
-     * 线程池参数
-     */
-    private static final int CORE_POOL_SIZE = 10;
-    private static final int MAXIMUM_POOL_SIZE_SIZE = 100;
-    private static final int KEEP_ALIVE_TIME = 1;
-    private static final int BLOCKING_QUEUE_CAPACITY = 100;
-
     private final static Logger logger = LoggerFactory.getLogger(ThreadPoolFactory.class);
     private static Map<String, ExecutorService> threadPoolsMap = new ConcurrentHashMap<>();
+    //<线程池名，配置>
+    private static final Map<String, ThreadPoolConfig> configs = new ConcurrentHashMap<>();
+    //JDK 21及以上的虚拟线程，通过反射调用以便在Java 8上编译，不支持时为null
+    private static final Method OF_VIRTUAL = findOfVirtual();
 
     private ThreadPoolFactory() {
     }
 
+    /**
+     * 为某个名字的线程池指定配置，对之后创建的线程池生效
+     * @param threadNamePrefix 线程池名，即线程名的前缀
+     * @param config 线程池配置
+     */
+    public static void configure(String threadNamePrefix, ThreadPoolConfig config) {
+        configs.put(threadNamePrefix, config.validate());
+    }
+
+    /**
+     * 线程池名对应的配置，没有通过configure指定时读取系统属性
+     */
+    public static ThreadPoolConfig getConfig(String threadNamePrefix) {
+        ThreadPoolConfig config = configs.get(threadNamePrefix);
+        return config != null ? config : ThreadPoolConfig.fromSystemProperties(threadNamePrefix);
+    }
+
+    /**
+     * 由createDefaultThreadPool创建的某个线程池的指标
+     * @param threadNamePrefix 线程池名
+     * @return 指标快照，线程池不存在时为null
+     */
+    public static ThreadPoolMetrics getMetrics(String threadNamePrefix) {
+        ExecutorService pool = threadPoolsMap.get(threadNamePrefix);
+        return pool instanceof MonitoredThreadPoolExecutor ? ((MonitoredThreadPoolExecutor) pool).getMetrics() : null;
+    }
+
+    /**
+     * 由createDefaultThreadPool创建的所有线程池的指标
+     * @return <线程池名，指标快照>
+     */
+    public static Map<String, ThreadPoolMetrics> getAllMetrics() {
+        Map<String, ThreadPoolMetrics> metrics = new TreeMap<>();
+        for (Map.Entry<String, ExecutorService> entry : threadPoolsMap.entrySet()) {
+            if (entry.getValue() instanceof MonitoredThreadPoolExecutor) {
+                metrics.put(entry.getKey(), ((MonitoredThreadPoolExecutor) entry.getValue()).getMetrics());
+            }
+        }
+        return metrics;
+    }
+
     public static ExecutorService createDefaultThreadPool(String threadNamePrefix) {
         return createDefaultThreadPool(threadNamePrefix, false);
     }
@@ -58,11 +99,63 @@ public class ThreadPoolFactory {
         });
     }
 
+    /**
+     * 当前JVM是否支持虚拟线程（JDK 21及以上）
+     */
+    public static boolean isVirtualThreadSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * 创建为每个任务启动一个新线程的线程池，线程数没有上限，适用于大量会阻塞的任务
+     * 支持虚拟线程时使用虚拟线程，阻塞时不占用操作系统线程；否则退回缓存平台线程的线程池
+     * @param threadNamePrefix 作为创建的线程名字的前缀
+     * @return ExecutorService
+     */
+    public static ExecutorService createThreadPerTaskExecutor(String threadNamePrefix) {
+        if (OF_VIRTUAL != null) {
+            try {
+                Object builder = OF_VIRTUAL.invoke(null);
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix + "-", 0L);
+                ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+                return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                        .invoke(null, threadFactory);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                logger.warn("创建虚拟线程池失败，使用平台线程", e);
+            }
+        }
+        return Executors.newCachedThreadPool(createThreadFactory(threadNamePrefix, false));
+    }
+
+    /**
+     * 查找Thread.ofVirtual()，JDK 19、20中虚拟线程为预览特性，未开启预览时调用会抛出异常，视为不支持
+     */
+    private static Method findOfVirtual() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            ofVirtual.invoke(null);
+            return ofVirtual;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
     public static ExecutorService createThreadPool(String threadNamePrefix, Boolean daemon) {
-        // 使用有界队列
-        BlockingQueue<Runnable> workQueue = new ArrayBlockingQueue<>(BLOCKING_QUEUE_CAPACITY);
+        return createThreadPool(threadNamePrefix, daemon, getConfig(threadNamePrefix));
+    }
+
+    /**
+     * 按指定的配置创建线程池
+     * @param threadNamePrefix 作为创建的线程名字的前缀，也是线程池名
+     * @param daemon 指定是否为 Daemon Thread(守护线程)
+     * @param config 线程池配置
+     * @return 带统计的线程池
+     */
+    public static MonitoredThreadPoolExecutor createThreadPool(String threadNamePrefix, Boolean daemon, ThreadPoolConfig config) {
         ThreadFactory threadFactory = createThreadFactory(threadNamePrefix, daemon);
-        return new ThreadPoolExecutor(CORE_POOL_SIZE, MAXIMUM_POOL_SIZE_SIZE, KEEP_ALIVE_TIME, TimeUnit.MINUTES, workQueue, threadFactory);
+        logger.info("创建线程池 [{}] {}", threadNamePrefix, config);
+        return new MonitoredThreadPoolExecutor(threadNamePrefix, config.validate(), threadFactory);
     }
 
 
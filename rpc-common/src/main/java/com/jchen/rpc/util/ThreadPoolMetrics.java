@@ -0,0 +1,128 @@
+package com.jchen.rpc.util;
+
+/**
+ * 线程池在某一时刻的指标快照
+ * 等待时间与执行时间为线程池创建以来的累计分布，单位微秒
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/18/19:50
+ */
+public class ThreadPoolMetrics {
+
+    private final String name;
+    private final int poolSize;
+    private final int activeCount;
+    private final int corePoolSize;
+    private final int maximumPoolSize;
+    private final int largestPoolSize;
+    private final int queueSize;
+    private final int queueCapacity;
+    private final long completedTaskCount;
+    private final long rejectedCount;
+    private final long waitP50Micros;
+    private final long waitP99Micros;
+    private final long waitMaxMicros;
+    private final long executionP50Micros;
+    private final long executionP99Micros;
+    private final long executionMaxMicros;
+
+    public ThreadPoolMetrics(String name, int poolSize, int activeCount, int corePoolSize, int maximumPoolSize, int largestPoolSize,
+                             int queueSize, int queueCapacity, long completedTaskCount, long rejectedCount,
+                             LatencyHistogram waitTime, LatencyHistogram executionTime) {
+        this.name = name;
+        this.poolSize = poolSize;
+        this.activeCount = activeCount;
+        this.corePoolSize = corePoolSize;
+        this.maximumPoolSize = maximumPoolSize;
+        this.largestPoolSize = largestPoolSize;
+        this.queueSize = queueSize;
+        this.queueCapacity = queueCapacity;
+        this.completedTaskCount = completedTaskCount;
+        this.rejectedCount = rejectedCount;
+        this.waitP50Micros = waitTime.getPercentileMicros(0.5);
+        this.waitP99Micros = waitTime.getPercentileMicros(0.99);
+        this.waitMaxMicros = waitTime.getMaxMicros();
+        this.executionP50Micros = executionTime.getPercentileMicros(0.5);
+        this.executionP99Micros = executionTime.getPercentileMicros(0.99);
+        this.executionMaxMicros = executionTime.getMaxMicros();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    public int getCorePoolSize() {
+        return corePoolSize;
+    }
+
+    public int getMaximumPoolSize() {
+        return maximumPoolSize;
+    }
+
+    public int getLargestPoolSize() {
+        return largestPoolSize;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * 队列的使用率，SYNCHRONOUS队列为0；接近1时新任务即将被拒绝
+     */
+    public double getQueueUtilization() {
+        return queueCapacity == 0 ? 0 : (double) queueSize / queueCapacity;
+    }
+
+    public long getCompletedTaskCount() {
+        return completedTaskCount;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public long getWaitP50Micros() {
+        return waitP50Micros;
+    }
+
+    public long getWaitP99Micros() {
+        return waitP99Micros;
+    }
+
+    public long getWaitMaxMicros() {
+        return waitMaxMicros;
+    }
+
+    public long getExecutionP50Micros() {
+        return executionP50Micros;
+    }
+
+    public long getExecutionP99Micros() {
+        return executionP99Micros;
+    }
+
+    public long getExecutionMaxMicros() {
+        return executionMaxMicros;
+    }
+
+    @Override
+    public String toString() {
+        return name + "{threads=" + poolSize + "/" + maximumPoolSize + ", active=" + activeCount + ", largest=" + largestPoolSize
+                + ", queue=" + queueSize + "/" + queueCapacity + ", completed=" + completedTaskCount + ", rejected=" + rejectedCount
+                + ", wait(p50/p99/max)=" + waitP50Micros + "/" + waitP99Micros + "/" + waitMaxMicros + "us"
+                + ", execution(p50/p99/max)=" + executionP50Micros + "/" + executionP99Micros + "/" + executionMaxMicros + "us}";
+    }
+}
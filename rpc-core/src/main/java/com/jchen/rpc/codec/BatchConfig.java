@@ -0,0 +1,45 @@
+package com.jchen.rpc.codec;
+
+/**
+ * 批量发送的配置
+ * 一次flush之后的时间窗口内写入同一连接的请求（或响应）合并为一个批量包发送，
+ * 条数达到maxBatchSize时立即合并写出，一个批量包的数据达到maxBatchBytes时其余消息编码到下一个包中
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/17/10:26
+ */
+public class BatchConfig {
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 32;
+    public static final int DEFAULT_MAX_BATCH_BYTES = 64 * 1024;
+
+    private final int maxBatchSize;
+    private final int maxBatchBytes;
+    //时间窗口，单位微秒；为0时不额外等待，只合并IO线程任务队列中已经排队的写操作
+    private final long windowMicros;
+
+    public BatchConfig() {
+        this(DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_BYTES, 0);
+    }
+
+    public BatchConfig(int maxBatchSize, int maxBatchBytes, long windowMicros) {
+        if (maxBatchSize < 1 || maxBatchBytes < 1 || windowMicros < 0) {
+            throw new IllegalArgumentException("maxBatchSize与maxBatchBytes必须大于0，windowMicros不能小于0");
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchBytes = maxBatchBytes;
+        this.windowMicros = windowMicros;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public int getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    public long getWindowMicros() {
+        return windowMicros;
+    }
+}
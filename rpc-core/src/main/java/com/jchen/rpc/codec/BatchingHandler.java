@@ -0,0 +1,130 @@
+package com.jchen.rpc.codec;
+
+import com.jchen.rpc.entity.RpcRequest;
+import com.jchen.rpc.entity.RpcResponse;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量发送的handler，位于CommonEncoder之后（靠近pipeline尾部），将同一连接上短时间内写入的多个请求或响应合并为一个RpcBatch
+ * 写入的消息先暂存，收到flush时不立即flush，而是在时间窗口结束时（窗口为0时在IO线程处理完已排队的任务后）一起写出并flush，
+ * 多个调用只产生一个协议包与一次系统调用；只暂存了一条消息时按普通的协议包写出
+ * 心跳包以及不能合并的消息直接写出，写出前先写出已暂存的消息，保证顺序
+ * 客户端使用时合并请求；服务端使用时只在对端发送过批量包（能够解析批量包）的连接上合并响应
+ * 所有方法都在Channel的IO线程中执行，不需要同步
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/17/10:40
+ */
+public class BatchingHandler extends ChannelDuplexHandler {
+
+    private final BatchConfig batchConfig;
+    //服务端只在对端支持批量包时合并
+    private final boolean requirePeerSupport;
+
+    private final List<Object> pendingMessages = new ArrayList<>();
+    private final List<ChannelPromise> pendingPromises = new ArrayList<>();
+    private boolean flushScheduled;
+
+    /**
+     * @param batchConfig 批量发送的配置
+     * @param requirePeerSupport 为true时只在对端发送过批量包的连接上合并，服务端使用
+     */
+    public BatchingHandler(BatchConfig batchConfig, boolean requirePeerSupport) {
+        this.batchConfig = batchConfig;
+        this.requirePeerSupport = requirePeerSupport;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (!canBatch(ctx, msg)) {
+            writePending(ctx);
+            ctx.write(msg, promise);
+            return;
+        }
+        pendingMessages.add(msg);
+        pendingPromises.add(promise);
+        if (pendingMessages.size() >= batchConfig.getMaxBatchSize()) {
+            writePending(ctx);
+        }
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        if (pendingMessages.isEmpty()) {
+            ctx.flush();
+            return;
+        }
+        if (flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+        Runnable flushTask = () -> {
+            flushScheduled = false;
+            writePending(ctx);
+            ctx.flush();
+        };
+        if (batchConfig.getWindowMicros() == 0) {
+            ctx.executor().execute(flushTask);
+        } else {
+            ctx.executor().schedule(flushTask, batchConfig.getWindowMicros(), TimeUnit.MICROSECONDS);
+        }
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        writePending(ctx);
+        ctx.flush();
+        ctx.close(promise);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        writePending(ctx);
+        ctx.flush();
+    }
+
+    private boolean canBatch(ChannelHandlerContext ctx, Object msg) {
+        if (msg instanceof RpcRequest) {
+            if (Boolean.TRUE.equals(((RpcRequest) msg).getHeartBeat())) {
+                return false;
+            }
+        } else if (!(msg instanceof RpcResponse)) {
+            return false;
+        }
+        return !requirePeerSupport || Boolean.TRUE.equals(ctx.channel().attr(ProtocolConstants.BATCH_SUPPORTED).get());
+    }
+
+    /**
+     * 将暂存的消息写出，多于一条时合并为RpcBatch，写出的结果通知每条消息各自的promise
+     */
+    private void writePending(ChannelHandlerContext ctx) {
+        int size = pendingMessages.size();
+        if (size == 0) {
+            return;
+        }
+        if (size == 1) {
+            ctx.write(pendingMessages.get(0), pendingPromises.get(0));
+        } else {
+            List<ChannelPromise> promises = new ArrayList<>(pendingPromises);
+            RpcBatch batch = new RpcBatch(new ArrayList<>(pendingMessages), batchConfig.getMaxBatchBytes());
+            ctx.write(batch).addListener((ChannelFutureListener) future -> {
+                for (ChannelPromise promise : promises) {
+                    if (future.isSuccess()) {
+                        promise.trySuccess();
+                    } else {
+                        promise.tryFailure(future.cause());
+                    }
+                }
+            });
+        }
+        pendingMessages.clear();
+        pendingPromises.clear();
+    }
+}
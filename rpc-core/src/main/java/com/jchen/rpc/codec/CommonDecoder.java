@@ -8,56 +8,226 @@ import com.jchen.rpc.exception.RpcException;
 import com.jchen.rpc.serializer.CommonSerializer;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.ReplayingDecoder;
+import io.netty.handler.codec.ByteToMessageDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.LongPredicate;
 
 /**
  * 通用的解码拦截器
+ * 根据协议头中的数据长度字段判断数据包是否完整到达，只有收到完整的数据包后才进行解析和反序列化，
+ * 数据包未到齐时直接返回等待，不会像ReplayingDecoder那样每收到一段数据就从头重新解析一遍。
+ * 只解析v2协议，收到v1协议包时不再尝试解析，抛出RpcException
+ * 批量包拆分为单个的请求或响应，后续的handler不需要区分是否批量发送
+ * 序列化器按编号缓存在解码器中，同一连接上的数据包共用
+ * 请求号只在协议头中传输，解码后设置到对象上；客户端可以指定响应过滤条件，在反序列化之前按请求号丢弃已超时或已取消的请求的响应
  *
  * @Auther: jchen
  * @Date: 2021/03/17/10:12
  */
-public class CommonDecoder extends ReplayingDecoder {
+public class CommonDecoder extends ByteToMessageDecoder {
 
     private static final Logger logger = LoggerFactory.getLogger(CommonDecoder.class);
-    private static final int MAGIC_NUMBER = 0xCAFEBABE;
+    //已完整读取但被过滤掉的响应
+    private static final Object DISCARDED = new Object();
+    //默认允许的最大数据包长度(协议头+数据)，8MB
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 8 * 1024 * 1024;
+
+    private final int maxFrameLength;
+    //以协议头中的请求号判断响应是否还有请求在等待，为null时解码所有响应
+    private final LongPredicate responseFilter;
+    //<序列化器编号，序列化器>，每个连接一个解码器，只在IO线程中访问
+    private final CommonSerializer[] serializers = new CommonSerializer[256];
+
+    public CommonDecoder() {
+        this(DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    public CommonDecoder(int maxFrameLength) {
+        this(maxFrameLength, null);
+    }
+
+    /**
+     * @param maxFrameLength 允许的最大数据包长度(协议头+数据)
+     * @param responseFilter 参数为响应的请求号，返回false时该响应不再反序列化，直接丢弃；为null时解码所有响应
+     */
+    public CommonDecoder(int maxFrameLength, LongPredicate responseFilter) {
+        this.maxFrameLength = maxFrameLength;
+        this.responseFilter = responseFilter;
+    }
 
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
-        //1.协议包标识
-        int magic = in.readInt();
-        if(magic != MAGIC_NUMBER) {
+        //至少需要4个字节才能通过魔数区分协议版本
+        if (in.readableBytes() < 4) {
+            return;
+        }
+        int magic = in.getInt(in.readerIndex());
+        Object obj;
+        if ((magic >>> 16) == ProtocolConstants.MAGIC_NUMBER_V2) {
+            obj = decodeV2(in);
+        } else if (magic == ProtocolConstants.MAGIC_NUMBER_V1) {
+            logger.error("收到v1协议包，v1协议已不再支持");
+            in.skipBytes(in.readableBytes());
+            throw new RpcException(RpcError.UNSUPPORTED_PROTOCOL_VERSION);
+        } else {
             logger.error("不识别的协议包: {}", magic);
+            in.skipBytes(in.readableBytes());
+            throw new RpcException(RpcError.UNKNOWN_PROTOCOL);
+        }
+        //数据包还未完整到达，等待后续数据
+        if (obj == null) {
+            return;
+        }
+        if (obj == DISCARDED) {
+            return;
+        }
+        if (obj instanceof RpcBatch) {
+            ctx.channel().attr(ProtocolConstants.BATCH_SUPPORTED).set(Boolean.TRUE);
+            out.addAll(((RpcBatch) obj).getMessages());
+        } else {
+            out.add(obj);
+        }
+    }
+
+    /**
+     * 解析v2协议包：魔数(2) | 版本号(1) | 包类型(1) | 序列化器类型(1) | 标志位(1) | 请求号(8) | 数据长度(4) | 数据
+     * @return 反序列化后的对象，数据包不完整时返回null，被过滤掉的响应返回DISCARDED
+     */
+    private Object decodeV2(ByteBuf in) {
+        ByteBuf frame = readFrame(in, ProtocolConstants.HEADER_LENGTH_V2, ProtocolConstants.LENGTH_FIELD_OFFSET_V2);
+        if (frame == null) {
+            return null;
+        }
+        //1.魔数与版本号
+        frame.skipBytes(2);
+        byte version = frame.readByte();
+        if (version != ProtocolConstants.VERSION_2) {
+            logger.error("不识别的协议版本: {}", version);
             throw new RpcException(RpcError.UNKNOWN_PROTOCOL);
         }
-        //2.请求还是响应请求
-        int packageCode = in.readInt();
-        Class<?> packageClass;
+        //2.包类型、序列化器类型、标志位
+        int packageCode = frame.readUnsignedByte();
+        int serializerCode = frame.readUnsignedByte();
+        frame.skipBytes(1);
+        //3.请求号
+        long requestId = frame.readLong();
+        frame.skipBytes(4);
+        //心跳包不携带数据
+        if (packageCode == PackageType.HEARTBEAT_PACK.getCode()) {
+            RpcRequest heartBeat = new RpcRequest();
+            heartBeat.setHeartBeat(true);
+            return heartBeat;
+        }
+        //没有请求在等待的响应不再反序列化
+        if (packageCode == PackageType.RESPONSE_PACK.getCode() && !isAwaited(requestId)) {
+            return DISCARDED;
+        }
+        CommonSerializer serializer = getSerializer(serializerCode);
+        if (packageCode == PackageType.BATCH_REQUEST_PACK.getCode()) {
+            return decodeBatch(frame, RpcRequest.class, serializer);
+        } else if (packageCode == PackageType.BATCH_RESPONSE_PACK.getCode()) {
+            return decodeBatch(frame, RpcResponse.class, serializer);
+        }
+        Class<?> packageClass = getPackageClass(packageCode);
+        //4.序列化后的数据，数据中不含请求号，取协议头中的请求号
+        return deserialize(frame, packageClass, serializer, requestId);
+    }
+
+    /**
+     * 解析批量包的数据：条数(4) | 多个[请求号(8) | 长度(4) | 数据]
+     */
+    private RpcBatch decodeBatch(ByteBuf frame, Class<?> packageClass, CommonSerializer serializer) {
+        int count = frame.readInt();
+        if (count < 0 || (long) count * ProtocolConstants.BATCH_ENTRY_HEADER_LENGTH > frame.readableBytes()) {
+            logger.error("批量包条数错误: {}", count);
+            throw new RpcException(RpcError.UNKNOWN_PACKAGE_TYPE, "batch count:" + count);
+        }
+        List<Object> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long requestId = frame.readLong();
+            int length = frame.readInt();
+            if (length < 0 || length > frame.readableBytes()) {
+                logger.error("批量包中的数据长度错误: {}", length);
+                throw new RpcException(RpcError.UNKNOWN_PACKAGE_TYPE, "batch entry length:" + length);
+            }
+            ByteBuf data = frame.readSlice(length);
+            if (packageClass == RpcResponse.class && !isAwaited(requestId)) {
+                continue;
+            }
+            messages.add(deserialize(data, packageClass, serializer, requestId));
+        }
+        return new RpcBatch(messages, 0);
+    }
+
+    private boolean isAwaited(long requestId) {
+        if (responseFilter == null || responseFilter.test(requestId)) {
+            return true;
+        }
+        logger.warn("收到未知请求号的响应，请求可能已超时，不再反序列化: {}", requestId);
+        return false;
+    }
+
+    private Object deserialize(ByteBuf data, Class<?> packageClass, CommonSerializer serializer, long requestId) {
+        Object obj = serializer.deserialize(data, packageClass);
+        if (obj instanceof RpcRequest) {
+            ((RpcRequest) obj).setRequestId(requestId);
+        } else {
+            ((RpcResponse<?>) obj).setRequestId(requestId);
+        }
+        return obj;
+    }
+
+    /**
+     * 根据协议头中的数据长度字段读取一个完整的数据包
+     * 先将数据包整体读出，保证即使之后解析失败也不会破坏后续数据包的边界
+     * @return 完整数据包的切片，数据包不完整时返回null
+     */
+    private ByteBuf readFrame(ByteBuf in, int headerLength, int lengthFieldOffset) {
+        //协议头还未到齐，等待后续数据
+        if (in.readableBytes() < headerLength) {
+            return null;
+        }
+        //序列化后的数据长度，超过限制的数据包直接丢弃
+        int length = in.getInt(in.readerIndex() + lengthFieldOffset);
+        if (length < 0 || length > maxFrameLength - headerLength) {
+            logger.error("数据包长度超出限制: {}", length);
+            in.skipBytes(in.readableBytes());
+            throw new RpcException(RpcError.FRAME_TOO_LONG, "length:" + length);
+        }
+        if (in.readableBytes() < headerLength + length) {
+            return null;
+        }
+        return in.readSlice(headerLength + length);
+    }
+
+    private Class<?> getPackageClass(int packageCode) {
         if(packageCode == PackageType.REQUEST_PACK.getCode()) {
-            packageClass = RpcRequest.class;
+            return RpcRequest.class;
         } else if(packageCode == PackageType.RESPONSE_PACK.getCode()) {
-            packageClass = RpcResponse.class;
-        } else {
-            logger.error("不识别的数据包: {}", packageCode);
-            throw new RpcException(RpcError.UNKNOWN_PACKAGE_TYPE);
-        }
-        //3.序列化器标识
-        int serializerCode = in.readInt();
-        CommonSerializer serializer = CommonSerializer.getByCode(serializerCode);
-        if(serializer == null) {
-            logger.error("不识别的反序列化器: {}", serializerCode);
-            throw new RpcException(RpcError.UNKNOWN_SERIALIZER);
-        }
-        //4.序列化后的数据长度
-        int length = in.readInt();
-        //5.序列化后的数据
-        byte[] bytes = new byte[length];
-        in.readBytes(bytes);
-        Object obj = serializer.deserialize(bytes, packageClass);
-        out.add(obj);
+            return RpcResponse.class;
+        }
+        logger.error("不识别的数据包: {}", packageCode);
+        throw new RpcException(RpcError.UNKNOWN_PACKAGE_TYPE);
+    }
+
+    /**
+     * 序列化器按编号缓存，每个数据包不再新建序列化器（及其内部的ObjectMapper、Schema缓存等）
+     */
+    private CommonSerializer getSerializer(int serializerCode) {
+        CommonSerializer serializer = serializerCode >= 0 && serializerCode < serializers.length ? serializers[serializerCode] : null;
+        if (serializer == null) {
+            serializer = CommonSerializer.getByCode(serializerCode);
+            if (serializer == null) {
+                logger.error("不识别的反序列化器: {}", serializerCode);
+                throw new RpcException(RpcError.UNKNOWN_SERIALIZER);
+            }
+            serializers[serializerCode] = serializer;
+        }
+        return serializer;
     }
 
 }
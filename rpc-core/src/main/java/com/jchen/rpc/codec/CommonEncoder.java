@@ -1,28 +1,54 @@
 package com.jchen.rpc.codec;
 
 import com.jchen.rpc.entity.RpcRequest;
+import com.jchen.rpc.entity.RpcResponse;
 import com.jchen.rpc.enumeration.PackageType;
 import com.jchen.rpc.serializer.CommonSerializer;
 import io.netty.buffer.ByteBuf;
-import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
-import io.netty.util.concurrent.EventExecutorGroup;
+
+import java.util.List;
 
 /**
  * 通用的编码拦截器
+ * 使用v2协议编码
+ * RpcBatch编码为一个或多个v2批量包
+ * 输出缓冲区的初始大小按最近编码出的数据包长度的移动平均估计，多数数据包编码时不需要扩容，也不会为小数据包分配过大的缓冲区
  *
  * @Auther: jchen
  * @Date: 2021/03/17/10:12
  */
 public class CommonEncoder extends MessageToByteEncoder {
 
-    private static final int MAGIC_NUMBER = 0xCAFEBABE;
+    //第一次分配输出缓冲区的默认大小
+    public static final int DEFAULT_INITIAL_BUFFER_SIZE = 256;
+    private static final int MIN_BUFFER_SIZE = 64;
 
     private final CommonSerializer serializer;
+    //最近编码出的数据包长度的移动平均，每个连接一个编码器，只在IO线程中访问
+    private int estimatedSize;
 
     public CommonEncoder(CommonSerializer serializer) {
+        this(serializer, DEFAULT_INITIAL_BUFFER_SIZE);
+    }
+
+    /**
+     * @param serializer 序列化器
+     * @param initialBufferSize 第一次分配输出缓冲区的大小
+     */
+    public CommonEncoder(CommonSerializer serializer, int initialBufferSize) {
         this.serializer = serializer;
+        this.estimatedSize = Math.max(MIN_BUFFER_SIZE, initialBufferSize);
+    }
+
+    /**
+     * 按估计的长度分配输出缓冲区，多留1/4的余量
+     */
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, Object msg, boolean preferDirect) {
+        int size = estimatedSize + (estimatedSize >> 2);
+        return preferDirect ? ctx.alloc().ioBuffer(size) : ctx.alloc().heapBuffer(size);
     }
 
     /**
@@ -30,21 +56,129 @@ public class CommonEncoder extends MessageToByteEncoder {
      */
     @Override
     protected void encode(ChannelHandlerContext ctx, Object msg, ByteBuf out) throws Exception {
-        //1.写入协议包标识
-        out.writeInt(MAGIC_NUMBER);
-        //2.写入请求还是响应请求
-        if(msg instanceof RpcRequest) {
-            out.writeInt(PackageType.REQUEST_PACK.getCode());
+        int start = out.writerIndex();
+        if (msg instanceof RpcBatch) {
+            encodeBatch((RpcBatch) msg, out);
+        } else {
+            encodeV2(msg, out);
+        }
+        //新的长度占1/4权重
+        int size = out.writerIndex() - start;
+        estimatedSize = Math.max(MIN_BUFFER_SIZE, estimatedSize - (estimatedSize >> 2) + (size >> 2));
+    }
+
+    private void encodeV2(Object msg, ByteBuf out) {
+        PackageType packageType;
+        Long requestId;
+        if (msg instanceof RpcRequest) {
+            RpcRequest rpcRequest = (RpcRequest) msg;
+            packageType = Boolean.TRUE.equals(rpcRequest.getHeartBeat()) ? PackageType.HEARTBEAT_PACK : PackageType.REQUEST_PACK;
+            requestId = rpcRequest.getRequestId();
         } else {
-            out.writeInt(PackageType.RESPONSE_PACK.getCode());
+            packageType = PackageType.RESPONSE_PACK;
+            requestId = ((RpcResponse<?>) msg).getRequestId();
         }
-        //3.写入序列化器标识
-        out.writeInt(serializer.getCode());
-        //4.写入序列化后的数据长度
-        byte[] bytes = serializer.serialize(msg);
-        out.writeInt(bytes.length);
-        //5.写入序列化后的数据
-        out.writeBytes(bytes);
+        //1-3.协议头中数据长度之前的部分
+        writeHeaderV2(out, packageType, requestId);
+        //4.数据长度，心跳包不携带数据
+        if (packageType == PackageType.HEARTBEAT_PACK) {
+            out.writeInt(0);
+            return;
+        }
+        int lengthIndex = out.writerIndex();
+        out.writeInt(0);
+        //5.序列化后的数据
+        serializer.serialize(msg, out);
+        out.setInt(lengthIndex, out.writerIndex() - lengthIndex - 4);
+    }
+
+    /**
+     * 魔数与版本号(3) | 包类型(1) | 序列化器类型(1) | 标志位(1) | 请求号(8)，请求号用于接收方无需反序列化数据即可知道是哪个请求
+     */
+    private void writeHeaderV2(ByteBuf out, PackageType packageType, Long requestId) {
+        out.writeShort(ProtocolConstants.MAGIC_NUMBER_V2);
+        out.writeByte(ProtocolConstants.VERSION_2);
+        out.writeByte(packageType.getCode());
+        out.writeByte(serializer.getCode());
+        out.writeByte(ProtocolConstants.FLAG_NONE);
+        out.writeLong(requestId == null ? 0L : requestId);
+    }
+
+    /**
+     * 批量包：v2协议头（请求号为0）| 条数(4) | 多个[请求号(8) | 长度(4) | 数据]
+     * 一个批量包的数据（含条数）不超过RpcBatch的maxBytes，避免超过对端的数据包长度限制：
+     * 1.消息先序列化到当前批量包的末尾，放不下时取出该条消息的数据，结束当前批量包，再放入下一个批量包；
+     * 2.单独一条就超过maxBytes的消息不放入批量包，编码为普通的请求包或响应包
+     */
+    private void encodeBatch(RpcBatch batch, ByteBuf out) {
+        List<Object> messages = batch.getMessages();
+        boolean request = messages.get(0) instanceof RpcRequest;
+        PackageType packageType = request ? PackageType.BATCH_REQUEST_PACK : PackageType.BATCH_RESPONSE_PACK;
+        int maxBytes = batch.getMaxBytes();
+        int headerIndex = -1;
+        int count = 0;
+        for (Object msg : messages) {
+            if (headerIndex < 0) {
+                headerIndex = startBatch(out, packageType);
+                count = 0;
+            }
+            Long requestId = request ? ((RpcRequest) msg).getRequestId() : ((RpcResponse<?>) msg).getRequestId();
+            int entryIndex = out.writerIndex();
+            out.writeLong(requestId == null ? 0L : requestId);
+            out.writeInt(0);
+            serializer.serialize(msg, out);
+            int dataLength = out.writerIndex() - entryIndex - ProtocolConstants.BATCH_ENTRY_HEADER_LENGTH;
+            out.setInt(entryIndex + 8, dataLength);
+            if (out.writerIndex() - headerIndex - ProtocolConstants.HEADER_LENGTH_V2 <= maxBytes) {
+                count++;
+                continue;
+            }
+            //放不下，取出该条消息的数据
+            ByteBuf data = out.copy(entryIndex + ProtocolConstants.BATCH_ENTRY_HEADER_LENGTH, dataLength);
+            try {
+                out.writerIndex(entryIndex);
+                if (count > 0) {
+                    finishBatch(out, headerIndex, count);
+                    headerIndex = startBatch(out, packageType);
+                    count = 0;
+                }
+                if (4 + ProtocolConstants.BATCH_ENTRY_HEADER_LENGTH + dataLength <= maxBytes) {
+                    out.writeLong(requestId == null ? 0L : requestId);
+                    out.writeInt(dataLength);
+                    out.writeBytes(data);
+                    count = 1;
+                } else {
+                    //去掉刚写入的空批量包的协议头
+                    out.writerIndex(headerIndex);
+                    writeHeaderV2(out, request ? PackageType.REQUEST_PACK : PackageType.RESPONSE_PACK, requestId);
+                    out.writeInt(dataLength);
+                    out.writeBytes(data);
+                    headerIndex = -1;
+                }
+            } finally {
+                data.release();
+            }
+        }
+        if (headerIndex >= 0) {
+            finishBatch(out, headerIndex, count);
+        }
+    }
+
+    /**
+     * 写入批量包的协议头，数据长度与条数先占位，写完后回填
+     * @return 协议头的起始位置
+     */
+    private int startBatch(ByteBuf out, PackageType packageType) {
+        int headerIndex = out.writerIndex();
+        writeHeaderV2(out, packageType, 0L);
+        out.writeInt(0);
+        out.writeInt(0);
+        return headerIndex;
+    }
+
+    private static void finishBatch(ByteBuf out, int headerIndex, int count) {
+        out.setInt(headerIndex + ProtocolConstants.LENGTH_FIELD_OFFSET_V2, out.writerIndex() - headerIndex - ProtocolConstants.HEADER_LENGTH_V2);
+        out.setInt(headerIndex + ProtocolConstants.HEADER_LENGTH_V2, count);
     }
 
-}
\ No newline at end of file
+}
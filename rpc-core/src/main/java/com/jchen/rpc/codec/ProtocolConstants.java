@@ -0,0 +1,41 @@
+package com.jchen.rpc.codec;
+
+import io.netty.util.AttributeKey;
+
+/**
+ * MRF协议中用到的常量，Netty与Socket两种传输方式共用
+ *
+ * v2协议头(18字节)：魔数(2) | 版本号(1) | 包类型(1) | 序列化器类型(1) | 标志位(1) | 请求号(8) | 数据长度(4)
+ * v2批量包的数据：条数(4) | 多个[请求号(8) | 长度(4) | 数据]，协议头中的请求号为0
+ * 请求号只出现在协议头（或批量包每条数据之前），序列化后的数据中不含请求号
+ * v1协议（魔数0xCAFEBABE，请求号以字符串放在序列化后的数据中）已不再支持，收到v1协议包时抛出RpcException
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/08/14:05
+ */
+public class ProtocolConstants {
+
+    //v1协议包的魔数，只用于识别旧版本的对端并拒绝
+    public static final int MAGIC_NUMBER_V1 = 0xCAFEBABE;
+    //v2魔数为"MR"两个字符，与v1魔数的高16位不同
+    public static final short MAGIC_NUMBER_V2 = 0x4D52;
+
+    public static final byte VERSION_2 = 2;
+
+    public static final int HEADER_LENGTH_V2 = 18;
+
+    //数据长度字段在协议头中的偏移量
+    public static final int LENGTH_FIELD_OFFSET_V2 = 14;
+
+    //标志位，目前没有使用，预留给压缩等扩展
+    public static final byte FLAG_NONE = 0;
+
+    //批量包中每条数据前的请求号与长度
+    public static final int BATCH_ENTRY_HEADER_LENGTH = 12;
+
+    //对端发送过批量包，说明对端能够解析批量包，服务端据此决定是否以批量包回写响应
+    public static final AttributeKey<Boolean> BATCH_SUPPORTED = AttributeKey.valueOf("batchSupported");
+
+    private ProtocolConstants() {
+    }
+}
@@ -0,0 +1,31 @@
+package com.jchen.rpc.codec;
+
+import java.util.List;
+
+/**
+ * 合并发送的多个请求或多个响应，由BatchingHandler生成，CommonEncoder编码为批量包；
+ * CommonDecoder解码批量包时也生成该对象，再拆分为单个的请求或响应交给后续的handler
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/17/10:20
+ */
+public class RpcBatch {
+
+    //同一批中全部是RpcRequest或全部是RpcResponse
+    private final List<Object> messages;
+    //一个批量包的数据不超过该长度，放不下的消息编码到下一个批量包中，单独一条就超过该长度的消息编码为普通的数据包
+    private final int maxBytes;
+
+    public RpcBatch(List<Object> messages, int maxBytes) {
+        this.messages = messages;
+        this.maxBytes = maxBytes;
+    }
+
+    public List<Object> getMessages() {
+        return messages;
+    }
+
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+}
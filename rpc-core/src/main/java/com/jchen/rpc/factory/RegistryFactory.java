@@ -0,0 +1,68 @@
+package com.jchen.rpc.factory;
+
+import com.jchen.rpc.enumeration.RpcError;
+import com.jchen.rpc.exception.RpcException;
+import com.jchen.rpc.loadbalancer.LoadBalancer;
+import com.jchen.rpc.registry.NacosRegistryProvider;
+import com.jchen.rpc.registry.RegistryProvider;
+import com.jchen.rpc.registry.ServiceDiscovery;
+import com.jchen.rpc.registry.ServiceRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 注册中心工厂，通过ServiceLoader加载所有RegistryProvider，按名称创建服务注册与服务发现对象
+ * 未指定注册中心时使用系统属性rpc.registry的值，默认为nacos
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/16/11:35
+ */
+public class RegistryFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegistryFactory.class);
+
+    //选择注册中心的系统属性
+    public static final String REGISTRY_PROPERTY = "rpc.registry";
+
+    //<注册中心名称，RegistryProvider>
+    private static final Map<String, RegistryProvider> providers = loadProviders();
+
+    private RegistryFactory() {}
+
+    public static ServiceRegistry getServiceRegistry() {
+        return getRegistryProvider().createServiceRegistry();
+    }
+
+    public static ServiceDiscovery getServiceDiscovery(LoadBalancer loadBalancer) {
+        return getRegistryProvider().createServiceDiscovery(loadBalancer);
+    }
+
+    /**
+     * 获取系统属性rpc.registry指定的注册中心
+     */
+    public static RegistryProvider getRegistryProvider() {
+        return getRegistryProvider(System.getProperty(REGISTRY_PROPERTY, NacosRegistryProvider.NAME));
+    }
+
+    public static RegistryProvider getRegistryProvider(String name) {
+        RegistryProvider provider = providers.get(name);
+        if (provider == null) {
+            logger.error("找不到注册中心: {}，可用的注册中心: {}", name, providers.keySet());
+            throw new RpcException(RpcError.REGISTRY_NOT_FOUND, name);
+        }
+        return provider;
+    }
+
+    private static Map<String, RegistryProvider> loadProviders() {
+        Map<String, RegistryProvider> providers = new ConcurrentHashMap<>();
+        for (RegistryProvider provider : ServiceLoader.load(RegistryProvider.class, RegistryFactory.class.getClassLoader())) {
+            //同名时先加载的优先
+            providers.putIfAbsent(provider.getName(), provider);
+        }
+        return providers;
+    }
+}
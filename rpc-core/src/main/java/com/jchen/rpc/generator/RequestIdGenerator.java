@@ -0,0 +1,15 @@
+package com.jchen.rpc.generator;
+
+/**
+ * 请求号生成器通用接口，客户端在发送请求前为其分配请求号
+ * 同一进程内的所有客户端共用一张待处理请求表，因此生成的请求号在进程内必须唯一
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/09/10:21
+ */
+public interface RequestIdGenerator {
+
+    //生成下一个请求号
+    long nextId();
+
+}
@@ -0,0 +1,32 @@
+package com.jchen.rpc.generator;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 默认的请求号生成器，每个客户端持有一个，请求号单调递增
+ * 高24位为生成器编号，低40位为递增序号，保证进程内多个客户端之间的请求号也不会重复，
+ * 相比UUID不需要SecureRandom，也不会产生36个字符的字符串
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/09/10:26
+ */
+public class SequenceRequestIdGenerator implements RequestIdGenerator {
+
+    private static final int SEQUENCE_BITS = 40;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    //已创建的生成器个数，作为生成器编号
+    private static final AtomicInteger GENERATOR_COUNT = new AtomicInteger();
+
+    private final long prefix;
+    private final AtomicLong sequence = new AtomicLong();
+
+    public SequenceRequestIdGenerator() {
+        this.prefix = (long) GENERATOR_COUNT.incrementAndGet() << SEQUENCE_BITS;
+    }
+
+    @Override
+    public long nextId() {
+        return prefix | (sequence.incrementAndGet() & SEQUENCE_MASK);
+    }
+}
@@ -0,0 +1,142 @@
+package com.jchen.rpc.handler;
+
+import com.jchen.rpc.entity.RpcRequest;
+import com.jchen.rpc.enumeration.DispatchMode;
+import com.jchen.rpc.enumeration.RejectionPolicy;
+import com.jchen.rpc.util.MonitoredThreadPoolExecutor;
+import com.jchen.rpc.util.ThreadPoolFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 服务端请求分发器，决定请求在哪个线程中执行
+ * 可以为某个服务或某个方法单独指定线程池，查找顺序为：方法 -> 服务 -> 默认线程池，
+ * DIRECT模式下没有默认线程池，未单独指定线程池的请求在IO线程中直接执行
+ * 线程池使用有界队列，队列已满拒绝执行时由调用方向客户端返回失败的响应；
+ * 因此线程池必须在拒绝时抛出RejectedExecutionException，丢弃任务或在提交线程中执行任务的线程池不被接受
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/12/14:12
+ */
+public class RequestDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestDispatcher.class);
+    private static final String DEFAULT_THREAD_POOL_NAME = "rpc-server-handler";
+
+    private final DispatchMode dispatchMode;
+    private final ExecutorService defaultExecutor;
+    //<服务名，线程池>
+    private final Map<String, ExecutorService> serviceExecutors = new ConcurrentHashMap<>();
+    //<服务名，<方法名，线程池>>，两级查找，避免每个请求拼接字符串作为键
+    private final Map<String, Map<String, ExecutorService>> methodExecutors = new ConcurrentHashMap<>();
+    //被拒绝执行的请求数
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public RequestDispatcher() {
+        this(DispatchMode.EXECUTOR);
+    }
+
+    public RequestDispatcher(DispatchMode dispatchMode) {
+        this(dispatchMode, dispatchMode == DispatchMode.EXECUTOR
+                ? ThreadPoolFactory.createDefaultThreadPool(DEFAULT_THREAD_POOL_NAME) : null);
+    }
+
+    public RequestDispatcher(DispatchMode dispatchMode, ExecutorService defaultExecutor) {
+        this.dispatchMode = dispatchMode;
+        this.defaultExecutor = checkRejectionPolicy(defaultExecutor);
+    }
+
+    /**
+     * 为服务指定线程池
+     * @param serviceName 服务名
+     * @param executor 执行该服务请求的线程池
+     * @return
+     */
+    public RequestDispatcher bindService(String serviceName, ExecutorService executor) {
+        serviceExecutors.put(serviceName, checkRejectionPolicy(executor));
+        return this;
+    }
+
+    /**
+     * 为服务的某个方法指定线程池，同名的重载方法共用一个线程池
+     * @param serviceName 服务名
+     * @param methodName 方法名
+     * @param executor 执行该方法请求的线程池
+     * @return
+     */
+    public RequestDispatcher bindMethod(String serviceName, String methodName, ExecutorService executor) {
+        methodExecutors.computeIfAbsent(serviceName, k -> new ConcurrentHashMap<>()).put(methodName, checkRejectionPolicy(executor));
+        return this;
+    }
+
+    /**
+     * 在选定的线程中执行task
+     * @param rpcRequest 请求对象，用于选择线程池
+     * @param task 处理请求并写回响应的任务
+     * @return 线程池拒绝执行时返回false
+     */
+    public boolean dispatch(RpcRequest rpcRequest, Runnable task) {
+        ExecutorService executor = executorFor(rpcRequest);
+        if (executor == null) {
+            task.run();
+            return true;
+        }
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            long rejected = rejectedCount.incrementAndGet();
+            logger.warn("线程池已满，拒绝执行请求 {}#{}，累计拒绝 {} 个请求",
+                    rpcRequest.getInterfaceName(), rpcRequest.getMethodName(), rejected);
+            return false;
+        }
+    }
+
+    public DispatchMode getDispatchMode() {
+        return dispatchMode;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * 线程池已满时丢弃任务（DISCARD、DISCARD_OLDEST）会使dispatch误以为已提交，客户端收不到响应，连接的许可也不会归还；
+     * 在提交线程中执行（CALLER_RUNS）会使业务代码在IO线程中执行，这些线程池都不能用于执行请求
+     */
+    private static ExecutorService checkRejectionPolicy(ExecutorService executor) {
+        boolean aborts = true;
+        if (executor instanceof MonitoredThreadPoolExecutor) {
+            aborts = ((MonitoredThreadPoolExecutor) executor).getRejectionPolicy() == RejectionPolicy.ABORT;
+        } else if (executor instanceof ThreadPoolExecutor) {
+            RejectedExecutionHandler handler = ((ThreadPoolExecutor) executor).getRejectedExecutionHandler();
+            aborts = !(handler instanceof ThreadPoolExecutor.CallerRunsPolicy
+                    || handler instanceof ThreadPoolExecutor.DiscardPolicy
+                    || handler instanceof ThreadPoolExecutor.DiscardOldestPolicy);
+        }
+        if (!aborts) {
+            throw new IllegalArgumentException("执行请求的线程池在拒绝任务时必须抛出RejectedExecutionException，请使用ABORT拒绝策略");
+        }
+        return executor;
+    }
+
+    private ExecutorService executorFor(RpcRequest rpcRequest) {
+        Map<String, ExecutorService> executors = methodExecutors.get(rpcRequest.getInterfaceName());
+        if (executors != null) {
+            ExecutorService executor = executors.get(rpcRequest.getMethodName());
+            if (executor != null) {
+                return executor;
+            }
+        }
+        ExecutorService executor = serviceExecutors.get(rpcRequest.getInterfaceName());
+        return executor != null ? executor : defaultExecutor;
+    }
+}
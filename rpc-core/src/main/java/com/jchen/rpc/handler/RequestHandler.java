@@ -3,16 +3,18 @@ package com.jchen.rpc.handler;
 import com.jchen.rpc.entity.RpcRequest;
 import com.jchen.rpc.entity.RpcResponse;
 import com.jchen.rpc.enumeration.ResponseCode;
+import com.jchen.rpc.exception.RpcException;
+import com.jchen.rpc.provider.MethodInvoker;
+import com.jchen.rpc.provider.ServiceInvoker;
 import com.jchen.rpc.provider.ServiceProvider;
 import com.jchen.rpc.provider.ServiceProviderImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
 
 /**
- * 进行方法调用的处理器，通过反射进行方法调用
+ * 进行方法调用的处理器，通过注册服务时创建的方法调用表进行方法调用
  *
  * @Auther: jchen
  * @Date: 2021/03/16/19:17
@@ -26,32 +28,69 @@ public class RequestHandler {
     }
 
     /**
-     * 通过输入的rpcRequest对象，查找对应的提供服务的对象，返回执行结果
+     * 通过输入的rpcRequest对象，查找对应的提供服务的对象，执行并生成响应，服务返回CompletableFuture时阻塞等待其完成
      * @param rpcRequest 客户端发送的rpcRequest对象
-     * @return 执行结果
+     * @return 响应对象
      */
-    public Object handle(RpcRequest rpcRequest) {
-        //查找服务
-        Object service = serviceProvider.getServiceProvider(rpcRequest.getInterfaceName());
-        return invokeTargetMethod(rpcRequest, service);
+    public RpcResponse<Object> handle(RpcRequest rpcRequest) {
+        return handleAsync(rpcRequest).join();
+    }
 
+    /**
+     * 通过输入的rpcRequest对象，查找对应的提供服务的对象，执行并生成响应
+     * 服务返回CompletableFuture时不等待，在其完成时再生成响应；返回的future不会以异常结束，调用失败时以失败的响应完成
+     * @param rpcRequest 客户端发送的rpcRequest对象
+     * @return 响应对象的future
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<RpcResponse<Object>> handleAsync(RpcRequest rpcRequest) {
+        Object result;
+        try {
+            //查找服务
+            ServiceInvoker serviceInvoker = serviceProvider.getServiceInvoker(rpcRequest.getInterfaceName());
+            result = invokeTargetMethod(rpcRequest, serviceInvoker);
+        } catch (RpcException e) {
+            logger.error("未找到服务: {}", rpcRequest.getInterfaceName());
+            return CompletableFuture.completedFuture(RpcResponse.fail(ResponseCode.CLASS_NOT_FOUND, rpcRequest.getRequestId()));
+        }
+        //调用失败时invokeTargetMethod返回的是失败的响应，直接使用，不再包装为成功的响应
+        if (result instanceof RpcResponse) {
+            return CompletableFuture.completedFuture((RpcResponse<Object>) result);
+        }
+        //异步接口的实现返回CompletableFuture，在其完成时生成响应
+        if (result instanceof CompletableFuture) {
+            return ((CompletableFuture<Object>) result).handle((data, e) -> {
+                if (e != null) {
+                    logger.error("服务:{} 异步方法:{} 执行失败", rpcRequest.getInterfaceName(), rpcRequest.getMethodName(), e);
+                    return RpcResponse.fail(ResponseCode.FAIL, rpcRequest.getRequestId());
+                }
+                return RpcResponse.success(data, rpcRequest.getRequestId());
+            });
+        }
+        return CompletableFuture.completedFuture(RpcResponse.success(result, rpcRequest.getRequestId()));
     }
 
     /**
-     * 通过反射进行方法调用，得到服务的实现方法，得到执行结果
+     * 在服务的方法调用表中查找方法并调用，得到执行结果
      * @param rpcRequest 请求对象
-     * @param service 提供服务的对象
-     * @return
+     * @param serviceInvoker 服务的方法调用表
+     * @return 执行结果，调用失败时为失败的响应对象
      */
-    private Object invokeTargetMethod(RpcRequest rpcRequest, Object service) {
+    private Object invokeTargetMethod(RpcRequest rpcRequest, ServiceInvoker serviceInvoker) {
+        MethodInvoker methodInvoker = serviceInvoker.getMethodInvoker(rpcRequest.getMethodName(), rpcRequest.getParamTypes());
+        //如果未找到对应方法，则返回错误的响应信息
+        if (methodInvoker == null) {
+            logger.error("服务:{} 未找到方法:{}", rpcRequest.getInterfaceName(), rpcRequest.getMethodName());
+            return RpcResponse.fail(ResponseCode.METHOD_NOT_FOUND, rpcRequest.getRequestId());
+        }
         Object result;
         try {
-            Method method = service.getClass().getMethod(rpcRequest.getMethodName(), rpcRequest.getParamTypes());
-            result = method.invoke(service, rpcRequest.getParameters());
+            result = methodInvoker.invoke(rpcRequest.getParameters());
             logger.info("服务:{} 成功调用方法:{}", rpcRequest.getInterfaceName(), rpcRequest.getMethodName());
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
-            //如果未找到对应方法或其他异常，则返回错误的响应信息
-            return RpcResponse.fail(ResponseCode.METHOD_NOT_FOUND, rpcRequest.getRequestId());
+        } catch (Throwable e) {
+            //服务方法执行时抛出异常，返回调用失败的响应信息
+            logger.error("服务:{} 方法:{} 执行失败", rpcRequest.getInterfaceName(), rpcRequest.getMethodName(), e);
+            return RpcResponse.fail(ResponseCode.FAIL, rpcRequest.getRequestId());
         }
         return result;
     }
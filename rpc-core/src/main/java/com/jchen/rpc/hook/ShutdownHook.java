@@ -1,6 +1,6 @@
 package com.jchen.rpc.hook;
 
-import com.jchen.rpc.util.NacosUtil;
+import com.jchen.rpc.registry.ServiceRegistry;
 import com.jchen.rpc.util.ThreadPoolFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,12 +26,13 @@ public class ShutdownHook {
 
     /**
      * 当JVM关闭时，会执行自动注销服务任务
+     * @param serviceRegistry 服务端注册服务时使用的注册中心
      */
-    public void addClearAllHook() {
+    public void addClearAllHook(ServiceRegistry serviceRegistry) {
         logger.info("关闭后将自动注销所有服务");
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             //注销对应服务器的服务
-            NacosUtil.clearRegistry();
+            serviceRegistry.clearRegistry();
             //关闭线程池
             ThreadPoolFactory.shutDownAll();
         }));
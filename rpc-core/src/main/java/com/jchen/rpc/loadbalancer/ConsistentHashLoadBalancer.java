@@ -0,0 +1,243 @@
+package com.jchen.rpc.loadbalancer;
+
+import com.alibaba.nacos.api.naming.pojo.Instance;
+import com.jchen.rpc.entity.RpcRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 一致性哈希策略，按请求中某个参数的值选择服务端，同一个参数值总是路由到同一个服务端，便于服务端按参数缓存数据
+ * 每个服务端按ketama算法在哈希环上放置若干虚拟节点（对"ip:port#序号"做MD5，每个摘要得到4个节点），
+ * 参数值的哈希落在环上后顺时针找到的第一个虚拟节点即为选中的服务端；服务端上下线时只有相邻区间的参数值改变路由
+ * 默认按第一个参数路由，可以为方法单独指定参数的位置；参数值通过toString()计算哈希，不同客户端进程得到的结果一致，
+ * 因此参与路由的参数必须是基本类型的包装类、字符串、枚举、这些类型的数组，或按值重写了toString()的类型；
+ * 没有重写toString()的类型，默认的toString()含有对象的身份哈希码，同一个值每次调用都会路由到不同的服务端，这时改为按方法路由并打印一次警告
+ * 与加权轮询相同，实例列表的引用变化时才重新构建哈希环
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/16/19:30
+ */
+public class ConsistentHashLoadBalancer implements LoadBalancer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConsistentHashLoadBalancer.class);
+
+    //<参数类型，toString()是否按值计算>，不能按值计算的类型在第一次遇到时打印警告
+    private static final ClassValue<Boolean> valueBasedToString = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            boolean valueBased;
+            try {
+                valueBased = type.getMethod("toString").getDeclaringClass() != Object.class;
+            } catch (NoSuchMethodException e) {
+                valueBased = false;
+            }
+            if (!valueBased) {
+                logger.warn("{} 没有重写toString()，无法作为一致性哈希的参数，改为按方法路由", type.getName());
+            }
+            return valueBased;
+        }
+    };
+
+    //每个服务端默认的虚拟节点数
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final int defaultArgumentIndex;
+    private final int virtualNodes;
+    //<接口名.方法名，参与哈希的参数位置>
+    private final Map<String, Integer> argumentIndexes = new ConcurrentHashMap<>();
+    //<服务名，哈希环>
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+
+    public ConsistentHashLoadBalancer() {
+        this(0);
+    }
+
+    public ConsistentHashLoadBalancer(int argumentIndex) {
+        this(argumentIndex, DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * @param argumentIndex 参与哈希的参数位置
+     * @param virtualNodes 每个服务端的虚拟节点数，会向上取整为4的倍数
+     */
+    public ConsistentHashLoadBalancer(int argumentIndex, int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("virtualNodes必须大于0");
+        }
+        this.defaultArgumentIndex = argumentIndex;
+        this.virtualNodes = virtualNodes;
+    }
+
+    /**
+     * 为某个方法单独指定参与哈希的参数位置
+     * @param interfaceName 接口名
+     * @param methodName 方法名
+     * @param argumentIndex 参数位置
+     */
+    public void bindArgument(String interfaceName, String methodName, int argumentIndex) {
+        argumentIndexes.put(interfaceName + "." + methodName, argumentIndex);
+    }
+
+    /**
+     * 没有请求时无法按参数路由，随机选择
+     */
+    @Override
+    public Instance select(List<Instance> instances) {
+        return instances.get(ThreadLocalRandom.current().nextInt(instances.size()));
+    }
+
+    @Override
+    public Instance select(List<Instance> instances, RpcRequest rpcRequest) {
+        if (instances.size() == 1) {
+            return instances.get(0);
+        }
+        String serviceName = instances.get(0).getServiceName();
+        String key = serviceName == null ? "" : serviceName;
+        Ring ring = rings.get(key);
+        if (ring == null || ring.source != instances) {
+            //并发的线程可能同时重新构建，结果相同，保留最后一个即可
+            ring = new Ring(instances, virtualNodes);
+            rings.put(key, ring);
+        }
+        return ring.select(hash(argumentOf(rpcRequest)));
+    }
+
+    private String argumentOf(RpcRequest rpcRequest) {
+        int index = defaultArgumentIndex;
+        if (!argumentIndexes.isEmpty()) {
+            Integer bound = argumentIndexes.get(rpcRequest.getInterfaceName() + "." + rpcRequest.getMethodName());
+            if (bound != null) {
+                index = bound;
+            }
+        }
+        Object[] parameters = rpcRequest.getParameters();
+        if (parameters == null || index < 0 || index >= parameters.length) {
+            //没有对应参数时按方法路由
+            return rpcRequest.getMethodName();
+        }
+        String key = keyOf(parameters[index]);
+        return key != null ? key : rpcRequest.getMethodName();
+    }
+
+    /**
+     * 参数值在不同客户端进程中一致的字符串形式
+     * @return 参数类型没有按值重写toString()时为null
+     */
+    private static String keyOf(Object value) {
+        if (value == null || value instanceof CharSequence || value instanceof Number
+                || value instanceof Boolean || value instanceof Character) {
+            return String.valueOf(value);
+        }
+        if (value instanceof Enum) {
+            return ((Enum<?>) value).name();
+        }
+        if (value instanceof Object[]) {
+            Object[] elements = (Object[]) value;
+            StringBuilder builder = new StringBuilder("[");
+            for (int i = 0; i < elements.length; i++) {
+                String element = keyOf(elements[i]);
+                if (element == null) {
+                    return null;
+                }
+                builder.append(i == 0 ? "" : ", ").append(element);
+            }
+            return builder.append(']').toString();
+        }
+        if (value.getClass().isArray()) {
+            //基本类型的数组
+            return Arrays.deepToString(new Object[]{value});
+        }
+        return valueBasedToString.get(value.getClass()) ? value.toString() : null;
+    }
+
+    /**
+     * 参数值的哈希，取FNV-1a后再经过murmur3的混合函数，结果落在[0, 2^32)上
+     */
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h & 0xFFFFFFFFL;
+    }
+
+    /**
+     * 一个实例列表对应的哈希环，虚拟节点的位置有序地保存在数组中，查找时二分
+     */
+    private static class Ring {
+        private final List<Instance> source;
+        private final long[] points;
+        private final Instance[] owners;
+
+        Ring(List<Instance> instances, int virtualNodes) {
+            this.source = instances;
+            int digests = (virtualNodes + 3) / 4;
+            int count = instances.size() * digests * 4;
+            //位置与实例下标合并为一个long排序，再拆成两个数组
+            long[] packed = new long[count];
+            long[] keys = new long[count];
+            Instance[] values = new Instance[count];
+            MessageDigest md5 = md5();
+            int n = 0;
+            for (int i = 0; i < instances.size(); i++) {
+                Instance instance = instances.get(i);
+                String address = instance.getIp() + ":" + instance.getPort();
+                for (int d = 0; d < digests; d++) {
+                    byte[] digest = md5.digest((address + "#" + d).getBytes(StandardCharsets.UTF_8));
+                    for (int k = 0; k < 4; k++) {
+                        long point = ((long) (digest[3 + k * 4] & 0xFF) << 24)
+                                | ((long) (digest[2 + k * 4] & 0xFF) << 16)
+                                | ((long) (digest[1 + k * 4] & 0xFF) << 8)
+                                | (digest[k * 4] & 0xFF);
+                        //高32位为位置，低32位为实例下标，翻转符号位使有符号排序的结果与无符号的位置顺序一致
+                        packed[n++] = (point << 32 | i) ^ Long.MIN_VALUE;
+                    }
+                }
+            }
+            Arrays.sort(packed);
+            for (int j = 0; j < count; j++) {
+                long entry = packed[j] ^ Long.MIN_VALUE;
+                keys[j] = entry >>> 32;
+                values[j] = instances.get((int) (entry & 0xFFFFFFFFL));
+            }
+            this.points = keys;
+            this.owners = values;
+        }
+
+        Instance select(long hash) {
+            int index = Arrays.binarySearch(points, hash);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            //超过最后一个节点时回到环的起点
+            if (index == points.length) {
+                index = 0;
+            }
+            return owners[index];
+        }
+
+        private static MessageDigest md5() {
+            try {
+                return MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("MD5 not supported", e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.jchen.rpc.loadbalancer;
+
+import com.alibaba.nacos.api.naming.pojo.Instance;
+import com.google.common.collect.MapMaker;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 客户端观察到的每个服务端地址的调用统计，由客户端在发出请求与收到响应（或失败）时更新，供感知负载的负载均衡策略使用：
+ * 1.active为正在进行的调用数；
+ * 2.cost为响应时间的峰值指数加权移动平均(peak EWMA)：新的响应时间高于当前值时直接取新值，低于时按距上次更新的时间衰减地靠近新值，
+ * 服务端出现停顿时cost立即升高，恢复后在数个衰减周期内回落；读取时同样按时间衰减，长时间没有调用的服务端会重新被选中
+ * 统计由快照中的实例和进行中的调用引用，服务端从所有快照中移除且没有调用在进行后随之回收，全局的表不会无限增长
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/16/16:40
+ */
+public class EndpointStats {
+
+    //衰减周期，单位纳秒
+    private static final double DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+    //还没有收到过响应的服务端，有调用在进行时的负载，避免新上线的服务端在第一个响应返回前收到大量请求
+    //取2^52纳秒（约52天），远大于任何实际的负载，且加上调用数后仍能精确表示，调用数不同的服务端可以区分
+    private static final double PENALTY = (double) (1L << 52);
+
+    //<服务端地址，统计>，所有客户端共用；弱引用统计，不再被实例或进行中的调用引用时自动清除
+    private static final Map<InetSocketAddress, EndpointStats> stats = new MapMaker().weakValues().makeMap();
+    //<实例，统计>，按引用查找，负载均衡每次选择时不再为实例创建地址；实例随快照被替换后自动清除
+    private static final Map<Instance, EndpointStats> instanceStats = new MapMaker().weakKeys().makeMap();
+
+    private final AtomicInteger active = new AtomicInteger();
+    //cost的double值的二进制形式，单位纳秒
+    private final AtomicLong cost = new AtomicLong(Double.doubleToRawLongBits(0));
+    private volatile long lastUpdate = System.nanoTime();
+
+    public static EndpointStats of(InetSocketAddress address) {
+        EndpointStats endpointStats = stats.get(address);
+        if (endpointStats == null) {
+            endpointStats = stats.computeIfAbsent(address, k -> new EndpointStats());
+        }
+        return endpointStats;
+    }
+
+    public static EndpointStats of(Instance instance) {
+        EndpointStats endpointStats = instanceStats.get(instance);
+        if (endpointStats == null) {
+            //与InstanceSnapshot以同样的方式创建地址，同一服务端的实例与地址对应同一份统计
+            endpointStats = of(new InetSocketAddress(instance.getIp(), instance.getPort()));
+            instanceStats.put(instance, endpointStats);
+        }
+        return endpointStats;
+    }
+
+    /**
+     * 发出请求前调用
+     * @return 开始时间，结束时传给end
+     */
+    public long begin() {
+        active.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * 收到响应或调用失败后调用，失败的调用同样以其耗时计入，超时的服务端因此会被避开
+     * @param startTime begin返回的开始时间
+     */
+    public void end(long startTime) {
+        active.decrementAndGet();
+        long now = System.nanoTime();
+        observe(now - startTime, now);
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    /**
+     * 当前衰减后的响应时间估计，单位纳秒
+     */
+    public double getCost() {
+        long now = System.nanoTime();
+        double current = Double.longBitsToDouble(cost.get());
+        return current * Math.exp(-Math.max(0, now - lastUpdate) / DECAY_NANOS);
+    }
+
+    /**
+     * 综合响应时间与正在进行的调用数的负载，值越小越空闲
+     */
+    public double getLoad() {
+        double cost = getCost();
+        int active = getActive();
+        if (cost == 0) {
+            return active == 0 ? 0 : PENALTY + active;
+        }
+        return cost * (active + 1);
+    }
+
+    private void observe(long rtt, long now) {
+        double weight = Math.exp(-Math.max(0, now - lastUpdate) / DECAY_NANOS);
+        while (true) {
+            long bits = cost.get();
+            double current = Double.longBitsToDouble(bits);
+            double next = rtt > current ? rtt : current * weight + rtt * (1 - weight);
+            if (cost.compareAndSet(bits, Double.doubleToRawLongBits(next))) {
+                break;
+            }
+        }
+        lastUpdate = now;
+    }
+}
@@ -0,0 +1,40 @@
+package com.jchen.rpc.loadbalancer;
+
+import com.alibaba.nacos.api.naming.pojo.Instance;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 最少活跃调用策略，选择客户端正在进行的调用数最少的服务端，调用数相同时随机选择
+ * 处理慢的服务端积压的调用多，会自动分到更少的请求
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/16/16:55
+ */
+public class LeastActiveLoadBalancer implements LoadBalancer {
+
+    @Override
+    public Instance select(List<Instance> instances) {
+        int size = instances.size();
+        if (size == 1) {
+            return instances.get(0);
+        }
+        Instance best = null;
+        int leastActive = Integer.MAX_VALUE;
+        //调用数最少的服务端个数，用于在其中等概率地随机选择
+        int leastCount = 0;
+        for (Instance instance : instances) {
+            int active = EndpointStats.of(instance).getActive();
+            if (active < leastActive) {
+                best = instance;
+                leastActive = active;
+                leastCount = 1;
+            } else if (active == leastActive && ThreadLocalRandom.current().nextInt(++leastCount) == 0) {
+                best = instance;
+            }
+        }
+        return best;
+    }
+
+}
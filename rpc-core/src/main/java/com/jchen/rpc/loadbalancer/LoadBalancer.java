@@ -1,6 +1,7 @@
 package com.jchen.rpc.loadbalancer;
 
 import com.alibaba.nacos.api.naming.pojo.Instance;
+import com.jchen.rpc.entity.RpcRequest;
 
 import java.util.List;
 
@@ -15,4 +16,14 @@ public interface  LoadBalancer {
     //从提供这个服务的服务端信息列表中选择一个
     Instance select(List<Instance> instances);
 
+    /**
+     * 根据请求从服务端信息列表中选择一个，需要按请求内容路由的策略（如一致性哈希）覆盖该方法，默认忽略请求
+     * @param instances 服务端信息列表
+     * @param rpcRequest 将要发送的请求
+     * @return
+     */
+    default Instance select(List<Instance> instances, RpcRequest rpcRequest) {
+        return select(instances);
+    }
+
 }
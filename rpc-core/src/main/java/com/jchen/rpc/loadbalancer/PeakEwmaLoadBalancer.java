@@ -0,0 +1,36 @@
+package com.jchen.rpc.loadbalancer;
+
+import com.alibaba.nacos.api.naming.pojo.Instance;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 基于响应时间的负载均衡策略(power of two choices + peak EWMA)
+ * 随机选出两个不同的服务端，比较二者的负载（响应时间的峰值EWMA乘以正在进行的调用数加一），选择负载较低的一个
+ * 只比较两个服务端，选择的开销与服务端数量无关；出现停顿的服务端响应时间立即升高，很快不再被选中
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/16/17:05
+ */
+public class PeakEwmaLoadBalancer implements LoadBalancer {
+
+    @Override
+    public Instance select(List<Instance> instances) {
+        int size = instances.size();
+        if (size == 1) {
+            return instances.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        //在其余size - 1个中选第二个，保证两个不同
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        Instance a = instances.get(first);
+        Instance b = instances.get(second);
+        return EndpointStats.of(a).getLoad() <= EndpointStats.of(b).getLoad() ? a : b;
+    }
+
+}
@@ -3,23 +3,40 @@ package com.jchen.rpc.loadbalancer;
 import com.alibaba.nacos.api.naming.pojo.Instance;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 轮询策略
+ * 每个服务使用单独的原子计数器，多个线程并发调用时不加锁；实例列表变化时按新的长度取模，不会越界
  *
  * @Auther: jchen
  * @Date: 2021/03/23/15:54
  */
 public class RoundRobinLoadBalancer implements LoadBalancer {
 
-    private int index = 0;
+    //<服务名，计数器>
+    private final Map<String, AtomicInteger> counters = new ConcurrentHashMap<>();
 
     @Override
     public Instance select(List<Instance> instances) {
-        if(index >= instances.size()) {
-            index %= instances.size();
+        int size = instances.size();
+        if (size == 1) {
+            return instances.get(0);
         }
-        return instances.get(index++);
+        AtomicInteger counter = counterOf(instances.get(0).getServiceName());
+        //计数器溢出后去掉符号位，保证下标非负
+        return instances.get((counter.getAndIncrement() & Integer.MAX_VALUE) % size);
     }
 
-}
\ No newline at end of file
+    private AtomicInteger counterOf(String serviceName) {
+        String key = serviceName == null ? "" : serviceName;
+        AtomicInteger counter = counters.get(key);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(key, k -> new AtomicInteger());
+        }
+        return counter;
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.jchen.rpc.loadbalancer;
+
+import com.alibaba.nacos.api.naming.pojo.Instance;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 平滑加权轮询策略，按Nacos中实例的权重(Instance.getWeight())分配请求，权重为0的实例不分配请求
+ * 实例列表第一次出现时按平滑加权轮询算法预先生成一轮完整的选择顺序，之后每次选择只需原子地递增下标，调用时不加锁；
+ * 注册中心的实例列表快照不变时列表是同一个对象，按引用判断列表是否变化，变化后重新生成选择顺序
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/16/15:10
+ */
+public class WeightedRoundRobinLoadBalancer implements LoadBalancer {
+
+    //权重保留两位小数
+    private static final int WEIGHT_SCALE = 100;
+    //一轮选择顺序的最大长度，权重之和超过该值时按比例缩小
+    private static final int MAX_SCHEDULE_LENGTH = 4096;
+
+    //<服务名，选择顺序>
+    private final Map<String, Schedule> schedules = new ConcurrentHashMap<>();
+
+    @Override
+    public Instance select(List<Instance> instances) {
+        if (instances.size() == 1) {
+            return instances.get(0);
+        }
+        String serviceName = instances.get(0).getServiceName();
+        String key = serviceName == null ? "" : serviceName;
+        Schedule schedule = schedules.get(key);
+        if (schedule == null || schedule.source != instances) {
+            //并发的线程可能同时重新生成，结果相同，保留最后一个即可
+            schedule = new Schedule(instances);
+            schedules.put(key, schedule);
+        }
+        return schedule.next();
+    }
+
+    /**
+     * 一个实例列表对应的一轮选择顺序
+     */
+    private static class Schedule {
+        private final List<Instance> source;
+        private final Instance[] sequence;
+        private final AtomicInteger index = new AtomicInteger();
+
+        Schedule(List<Instance> instances) {
+            this.source = instances;
+            this.sequence = build(instances);
+        }
+
+        Instance next() {
+            return sequence[(index.getAndIncrement() & Integer.MAX_VALUE) % sequence.length];
+        }
+
+        /**
+         * 平滑加权轮询：每一步每个实例的当前权重加上自身权重，选出当前权重最大的实例，再将其当前权重减去权重之和，
+         * 权重之和步之后所有实例的当前权重回到0，这一轮中每个实例被选中的次数等于其权重，且选中的位置分散
+         */
+        private static Instance[] build(List<Instance> instances) {
+            int size = instances.size();
+            int[] weights = new int[size];
+            long total = 0;
+            for (int i = 0; i < size; i++) {
+                weights[i] = (int) Math.min(Integer.MAX_VALUE, Math.max(0, Math.round(instances.get(i).getWeight() * WEIGHT_SCALE)));
+                total += weights[i];
+            }
+            if (total == 0) {
+                //所有实例的权重都为0时退化为普通轮询
+                return instances.toArray(new Instance[0]);
+            }
+            int divisor = 0;
+            for (int weight : weights) {
+                divisor = gcd(divisor, weight);
+            }
+            total = 0;
+            for (int i = 0; i < size; i++) {
+                weights[i] /= divisor;
+                total += weights[i];
+            }
+            if (total > MAX_SCHEDULE_LENGTH) {
+                long scaledTotal = 0;
+                for (int i = 0; i < size; i++) {
+                    if (weights[i] > 0) {
+                        weights[i] = (int) Math.max(1, (long) weights[i] * MAX_SCHEDULE_LENGTH / total);
+                    }
+                    scaledTotal += weights[i];
+                }
+                total = scaledTotal;
+            }
+            Instance[] sequence = new Instance[(int) total];
+            long[] current = new long[size];
+            for (int step = 0; step < sequence.length; step++) {
+                int best = -1;
+                for (int i = 0; i < size; i++) {
+                    if (weights[i] == 0) {
+                        continue;
+                    }
+                    current[i] += weights[i];
+                    if (best < 0 || current[i] > current[best]) {
+                        best = i;
+                    }
+                }
+                current[best] -= total;
+                sequence[step] = instances.get(best);
+            }
+            return sequence;
+        }
+
+        private static int gcd(int a, int b) {
+            while (b != 0) {
+                int t = a % b;
+                a = b;
+                b = t;
+            }
+            return a;
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.jchen.rpc.provider;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * 服务中一个方法的调用器，注册服务时创建
+ * 将方法转换为已绑定服务对象、参数展开为Object[]的MethodHandle，调用时不再需要反射查找方法，
+ * 也没有Method.invoke的访问检查
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/13/10:36
+ */
+public class MethodInvoker {
+
+    private static final Object[] NO_ARGS = new Object[0];
+    //统一的调用签名 (Object[])Object，使调用处可以使用invokeExact
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    private final Class<?>[] paramTypes;
+    private final MethodHandle methodHandle;
+
+    public MethodInvoker(Object service, Method method) throws IllegalAccessException {
+        //服务实现类不一定是public的，关闭访问检查后再转换
+        method.setAccessible(true);
+        this.paramTypes = method.getParameterTypes();
+        this.methodHandle = MethodHandles.lookup().unreflect(method)
+                .bindTo(service)
+                .asSpreader(Object[].class, paramTypes.length)
+                .asType(INVOKER_TYPE);
+    }
+
+    /**
+     * 判断参数类型是否与该方法一致，请求中的参数类型与服务端的Class对象相同，直接比较引用
+     */
+    public boolean matches(Class<?>[] types) {
+        int length = types == null ? 0 : types.length;
+        if (length != paramTypes.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (types[i] != paramTypes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 调用方法，方法本身抛出的异常原样抛出
+     * @param args 参数值
+     * @return 方法的返回值，void方法返回null
+     */
+    public Object invoke(Object[] args) throws Throwable {
+        return (Object) methodHandle.invokeExact(args == null ? NO_ARGS : args);
+    }
+}
@@ -0,0 +1,65 @@
+package com.jchen.rpc.provider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一个服务对象的方法调用表，注册服务时根据服务类的public方法创建，创建后不再修改
+ * 先按方法名找到同名的重载方法，再逐个比较参数类型，查找时不需要拼接字符串，也不会分配对象
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/13/10:52
+ */
+public class ServiceInvoker {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServiceInvoker.class);
+
+    private final Object service;
+    //<方法名，同名的重载方法>
+    private final Map<String, MethodInvoker[]> methodInvokers;
+
+    public ServiceInvoker(Object service) {
+        this.service = service;
+        Map<String, List<MethodInvoker>> invokers = new HashMap<>();
+        for (Method method : service.getClass().getMethods()) {
+            try {
+                invokers.computeIfAbsent(method.getName(), k -> new ArrayList<>()).add(new MethodInvoker(service, method));
+            } catch (IllegalAccessException | RuntimeException e) {
+                logger.warn("无法创建方法 {} 的调用器，该方法不能被远程调用", method, e);
+            }
+        }
+        this.methodInvokers = new HashMap<>(invokers.size() * 2);
+        for (Map.Entry<String, List<MethodInvoker>> entry : invokers.entrySet()) {
+            methodInvokers.put(entry.getKey(), entry.getValue().toArray(new MethodInvoker[0]));
+        }
+    }
+
+    /**
+     * 根据方法名和参数类型查找方法调用器
+     * @param methodName 方法名
+     * @param paramTypes 参数类型
+     * @return 找不到对应方法时返回null
+     */
+    public MethodInvoker getMethodInvoker(String methodName, Class<?>[] paramTypes) {
+        MethodInvoker[] candidates = methodInvokers.get(methodName);
+        if (candidates == null) {
+            return null;
+        }
+        for (MethodInvoker candidate : candidates) {
+            if (candidate.matches(paramTypes)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    public Object getService() {
+        return service;
+    }
+}
@@ -10,4 +10,11 @@ public interface ServiceProvider {
     <T> void addServiceProvider(T service, String serviceName);
 
     Object getServiceProvider(String serviceName);
+
+    /**
+     * 获取服务的方法调用表，注册服务时创建
+     * @param serviceName 服务名
+     * @return
+     */
+    ServiceInvoker getServiceInvoker(String serviceName);
 }
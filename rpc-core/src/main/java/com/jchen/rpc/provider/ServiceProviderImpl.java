@@ -21,12 +21,14 @@ public class ServiceProviderImpl implements ServiceProvider {
 
     //<服务名，提供服务的对象>
     private static final Map<String, Object> serviceMap =  new ConcurrentHashMap<>();
+    //<服务名，服务的方法调用表>
+    private static final Map<String, ServiceInvoker> invokerMap = new ConcurrentHashMap<>();
     //已经注册的服务
     private static final Set<String> registeredService  = ConcurrentHashMap.newKeySet();
 
 
     /**
-     * 向服务表中的添加服务以及提供服务的对象
+     * 向服务表中的添加服务以及提供服务的对象，同时创建服务的方法调用表
      * @param service 提供服务的对象
      * @param serviceName 服务名
      * @param <T>
@@ -35,6 +37,7 @@ public class ServiceProviderImpl implements ServiceProvider {
     public <T> void addServiceProvider(T service, String serviceName) {
         if (registeredService.contains(serviceName)) return;
         registeredService.add(serviceName);
+        invokerMap.put(serviceName, new ServiceInvoker(service));
         serviceMap.put(serviceName, service);
         logger.info("向接口: {} 注册服务: {}", service.getClass().getInterfaces(), serviceName);
     }
@@ -52,4 +55,18 @@ public class ServiceProviderImpl implements ServiceProvider {
         }
         return service;
     }
+
+    /**
+     * 获取服务的方法调用表，处理每个请求时都会调用，不加锁
+     * @param serviceName 服务名
+     * @return
+     */
+    @Override
+    public ServiceInvoker getServiceInvoker(String serviceName) {
+        ServiceInvoker serviceInvoker = invokerMap.get(serviceName);
+        if (serviceInvoker == null) {
+            throw new RpcException(RpcError.SERVICE_NOT_FOUND);
+        }
+        return serviceInvoker;
+    }
 }
@@ -0,0 +1,66 @@
+package com.jchen.rpc.registry;
+
+import com.alibaba.nacos.api.naming.pojo.Instance;
+import com.jchen.rpc.entity.RpcRequest;
+import com.jchen.rpc.enumeration.RpcError;
+import com.jchen.rpc.exception.RpcException;
+import com.jchen.rpc.loadbalancer.LoadBalancer;
+import com.jchen.rpc.loadbalancer.RandomLoadBalancer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+
+/**
+ * 服务发现的公共部分：取得服务的实例列表快照，由负载均衡策略选出一个实例，再换算成服务器地址
+ * 各注册中心只需提供实例列表快照
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/21/10:15
+ */
+public abstract class AbstractServiceDiscovery implements ServiceDiscovery {
+
+    private static final Logger logger = LoggerFactory.getLogger(AbstractServiceDiscovery.class);
+
+    private final LoadBalancer loadBalancer;
+
+    /**
+     * @param loadBalancer 负载均衡策略，为null时使用随机策略
+     */
+    protected AbstractServiceDiscovery(LoadBalancer loadBalancer) {
+        if (loadBalancer == null) {
+            this.loadBalancer = new RandomLoadBalancer();
+        } else {
+            this.loadBalancer = loadBalancer;
+        }
+    }
+
+    /**
+     * 取得服务的实例列表快照
+     * @param serviceName 服务名称
+     * @return 实例列表快照，服务不存在时返回null或空快照
+     */
+    protected abstract InstanceSnapshot getSnapshot(String serviceName);
+
+    @Override
+    public InetSocketAddress lookupService(String serviceName) {
+        return lookupService(serviceName, null);
+    }
+
+    @Override
+    public InetSocketAddress lookupService(RpcRequest rpcRequest) {
+        return lookupService(rpcRequest.getInterfaceName(), rpcRequest);
+    }
+
+    private InetSocketAddress lookupService(String serviceName, RpcRequest rpcRequest) {
+        InstanceSnapshot snapshot = getSnapshot(serviceName);
+        if (snapshot == null || snapshot.isEmpty()) {
+            logger.error("找不到对应的服务: " + serviceName);
+            throw new RpcException(RpcError.SERVICE_NOT_FOUND);
+        }
+        //负载均衡策略
+        Instance instance = rpcRequest == null
+                ? loadBalancer.select(snapshot.getInstances()) : loadBalancer.select(snapshot.getInstances(), rpcRequest);
+        return snapshot.addressOf(instance);
+    }
+}
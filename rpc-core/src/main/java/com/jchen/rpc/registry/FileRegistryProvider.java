@@ -0,0 +1,30 @@
+package com.jchen.rpc.registry;
+
+import com.jchen.rpc.loadbalancer.LoadBalancer;
+
+/**
+ * 基于内存映射文件的注册中心，同一台机器上的多个进程通过同一个文件注册与发现服务，适用于单机部署
+ * 文件路径由系统属性rpc.registry.file指定，默认为临时目录下的my-rpc-registry.dat
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/16/10:16
+ */
+public class FileRegistryProvider implements RegistryProvider {
+
+    public static final String NAME = "file";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public ServiceRegistry createServiceRegistry() {
+        return new FileServiceRegistry(MappedRegistryFile.getDefault());
+    }
+
+    @Override
+    public ServiceDiscovery createServiceDiscovery(LoadBalancer loadBalancer) {
+        return new FileServiceDiscovery(MappedRegistryFile.getDefault(), loadBalancer);
+    }
+}
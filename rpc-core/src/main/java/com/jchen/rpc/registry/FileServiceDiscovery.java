@@ -0,0 +1,24 @@
+package com.jchen.rpc.registry;
+
+import com.jchen.rpc.loadbalancer.LoadBalancer;
+
+/**
+ * 基于内存映射文件的服务发现，在同一台机器上共享的注册表文件中查找服务
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/16/11:26
+ */
+public class FileServiceDiscovery extends AbstractServiceDiscovery {
+
+    private final MappedRegistryFile registryFile;
+
+    public FileServiceDiscovery(MappedRegistryFile registryFile, LoadBalancer loadBalancer) {
+        super(loadBalancer);
+        this.registryFile = registryFile;
+    }
+
+    @Override
+    protected InstanceSnapshot getSnapshot(String serviceName) {
+        return registryFile.getSnapshot(serviceName);
+    }
+}
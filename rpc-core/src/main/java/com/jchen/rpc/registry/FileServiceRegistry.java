@@ -0,0 +1,47 @@
+package com.jchen.rpc.registry;
+
+import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * 基于内存映射文件的服务注册，将服务写入同一台机器上共享的注册表文件
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/16/11:20
+ */
+public class FileServiceRegistry implements ServiceRegistry {
+
+    private final MappedRegistryFile registryFile;
+    //通过该对象注册的服务，注销时使用
+    private final Set<String> serviceNames = new CopyOnWriteArraySet<>();
+    private volatile InetSocketAddress address;
+
+    public FileServiceRegistry(MappedRegistryFile registryFile) {
+        this.registryFile = registryFile;
+    }
+
+    @Override
+    public void register(String serviceName, InetSocketAddress inetSocketAddress) {
+        registryFile.register(serviceName, ipOf(inetSocketAddress), inetSocketAddress.getPort());
+        address = inetSocketAddress;
+        serviceNames.add(serviceName);
+    }
+
+    @Override
+    public void clearRegistry() {
+        InetSocketAddress address = this.address;
+        if (address == null) {
+            return;
+        }
+        for (String serviceName : serviceNames) {
+            registryFile.deregister(serviceName, ipOf(address), address.getPort());
+        }
+        serviceNames.clear();
+    }
+
+    private static String ipOf(InetSocketAddress inetSocketAddress) {
+        return inetSocketAddress.getAddress() != null
+                ? inetSocketAddress.getAddress().getHostAddress() : inetSocketAddress.getHostString();
+    }
+}
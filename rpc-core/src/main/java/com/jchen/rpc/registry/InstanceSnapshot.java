@@ -0,0 +1,57 @@
+package com.jchen.rpc.registry;
+
+import com.alibaba.nacos.api.naming.pojo.Instance;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 某个服务在某一时刻的实例列表快照，创建后不再修改，可以被多个线程无锁地读取
+ * 创建时预先计算好每个实例的地址，查找服务时不再为每次调用创建InetSocketAddress
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/15/10:18
+ */
+public class InstanceSnapshot {
+
+    //快照的版本号，实例列表每变化一次加一
+    private final long version;
+    private final List<Instance> instances;
+    //<实例，实例地址>，负载均衡选出的实例就是列表中的对象，按引用查找
+    private final Map<Instance, InetSocketAddress> addresses;
+
+    public InstanceSnapshot(long version, List<Instance> instances) {
+        this.version = version;
+        this.instances = Collections.unmodifiableList(new ArrayList<>(instances));
+        this.addresses = new IdentityHashMap<>(instances.size());
+        for (Instance instance : this.instances) {
+            addresses.put(instance, new InetSocketAddress(instance.getIp(), instance.getPort()));
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<Instance> getInstances() {
+        return instances;
+    }
+
+    public boolean isEmpty() {
+        return instances.isEmpty();
+    }
+
+    /**
+     * 获取实例的地址
+     * @param instance 从该快照的实例列表中选出的实例
+     * @return
+     */
+    public InetSocketAddress addressOf(Instance instance) {
+        InetSocketAddress address = addresses.get(instance);
+        return address != null ? address : new InetSocketAddress(instance.getIp(), instance.getPort());
+    }
+}
@@ -0,0 +1,258 @@
+package com.jchen.rpc.registry;
+
+import com.alibaba.nacos.api.naming.pojo.Instance;
+import com.jchen.rpc.enumeration.RpcError;
+import com.jchen.rpc.exception.RpcException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 内存映射的注册表文件，同一台机器上的多个进程映射同一个文件，共享注册信息
+ * 文件由文件头与固定数量、固定大小的槽组成：
+ * 文件头：魔数(4字节) | 保留(4字节) | 版本号(8字节)，每次注册或注销版本号加一
+ * 槽：状态(1字节，1为有效) | 端口(4字节) | 服务名长度(2字节) | 地址长度(2字节) | 服务名 | 地址
+ * 写入时持有文件的排他锁，重新读取时持有共享锁，防止读到写了一半的槽；同一进程内对同一个文件只打开一次，由对象锁保证互斥
+ * 查找服务时只读取文件头的版本号，版本号没有变化时直接使用上次读取时生成的快照
+ * 进程异常退出时未能注销的服务会留在文件中，直到同一地址重新注册或被注销
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/16/10:40
+ */
+public class MappedRegistryFile {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedRegistryFile.class);
+
+    //指定注册表文件路径的系统属性
+    public static final String FILE_PROPERTY = "rpc.registry.file";
+    public static final String DEFAULT_FILE_NAME = "my-rpc-registry.dat";
+
+    private static final int MAGIC = 0x4D524652;
+    private static final int VERSION_OFFSET = 8;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 256;
+    private static final int SLOT_COUNT = 4096;
+    private static final int SLOT_HEADER_SIZE = 9;
+    private static final int FILE_SIZE = HEADER_SIZE + SLOT_SIZE * SLOT_COUNT;
+
+    private static final byte SLOT_FREE = 0;
+    private static final byte SLOT_USED = 1;
+
+    //<文件绝对路径，注册表文件>
+    private static final Map<String, MappedRegistryFile> files = new ConcurrentHashMap<>();
+
+    private final Path path;
+    private final FileChannel fileChannel;
+    private final MappedByteBuffer buffer;
+
+    //上次读取文件时生成的<服务名，实例列表快照>
+    private volatile Map<String, InstanceSnapshot> snapshots = Collections.emptyMap();
+    private volatile long loadedVersion = -1;
+
+    private MappedRegistryFile(Path path) {
+        this.path = path;
+        try {
+            fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            buffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+            FileLock lock = fileChannel.lock();
+            try {
+                int magic = buffer.getInt(0);
+                if (magic == 0) {
+                    buffer.putInt(0, MAGIC);
+                } else if (magic != MAGIC) {
+                    logger.error("{} 不是注册表文件", path);
+                    throw new RpcException(RpcError.FAILED_TO_CONNECT_TO_SERVICE_REGISTRY, path.toString());
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            logger.error("打开注册表文件 {} 时有错误发生:", path, e);
+            throw new RpcException(RpcError.FAILED_TO_CONNECT_TO_SERVICE_REGISTRY, path.toString(), e);
+        }
+    }
+
+    /**
+     * 获取系统属性rpc.registry.file指定的注册表文件，未指定时使用临时目录下的my-rpc-registry.dat
+     */
+    public static MappedRegistryFile getDefault() {
+        String file = System.getProperty(FILE_PROPERTY);
+        if (file == null) {
+            return get(Paths.get(System.getProperty("java.io.tmpdir"), DEFAULT_FILE_NAME));
+        }
+        return get(Paths.get(file));
+    }
+
+    public static MappedRegistryFile get(Path path) {
+        Path absolutePath = path.toAbsolutePath().normalize();
+        return files.computeIfAbsent(absolutePath.toString(), key -> new MappedRegistryFile(absolutePath));
+    }
+
+    /**
+     * 注册一个实例，同一服务的同一地址已经注册过时复用原来的槽
+     */
+    public synchronized void register(String serviceName, String ip, int port) {
+        byte[] name = serviceName.getBytes(StandardCharsets.UTF_8);
+        byte[] host = ip.getBytes(StandardCharsets.UTF_8);
+        if (SLOT_HEADER_SIZE + name.length + host.length > SLOT_SIZE) {
+            logger.error("服务名过长，无法写入注册表文件: {}", serviceName);
+            throw new RpcException(RpcError.REGISTER_SERVICE_FAILED, serviceName);
+        }
+        try {
+            FileLock lock = fileChannel.lock();
+            try {
+                int freeSlot = -1;
+                for (int i = 0; i < SLOT_COUNT; i++) {
+                    int offset = slotOffset(i);
+                    if (buffer.get(offset) == SLOT_FREE) {
+                        if (freeSlot < 0) {
+                            freeSlot = i;
+                        }
+                    } else if (matches(offset, name, host, port)) {
+                        return;
+                    }
+                }
+                if (freeSlot < 0) {
+                    logger.error("注册表文件 {} 已满", path);
+                    throw new RpcException(RpcError.REGISTER_SERVICE_FAILED, serviceName);
+                }
+                int offset = slotOffset(freeSlot);
+                ByteBuffer slot = buffer.duplicate();
+                slot.position(offset + 1);
+                slot.putInt(port).putShort((short) name.length).putShort((short) host.length).put(name).put(host);
+                //内容写完后再将槽置为有效
+                buffer.put(offset, SLOT_USED);
+                incrementVersion();
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            logger.error("写入注册表文件 {} 时有错误发生:", path, e);
+            throw new RpcException(RpcError.REGISTER_SERVICE_FAILED, serviceName, e);
+        }
+    }
+
+    /**
+     * 注销一个实例
+     */
+    public synchronized void deregister(String serviceName, String ip, int port) {
+        byte[] name = serviceName.getBytes(StandardCharsets.UTF_8);
+        byte[] host = ip.getBytes(StandardCharsets.UTF_8);
+        try {
+            FileLock lock = fileChannel.lock();
+            try {
+                boolean removed = false;
+                for (int i = 0; i < SLOT_COUNT; i++) {
+                    int offset = slotOffset(i);
+                    if (buffer.get(offset) == SLOT_USED && matches(offset, name, host, port)) {
+                        buffer.put(offset, SLOT_FREE);
+                        removed = true;
+                    }
+                }
+                if (removed) {
+                    incrementVersion();
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            logger.error("注销服务{}失败", serviceName, e);
+        }
+    }
+
+    /**
+     * 获取服务的实例列表快照，文件的版本号变化时重新读取文件
+     * @param serviceName 服务名
+     * @return 没有实例时为null
+     */
+    public InstanceSnapshot getSnapshot(String serviceName) {
+        if (buffer.getLong(VERSION_OFFSET) != loadedVersion) {
+            reload();
+        }
+        return snapshots.get(serviceName);
+    }
+
+    private synchronized void reload() {
+        try {
+            FileLock lock = fileChannel.lock(0, Long.MAX_VALUE, true);
+            try {
+                long version = buffer.getLong(VERSION_OFFSET);
+                if (version == loadedVersion) {
+                    return;
+                }
+                Map<String, List<Instance>> instances = new HashMap<>();
+                for (int i = 0; i < SLOT_COUNT; i++) {
+                    int offset = slotOffset(i);
+                    if (buffer.get(offset) != SLOT_USED) {
+                        continue;
+                    }
+                    int port = buffer.getInt(offset + 1);
+                    byte[] name = new byte[buffer.getShort(offset + 5)];
+                    byte[] host = new byte[buffer.getShort(offset + 7)];
+                    ByteBuffer slot = buffer.duplicate();
+                    slot.position(offset + SLOT_HEADER_SIZE);
+                    slot.get(name).get(host);
+                    Instance instance = new Instance();
+                    instance.setServiceName(new String(name, StandardCharsets.UTF_8));
+                    instance.setIp(new String(host, StandardCharsets.UTF_8));
+                    instance.setPort(port);
+                    instances.computeIfAbsent(instance.getServiceName(), key -> new ArrayList<>()).add(instance);
+                }
+                Map<String, InstanceSnapshot> newSnapshots = new HashMap<>(instances.size() * 2);
+                for (Map.Entry<String, List<Instance>> entry : instances.entrySet()) {
+                    newSnapshots.put(entry.getKey(), new InstanceSnapshot(version, entry.getValue()));
+                }
+                snapshots = newSnapshots;
+                loadedVersion = version;
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            //读取失败时继续使用上次的快照
+            logger.error("读取注册表文件 {} 时有错误发生:", path, e);
+        }
+    }
+
+    private boolean matches(int offset, byte[] name, byte[] host, int port) {
+        if (buffer.getInt(offset + 1) != port
+                || buffer.getShort(offset + 5) != name.length
+                || buffer.getShort(offset + 7) != host.length) {
+            return false;
+        }
+        int position = offset + SLOT_HEADER_SIZE;
+        for (byte b : name) {
+            if (buffer.get(position++) != b) {
+                return false;
+            }
+        }
+        for (byte b : host) {
+            if (buffer.get(position++) != b) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void incrementVersion() {
+        buffer.putLong(VERSION_OFFSET, buffer.getLong(VERSION_OFFSET) + 1);
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+}
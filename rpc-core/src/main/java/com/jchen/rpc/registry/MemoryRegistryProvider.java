@@ -0,0 +1,29 @@
+package com.jchen.rpc.registry;
+
+import com.jchen.rpc.loadbalancer.LoadBalancer;
+
+/**
+ * 进程内的注册中心，服务端与客户端在同一进程内时使用，适用于测试与性能测试
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/16/10:14
+ */
+public class MemoryRegistryProvider implements RegistryProvider {
+
+    public static final String NAME = "memory";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public ServiceRegistry createServiceRegistry() {
+        return new MemoryServiceRegistry();
+    }
+
+    @Override
+    public ServiceDiscovery createServiceDiscovery(LoadBalancer loadBalancer) {
+        return new MemoryServiceDiscovery(loadBalancer);
+    }
+}
@@ -0,0 +1,25 @@
+package com.jchen.rpc.registry;
+
+import com.jchen.rpc.loadbalancer.LoadBalancer;
+
+/**
+ * 进程内的服务发现，在MemoryServiceRegistry的注册表中查找服务
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/16/10:26
+ */
+public class MemoryServiceDiscovery extends AbstractServiceDiscovery {
+
+    public MemoryServiceDiscovery() {
+        this(null);
+    }
+
+    public MemoryServiceDiscovery(LoadBalancer loadBalancer) {
+        super(loadBalancer);
+    }
+
+    @Override
+    protected InstanceSnapshot getSnapshot(String serviceName) {
+        return MemoryServiceRegistry.getSnapshot(serviceName);
+    }
+}
@@ -0,0 +1,96 @@
+package com.jchen.rpc.registry;
+
+import com.alibaba.nacos.api.naming.pojo.Instance;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内的服务注册中心，所有MemoryServiceRegistry共用同一张注册表，由同一进程内的MemoryServiceDiscovery查找
+ * 每个服务的实例列表保存为不可变快照，注册与注销时整体替换，查找服务时无锁读取
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/16/10:20
+ */
+public class MemoryServiceRegistry implements ServiceRegistry {
+
+    //<服务名，实例列表快照>
+    private static final Map<String, InstanceSnapshot> snapshots = new ConcurrentHashMap<>();
+    private static final AtomicLong versionGenerator = new AtomicLong();
+
+    //通过该对象注册的服务，注销时使用
+    private final Set<Registration> registrations = new CopyOnWriteArraySet<>();
+
+    @Override
+    public void register(String serviceName, InetSocketAddress inetSocketAddress) {
+        String ip = inetSocketAddress.getAddress() != null
+                ? inetSocketAddress.getAddress().getHostAddress() : inetSocketAddress.getHostString();
+        snapshots.compute(serviceName, (name, snapshot) -> {
+            List<Instance> instances = snapshot == null ? new ArrayList<>() : new ArrayList<>(snapshot.getInstances());
+            instances.removeIf(instance -> instance.getIp().equals(ip) && instance.getPort() == inetSocketAddress.getPort());
+            Instance instance = new Instance();
+            instance.setServiceName(serviceName);
+            instance.setIp(ip);
+            instance.setPort(inetSocketAddress.getPort());
+            instances.add(instance);
+            return new InstanceSnapshot(versionGenerator.incrementAndGet(), instances);
+        });
+        registrations.add(new Registration(serviceName, ip, inetSocketAddress.getPort()));
+    }
+
+    @Override
+    public void clearRegistry() {
+        for (Registration registration : registrations) {
+            snapshots.computeIfPresent(registration.serviceName, (name, snapshot) -> {
+                List<Instance> instances = new ArrayList<>(snapshot.getInstances());
+                instances.removeIf(instance -> instance.getIp().equals(registration.ip) && instance.getPort() == registration.port);
+                return instances.isEmpty() ? null : new InstanceSnapshot(versionGenerator.incrementAndGet(), instances);
+            });
+        }
+        registrations.clear();
+    }
+
+    /**
+     * 获取服务的实例列表快照
+     * @param serviceName 服务名
+     * @return 没有实例时为null
+     */
+    static InstanceSnapshot getSnapshot(String serviceName) {
+        return snapshots.get(serviceName);
+    }
+
+    private static class Registration {
+        private final String serviceName;
+        private final String ip;
+        private final int port;
+
+        Registration(String serviceName, String ip, int port) {
+            this.serviceName = serviceName;
+            this.ip = ip;
+            this.port = port;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Registration)) {
+                return false;
+            }
+            Registration that = (Registration) o;
+            return port == that.port && serviceName.equals(that.serviceName) && ip.equals(that.ip);
+        }
+
+        @Override
+        public int hashCode() {
+            return (serviceName.hashCode() * 31 + ip.hashCode()) * 31 + port;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.jchen.rpc.registry;
+
+import com.jchen.rpc.loadbalancer.LoadBalancer;
+
+/**
+ * Nacos注册中心，默认使用的注册中心
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/16/10:12
+ */
+public class NacosRegistryProvider implements RegistryProvider {
+
+    public static final String NAME = "nacos";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public ServiceRegistry createServiceRegistry() {
+        return new NacosServiceRegistry();
+    }
+
+    @Override
+    public ServiceDiscovery createServiceDiscovery(LoadBalancer loadBalancer) {
+        return new NacosServiceDiscovery(loadBalancer);
+    }
+}
@@ -1,59 +1,122 @@
 package com.jchen.rpc.registry;
 
 import com.alibaba.nacos.api.exception.NacosException;
-import com.alibaba.nacos.api.naming.NamingService;
+import com.alibaba.nacos.api.naming.listener.NamingEvent;
 import com.alibaba.nacos.api.naming.pojo.Instance;
 import com.jchen.rpc.enumeration.RpcError;
 import com.jchen.rpc.exception.RpcException;
 import com.jchen.rpc.loadbalancer.LoadBalancer;
-import com.jchen.rpc.loadbalancer.RandomLoadBalancer;
 import com.jchen.rpc.util.NacosUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.net.InetSocketAddress;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 基于Nacos的服务发现/查找类
+ * 每个服务的实例列表在第一次查找时从Nacos拉取并订阅，之后由Nacos推送的变更事件更新，并定时全量刷新作为兜底，
+ * 查找服务时只读取本地的不可变快照，不访问Nacos；Nacos暂时不可用时继续使用最后一次得到的快照
  * @Auther: jchen
  * @Date: 2021/03/22/15:51
  */
-public class NacosServiceDiscovery implements ServiceDiscovery {
+public class NacosServiceDiscovery extends AbstractServiceDiscovery {
 
     private static final Logger logger = LoggerFactory.getLogger(NacosServiceDiscovery.class);
 
-    private final LoadBalancer loadBalancer;
+    //定时全量刷新的间隔，单位秒
+    private static final long REFRESH_INTERVAL = 30;
+    //<服务名，实例列表快照>，所有NacosServiceDiscovery共用
+    private static final Map<String, InstanceSnapshot> snapshots = new ConcurrentHashMap<>();
+    //已订阅变更事件的服务名，与快照是否拉取成功分开记录，拉取失败后重试时不会重复订阅
+    private static final Set<String> subscribedServices = ConcurrentHashMap.newKeySet();
+    private static final AtomicLong versionGenerator = new AtomicLong();
+    private static final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(
+            new DefaultThreadFactory("nacos-discovery-refresher", true));
+
+    static {
+        refresher.scheduleWithFixedDelay(NacosServiceDiscovery::refreshAll, REFRESH_INTERVAL, REFRESH_INTERVAL, TimeUnit.SECONDS);
+    }
 
     public NacosServiceDiscovery(LoadBalancer loadBalancer) {
-        if (loadBalancer == null) {
-            this.loadBalancer = new RandomLoadBalancer();
-        } else {
-            this.loadBalancer = loadBalancer;
-        }
+        super(loadBalancer);
     }
 
     /**
-     * 在Nacos中查找服务名对应的服务器
+     * 在本地快照中查找服务名对应的实例列表，快照不存在时从Nacos拉取并订阅
      * @param serviceName 服务名称
-     * @return 服务器地址
+     * @return 实例列表快照
      */
     @Override
-    public InetSocketAddress lookupService(String serviceName) {
+    protected InstanceSnapshot getSnapshot(String serviceName) {
+        InstanceSnapshot snapshot = snapshots.get(serviceName);
+        if (snapshot == null) {
+            snapshot = snapshots.computeIfAbsent(serviceName, NacosServiceDiscovery::load);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 第一次查找服务时，订阅服务的变更事件并拉取实例列表
+     * 订阅成功而拉取失败时，下次查找只重新拉取，不再重复订阅
+     */
+    private static InstanceSnapshot load(String serviceName) {
         try {
-            //在Nacos中查找所有能够提供服务的实例
-            List<Instance> instances = NacosUtil.getAllInstance(serviceName);
-            if(instances.size() == 0) {
-                logger.error("找不到对应的服务: " + serviceName);
-                throw new RpcException(RpcError.SERVICE_NOT_FOUND);
+            //先订阅，避免拉取与订阅之间的变更丢失
+            if (subscribedServices.add(serviceName)) {
+                try {
+                    NacosUtil.subscribe(serviceName, event -> {
+                        if (event instanceof NamingEvent) {
+                            update(serviceName, ((NamingEvent) event).getInstances());
+                        }
+                    });
+                } catch (NacosException | RuntimeException e) {
+                    subscribedServices.remove(serviceName);
+                    throw e;
+                }
             }
-            //负载均衡策略
-            Instance instance = loadBalancer.select(instances);
-            return new InetSocketAddress(instance.getIp(), instance.getPort());
+            //在Nacos中查找所有能够提供服务的实例
+            return newSnapshot(NacosUtil.getAllInstance(serviceName));
         } catch (NacosException e) {
             logger.error("获取服务时有错误发生:", e);
+            throw new RpcException(RpcError.FAILED_TO_CONNECT_TO_SERVICE_REGISTRY);
+        }
+    }
+
+    /**
+     * 收到Nacos推送的变更事件时，用最新的实例列表替换快照
+     */
+    private static void update(String serviceName, List<Instance> instances) {
+        InstanceSnapshot snapshot = newSnapshot(instances);
+        snapshots.put(serviceName, snapshot);
+        logger.info("服务 {} 的实例列表已更新，共 {} 个实例，版本 {}", serviceName, instances.size(), snapshot.getVersion());
+    }
+
+    /**
+     * 定时全量刷新，防止推送丢失；刷新失败时保留原快照
+     * 刷新期间如果收到了推送，推送的结果更新，放弃本次刷新的结果
+     */
+    private static void refreshAll() {
+        for (Map.Entry<String, InstanceSnapshot> entry : snapshots.entrySet()) {
+            String serviceName = entry.getKey();
+            try {
+                List<Instance> instances = NacosUtil.getAllInstance(serviceName);
+                snapshots.replace(serviceName, entry.getValue(), newSnapshot(instances));
+            } catch (NacosException | RuntimeException e) {
+                logger.warn("刷新服务 {} 的实例列表失败，继续使用版本 {} 的快照", serviceName, entry.getValue().getVersion(), e);
+            }
         }
-        return null;
     }
 
-}
\ No newline at end of file
+    private static InstanceSnapshot newSnapshot(List<Instance> instances) {
+        return new InstanceSnapshot(versionGenerator.incrementAndGet(), instances);
+    }
+
+}
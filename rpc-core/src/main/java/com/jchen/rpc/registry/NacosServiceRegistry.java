@@ -1,9 +1,6 @@
 package com.jchen.rpc.registry;
 
 import com.alibaba.nacos.api.exception.NacosException;
-import com.alibaba.nacos.api.naming.NamingFactory;
-import com.alibaba.nacos.api.naming.NamingService;
-import com.alibaba.nacos.api.naming.pojo.Instance;
 import com.jchen.rpc.enumeration.RpcError;
 import com.jchen.rpc.exception.RpcException;
 import com.jchen.rpc.util.NacosUtil;
@@ -11,7 +8,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
-import java.util.List;
 
 /**
  * Nacos服务注册中心
@@ -32,4 +28,9 @@ public class NacosServiceRegistry implements ServiceRegistry {
         }
     }
 
+    @Override
+    public void clearRegistry() {
+        NacosUtil.clearRegistry();
+    }
+
 }
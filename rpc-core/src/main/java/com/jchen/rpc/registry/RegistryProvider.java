@@ -0,0 +1,29 @@
+package com.jchen.rpc.registry;
+
+import com.jchen.rpc.loadbalancer.LoadBalancer;
+
+/**
+ * 注册中心的SPI接口，每种注册中心提供一个实现，在META-INF/services/com.jchen.rpc.registry.RegistryProvider中声明，
+ * 通过ServiceLoader加载，由RegistryFactory按名称选择
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/16/10:05
+ */
+public interface RegistryProvider {
+
+    /**
+     * 注册中心的名称，用于系统属性rpc.registry选择注册中心
+     */
+    String getName();
+
+    /**
+     * 创建服务端使用的服务注册对象
+     */
+    ServiceRegistry createServiceRegistry();
+
+    /**
+     * 创建客户端使用的服务发现对象
+     * @param loadBalancer 负载均衡策略，为null时使用随机策略
+     */
+    ServiceDiscovery createServiceDiscovery(LoadBalancer loadBalancer);
+}
@@ -1,5 +1,7 @@
 package com.jchen.rpc.registry;
 
+import com.jchen.rpc.entity.RpcRequest;
+
 import java.net.InetSocketAddress;
 
 /**
@@ -18,4 +20,14 @@ public interface ServiceDiscovery {
      */
     InetSocketAddress lookupService(String serviceName);
 
+    /**
+     * 为请求查找服务实体，负载均衡策略可以根据请求的内容选择服务端
+     *
+     * @param rpcRequest 将要发送的请求
+     * @return 服务实体
+     */
+    default InetSocketAddress lookupService(RpcRequest rpcRequest) {
+        return lookupService(rpcRequest.getInterfaceName());
+    }
+
 }
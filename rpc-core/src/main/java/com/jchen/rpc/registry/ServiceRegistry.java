@@ -16,4 +16,10 @@ public interface ServiceRegistry {
      * @param inetSocketAddress 提供服务的地址
      */
     void register(String serviceName, InetSocketAddress inetSocketAddress);
+
+    /**
+     * 注销通过该对象注册的所有服务，服务端关闭时由ShutdownHook调用
+     */
+    default void clearRegistry() {
+    }
 }
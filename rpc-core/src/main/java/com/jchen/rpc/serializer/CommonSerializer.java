@@ -1,5 +1,7 @@
 package com.jchen.rpc.serializer;
 
+import io.netty.buffer.ByteBuf;
+
 /**
  * 通用的序列化反序列化接口，包含序列化和反序列化数据的功能
  *
@@ -34,5 +36,28 @@ public interface CommonSerializer {
 
     Object deserialize(byte[] bytes, Class<?> clazz);
 
+    /**
+     * 将对象直接序列化写入Netty的ByteBuf，省去中间的byte[]以及再拷贝进ByteBuf的过程
+     * 默认实现退化为byte[]方式，各序列化器应覆盖该方法
+     * @param obj 待序列化的对象
+     * @param out 写入的目标ByteBuf
+     */
+    default void serialize(Object obj, ByteBuf out) {
+        out.writeBytes(serialize(obj));
+    }
+
+    /**
+     * 直接从ByteBuf中反序列化对象，读取in中全部可读的字节
+     * 默认实现先拷贝出byte[]，各序列化器应覆盖该方法
+     * @param in 只包含一个完整对象数据的ByteBuf
+     * @param clazz 对象类型
+     * @return 反序列化后的对象
+     */
+    default Object deserialize(ByteBuf in, Class<?> clazz) {
+        byte[] bytes = new byte[in.readableBytes()];
+        in.readBytes(bytes);
+        return deserialize(bytes, clazz);
+    }
+
     int getCode();
 }
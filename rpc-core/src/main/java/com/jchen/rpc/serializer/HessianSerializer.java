@@ -4,12 +4,16 @@ import com.caucho.hessian.io.HessianInput;
 import com.caucho.hessian.io.HessianOutput;
 import com.jchen.rpc.enumeration.SerializerCode;
 import com.jchen.rpc.exception.SerializeException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * 基于Hessian协议的序列化器
@@ -60,6 +64,36 @@ public class HessianSerializer implements CommonSerializer {
         }
     }
 
+    @Override
+    public void serialize(Object obj, ByteBuf out) {
+        try {
+            HessianOutput hessianOutput = new HessianOutput(new ByteBufOutputStream(out));
+            hessianOutput.writeObject(obj);
+            hessianOutput.flush();
+        } catch (IOException e) {
+            logger.error("序列化时发生错误：", e);
+            throw new SerializeException("序列化时有错误发生：");
+        }
+    }
+
+    @Override
+    public Object deserialize(ByteBuf in, Class<?> clazz) {
+        InputStream inputStream;
+        if (in.hasArray()) {
+            inputStream = new ByteArrayInputStream(in.array(), in.arrayOffset() + in.readerIndex(), in.readableBytes());
+        } else {
+            inputStream = new ByteBufInputStream(in);
+        }
+        try {
+            Object obj = new HessianInput(inputStream).readObject();
+            in.skipBytes(in.readableBytes());
+            return obj;
+        } catch (IOException e) {
+            logger.error("反序列化时有错误发生：" , e);
+            throw new SerializeException("反序列化时有错误发生：");
+        }
+    }
+
     @Override
     public int getCode() {
         return SerializerCode.valueOf("HESSIAN").getCode();
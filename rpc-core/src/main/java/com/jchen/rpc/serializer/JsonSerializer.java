@@ -1,14 +1,20 @@
 package com.jchen.rpc.serializer;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jchen.rpc.exception.SerializeException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.jchen.rpc.entity.RpcRequest;
 import com.jchen.rpc.enumeration.SerializerCode;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * 使用JSON格式的序列化器，执行序列化和反序列化功能
@@ -21,7 +27,8 @@ public class JsonSerializer implements CommonSerializer {
 
     private static final Logger logger = LoggerFactory.getLogger(JsonSerializer.class);
 
-    private ObjectMapper objectMapper = new ObjectMapper();
+    //transient字段（如只在协议头中传输的请求号）对应的整个属性都不参与序列化，与其他序列化器的行为一致
+    private ObjectMapper objectMapper = new ObjectMapper().configure(MapperFeature.PROPAGATE_TRANSIENT_MARKER, true);
 
     @Override
     public byte[] serialize(Object obj) {
@@ -47,6 +54,36 @@ public class JsonSerializer implements CommonSerializer {
         }
     }
 
+    @Override
+    public void serialize(Object obj, ByteBuf out) {
+        try {
+            objectMapper.writeValue((OutputStream) new ByteBufOutputStream(out), obj);
+        } catch (IOException e) {
+            logger.error("序列化时有错误发生:", e);
+            throw new SerializeException("序列化时有错误发生");
+        }
+    }
+
+    @Override
+    public Object deserialize(ByteBuf in, Class<?> clazz) {
+        try {
+            Object obj;
+            if (in.hasArray()) {
+                obj = objectMapper.readValue(in.array(), in.arrayOffset() + in.readerIndex(), in.readableBytes(), clazz);
+                in.skipBytes(in.readableBytes());
+            } else {
+                obj = objectMapper.readValue((InputStream) new ByteBufInputStream(in), clazz);
+            }
+            if(obj instanceof RpcRequest) {
+                obj = handleRequest(obj);
+            }
+            return obj;
+        } catch (IOException e) {
+            logger.error("反序列化时有错误发生:", e);
+            throw new SerializeException("反序列化时有错误发生");
+        }
+    }
+
     /*
         这里由于使用JSON序列化和反序列化Object数组(参数值Object[] parameters;)，无法保证反序列化后仍然为原实例类型，
         因为在序列化时JSON本质上只是转换成JSON字符串，不会记录对象的类型信息，因此需要ParamTypes来获取对象信息，辅助反序列化。
@@ -1,22 +1,33 @@
 package com.jchen.rpc.serializer;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import com.jchen.rpc.entity.RpcRequest;
 import com.jchen.rpc.entity.RpcResponse;
 import com.jchen.rpc.enumeration.SerializerCode;
 import com.jchen.rpc.exception.SerializeException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Kryo序列化，基于字节的，对空间利用率较高，在网络传输时可以减小体积
  * 相比于JSON，序列化时记录了属性对象的类型信息，无需传入class或type类信息辅助序列化
+ * Kryo实例不是线程安全的，创建时还要注册类，开销较大：实例连同可复用的Output、Input放在有界的池中，
+ * 每次序列化借出一个，用完归还，池中没有空闲实例时新建，归还时池已满则丢弃；
+ * 不使用ThreadLocal，每个请求一个虚拟线程时也能复用实例
+ * 写入ByteBuf时Output以ByteBufOutputStream为目标，缓冲区只是固定大小的暂存区，写满即写入ByteBuf，不再先完整序列化到byte[]
+ * 常用类型以固定的id预先注册，序列化时用id代替类的全限定名；id是协议的一部分，只能追加，不能修改或删除
  *
  * @Auther: jchen
  * @Date: 2021/03/18/13:24
@@ -25,39 +36,116 @@ public class KryoSerializer implements CommonSerializer {
 
     private static final Logger logger = LoggerFactory.getLogger(KryoSerializer.class);
 
-    private static final ThreadLocal<Kryo> kryoThreadLocal = ThreadLocal.withInitial(() -> {
+    //池中最多保留的空闲实例数
+    private static final int MAX_POOLED_INSTANCES = Math.max(16, Runtime.getRuntime().availableProcessors() * 4);
+    //Output缓冲区的初始大小，写入更多数据时自动扩容
+    private static final int OUTPUT_BUFFER_SIZE = 4 * 1024;
+    //写入ByteBuf时Output暂存区的大小，写满时写入ByteBuf，不扩容
+    private static final int BYTE_BUF_OUTPUT_BUFFER_SIZE = 1024;
+    //序列化过大的对象后Output缓冲区超过该大小时，归还前重新分配，避免池中长期占用内存
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+    private static final byte[] EMPTY_BYTES = new byte[0];
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
+    private static final Queue<KryoContext> pool = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooledInstances = new AtomicInteger();
+
+    /**
+     * 创建Kryo实例并以固定的id注册常用类型，Kryo默认注册的基本类型占用0~9
+     */
+    private static Kryo newKryo() {
         Kryo kryo = new Kryo();
-        kryo.register(RpcResponse.class);//注册类的全限定名，序列化时用一个id来代替全限定名
-        kryo.register(RpcRequest.class);
+        //注册类的全限定名，序列化时用一个id来代替全限定名，与之前按注册顺序分配的id保持一致
+        kryo.register(RpcResponse.class, 10);
+        kryo.register(RpcRequest.class, 11);
+        //请求中的参数与参数类型
+        kryo.register(Object[].class, 20);
+        kryo.register(Class.class, 21);
+        kryo.register(Class[].class, 22);
+        //服务参数与返回值中的常用类型
+        kryo.register(byte[].class, 23);
+        kryo.register(int[].class, 24);
+        kryo.register(long[].class, 25);
+        kryo.register(String[].class, 26);
+        kryo.register(ArrayList.class, 27);
+        kryo.register(LinkedList.class, 28);
+        kryo.register(HashMap.class, 29);
+        kryo.register(LinkedHashMap.class, 30);
+        kryo.register(HashSet.class, 31);
+        kryo.register(LinkedHashSet.class, 32);
+        kryo.register(TreeMap.class, 33);
+        kryo.register(Date.class, 34);
+        kryo.register(BigDecimal.class, 35);
+        kryo.register(BigInteger.class, 36);
         kryo.setReferences(true);//打开循环引用的支持，防止栈内存溢出
-        kryo.setRegistrationRequired(false);//禁止类注册
+        kryo.setRegistrationRequired(false);//未注册的类以全限定名序列化
         return kryo;
-    });
+    }
 
     @Override
     public byte[] serialize(Object obj) {
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        Output output = new Output(byteArrayOutputStream);
+        KryoContext context = borrow();
         try {
-            Kryo kryo = kryoThreadLocal.get();
-            kryo.writeObject(output, obj);
-            kryoThreadLocal.remove();
-            return output.toBytes();
+            Output output = context.output;
+            context.kryo.writeObject(output, obj);
+            byte[] bytes = output.toBytes();
+            release(context);
+            return bytes;
         } catch (Exception e) {
             logger.error("序列化时有错误发生:", e);
-            e.printStackTrace();
             throw new SerializeException("序列化时有错误发生");
         }
     }
 
     @Override
     public Object deserialize(byte[] bytes, Class<?> clazz) {
-        ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(bytes);
-        Input input = new Input(byteArrayInputStream);
+        KryoContext context = borrow();
+        try {
+            Input input = context.input;
+            input.setBuffer(bytes);
+            Object o = context.kryo.readObject(input, clazz);
+            release(context);
+            return o;
+        } catch (Exception e) {
+            logger.error("反序列化时有错误发生:", e);
+            throw new SerializeException("反序列化时有错误发生");
+        }
+    }
+
+    @Override
+    public void serialize(Object obj, ByteBuf out) {
+        KryoContext context = borrow();
+        try {
+            Output output = context.byteBufOutput;
+            output.setOutputStream(new ByteBufOutputStream(out));
+            context.kryo.writeObject(output, obj);
+            //写出暂存区中剩余的数据
+            output.flush();
+            release(context);
+        } catch (Exception e) {
+            logger.error("序列化时有错误发生:", e);
+            throw new SerializeException("序列化时有错误发生");
+        }
+    }
+
+    @Override
+    public Object deserialize(ByteBuf in, Class<?> clazz) {
+        KryoContext context = borrow();
         try {
-            Kryo kryo = kryoThreadLocal.get();
-            Object o = kryo.readObject(input, clazz);
-            kryoThreadLocal.remove();
+            Object o;
+            if (in.hasArray()) {
+                //堆内存直接读取底层数组，不做拷贝
+                Input input = context.input;
+                input.setBuffer(in.array(), in.arrayOffset() + in.readerIndex(), in.readableBytes());
+                o = context.kryo.readObject(input, clazz);
+            } else {
+                //直接内存通过ByteBuffer读取，同样不做拷贝
+                ByteBufferInput input = context.byteBufferInput;
+                input.setBuffer(in.nioBuffer());
+                o = context.kryo.readObject(input, clazz);
+            }
+            in.skipBytes(in.readableBytes());
+            release(context);
             return o;
         } catch (Exception e) {
             logger.error("反序列化时有错误发生:", e);
@@ -69,4 +157,53 @@ public class KryoSerializer implements CommonSerializer {
     public int getCode() {
         return SerializerCode.valueOf("KRYO").getCode();
     }
+
+    /**
+     * 从池中借出一个实例，没有空闲实例时新建
+     */
+    private static KryoContext borrow() {
+        KryoContext context = pool.poll();
+        if (context == null) {
+            return new KryoContext();
+        }
+        pooledInstances.decrementAndGet();
+        return context;
+    }
+
+    /**
+     * 归还实例，池已满时丢弃；序列化出错的实例状态不确定，不归还
+     */
+    private static void release(KryoContext context) {
+        context.reset();
+        if (pooledInstances.incrementAndGet() <= MAX_POOLED_INSTANCES) {
+            pool.offer(context);
+        } else {
+            pooledInstances.decrementAndGet();
+        }
+    }
+
+    /**
+     * 池中的一个实例，Kryo实例及与其一起复用的Output、Input
+     */
+    private static class KryoContext {
+        private final Kryo kryo = newKryo();
+        private final Output output = new Output(OUTPUT_BUFFER_SIZE, -1);
+        private final Output byteBufOutput = new Output(BYTE_BUF_OUTPUT_BUFFER_SIZE, -1);
+        private final Input input = new Input();
+        private final ByteBufferInput byteBufferInput = new ByteBufferInput();
+
+        /**
+         * 清空缓冲区，并释放对调用方数据的引用
+         */
+        void reset() {
+            if (output.getBuffer().length > MAX_RETAINED_BUFFER_SIZE) {
+                output.setBuffer(new byte[OUTPUT_BUFFER_SIZE], -1);
+            } else {
+                output.clear();
+            }
+            byteBufOutput.setOutputStream(null);
+            input.setBuffer(EMPTY_BYTES);
+            byteBufferInput.setBuffer(EMPTY_BUFFER);
+        }
+    }
 }
@@ -1,11 +1,16 @@
 package com.jchen.rpc.serializer;
 
 import com.jchen.rpc.enumeration.SerializerCode;
+import com.jchen.rpc.exception.SerializeException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 import io.protostuff.ProtostuffIOUtil;
 import io.protostuff.LinkedBuffer;
 import io.protostuff.Schema;
 import io.protostuff.runtime.RuntimeSchema;
 
+import java.io.IOException;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
@@ -17,7 +22,8 @@ import java.util.concurrent.ConcurrentHashMap;
  * @Date: 2021/03/21/16:56
  */
 public class ProtobufSerializer implements CommonSerializer {
-    private LinkedBuffer buffer = LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE);
+    //LinkedBuffer不是线程安全的，而同一个序列化器会被多个Channel所在的线程共用，因此每个线程持有一个
+    private static final ThreadLocal<LinkedBuffer> BUFFER = ThreadLocal.withInitial(() -> LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE));
     private Map<Class<?>, Schema<?>> schemaCache = new ConcurrentHashMap<>();
 
     @Override
@@ -25,6 +31,7 @@ public class ProtobufSerializer implements CommonSerializer {
     public byte[] serialize(Object obj) {
         Class clazz = obj.getClass();
         Schema schema = getSchema(clazz);
+        LinkedBuffer buffer = BUFFER.get();
         byte[] data;
         try {
             data = ProtostuffIOUtil.toByteArray(obj, schema, buffer);
@@ -57,6 +64,38 @@ public class ProtobufSerializer implements CommonSerializer {
         return obj;
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public void serialize(Object obj, ByteBuf out) {
+        Schema schema = getSchema(obj.getClass());
+        LinkedBuffer buffer = BUFFER.get();
+        try {
+            ProtostuffIOUtil.writeTo(new ByteBufOutputStream(out), obj, schema, buffer);
+        } catch (IOException e) {
+            throw new SerializeException("序列化时有错误发生");
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object deserialize(ByteBuf in, Class<?> clazz) {
+        Schema schema = getSchema(clazz);
+        Object obj = schema.newMessage();
+        if (in.hasArray()) {
+            ProtostuffIOUtil.mergeFrom(in.array(), in.arrayOffset() + in.readerIndex(), in.readableBytes(), obj, schema);
+            in.skipBytes(in.readableBytes());
+        } else {
+            try {
+                ProtostuffIOUtil.mergeFrom(new ByteBufInputStream(in), obj, schema);
+            } catch (IOException e) {
+                throw new SerializeException("反序列化时有错误发生");
+            }
+        }
+        return obj;
+    }
+
     @Override
     public int getCode() {
         return SerializerCode.valueOf("PROTOBUF").getCode();
@@ -82,7 +82,7 @@ public abstract class AbstractRpcServer implements RpcServer {
     }
 
     /**
-     * 将服务保存在本地的注册表，同时注册到Nacos
+     * 将服务保存在本地的注册表，同时注册到注册中心
      * @param service 提供服务的对象
      * @param serviceName 服务名
      * @param <T>
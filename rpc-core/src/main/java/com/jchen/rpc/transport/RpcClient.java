@@ -1,7 +1,11 @@
 package com.jchen.rpc.transport;
 
 import com.jchen.rpc.entity.RpcRequest;
+import com.jchen.rpc.entity.RpcResponse;
 import com.jchen.rpc.serializer.CommonSerializer;
+import com.jchen.rpc.util.RpcMessageChecker;
+
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 客户端类通用接口
@@ -12,7 +16,59 @@ import com.jchen.rpc.serializer.CommonSerializer;
 public interface RpcClient {
 
     int DEFAULT_SERIALIZER = CommonSerializer.KRYO_SERIALIZER;
+    //默认的响应超时时间，单位毫秒
+    long DEFAULT_TIMEOUT = 5000;
+
+    default Object sendRequest(RpcRequest rpcRequest) {
+        return sendRequest(rpcRequest, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * 发送请求，超过timeout毫秒未收到响应时调用失败，抛出RpcException
+     * @param rpcRequest RpcRequest对象
+     * @param timeout 超时时间，单位毫秒，不大于0时不设超时
+     * @return
+     */
+    Object sendRequest(RpcRequest rpcRequest, long timeout);
+
+    /**
+     * 异步发送请求，返回的future在收到响应时完成，超时或连接断开时以RpcException结束
+     * 默认实现在当前线程同步调用sendRequest，NettyClient覆盖为不阻塞的实现
+     * @param rpcRequest RpcRequest对象
+     * @param timeout 超时时间，单位毫秒，不大于0时不设超时
+     * @return
+     */
+    default CompletableFuture<RpcResponse> sendRequestAsync(RpcRequest rpcRequest, long timeout) {
+        CompletableFuture<RpcResponse> future = new CompletableFuture<>();
+        try {
+            future.complete((RpcResponse) sendRequest(rpcRequest, timeout));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    default CompletableFuture<Object> invokeAsync(String interfaceName, String methodName, Object[] parameters, Class<?>[] paramTypes) {
+        return invokeAsync(interfaceName, methodName, parameters, paramTypes, DEFAULT_TIMEOUT);
+    }
 
-    Object sendRequest(RpcRequest rpcRequest);
+    /**
+     * 不依赖接口类型的异步调用，适用于网关等只知道接口名与方法签名的场景
+     * 返回的future在客户端的IO线程中完成，其中不应执行阻塞操作
+     * @param interfaceName 接口名
+     * @param methodName 方法名
+     * @param parameters 参数值
+     * @param paramTypes 参数类型
+     * @param timeout 超时时间，单位毫秒
+     * @return 以服务端返回数据完成的future
+     */
+    default CompletableFuture<Object> invokeAsync(String interfaceName, String methodName, Object[] parameters,
+                                                  Class<?>[] paramTypes, long timeout) {
+        RpcRequest rpcRequest = new RpcRequest(null, interfaceName, methodName, parameters, paramTypes, false);
+        return sendRequestAsync(rpcRequest, timeout).thenApply(rpcResponse -> {
+            RpcMessageChecker.check(rpcRequest, rpcResponse);
+            return rpcResponse.getData();
+        });
+    }
 
 }
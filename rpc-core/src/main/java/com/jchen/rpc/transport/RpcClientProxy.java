@@ -2,6 +2,7 @@ package com.jchen.rpc.transport;
 
 import com.jchen.rpc.entity.RpcRequest;
 import com.jchen.rpc.entity.RpcResponse;
+import com.jchen.rpc.exception.RpcException;
 import com.jchen.rpc.transport.netty.client.NettyClient;
 import com.jchen.rpc.transport.socket.client.SocketClient;
 import com.jchen.rpc.util.RpcMessageChecker;
@@ -11,7 +12,6 @@ import org.slf4j.LoggerFactory;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
@@ -27,9 +27,16 @@ public class RpcClientProxy implements InvocationHandler {
     private static final Logger logger = LoggerFactory.getLogger(RpcClientProxy.class);
 
     private final RpcClient client;
+    //通过该代理发出的请求的超时时间，单位毫秒
+    private final long timeout;
 
     public RpcClientProxy(RpcClient client) {
+        this(client, RpcClient.DEFAULT_TIMEOUT);
+    }
+
+    public RpcClientProxy(RpcClient client, long timeout) {
         this.client = client;
+        this.timeout = timeout;
     }
 
     /**
@@ -43,11 +50,23 @@ public class RpcClientProxy implements InvocationHandler {
         return (T) Proxy.newProxyInstance(clazz.getClassLoader(), new Class<?>[]{clazz}, this);
     }
 
+    /**
+     * 生成代理对象，并为该服务单独指定超时时间
+     * @param clazz 需要代理的接口类型
+     * @param timeout 超时时间，单位毫秒
+     * @param <T> 代理类类型
+     * @return
+     */
+    public <T> T getProxy(Class<T> clazz, long timeout) {
+        return new RpcClientProxy(client, timeout).getProxy(clazz);
+    }
+
     /**
      * 继承InvocationHandler接口需要重写invoke方法，方法内是当代理类调用接口的方法时执行的逻辑
-     * 1.生成RpcRequest请求对象，包含请求号，接口名，方法名，参数值，参数类型，是否是心跳包
+     * 1.生成RpcRequest请求对象，包含接口名，方法名，参数值，参数类型，是否是心跳包
      * 2.选择Netty传输或Socket传输，向服务端发送请求
      * 3.接受服务端的响应结果
+     * 如果方法的返回类型是CompletableFuture，则不阻塞调用线程，直接返回在收到响应时完成的future
      * @param proxy
      * @param method
      * @param args
@@ -57,24 +76,38 @@ public class RpcClientProxy implements InvocationHandler {
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) {
         logger.info("调用方法: {}#{}", method.getDeclaringClass().getName(), method.getName());
-        //生成request对象，包含请求号，接口名，方法名，参数值，参数类型，是否是心跳包
-        RpcRequest rpcRequest = new RpcRequest(UUID.randomUUID().toString(), method.getDeclaringClass().getName(),
+        //生成request对象，包含接口名，方法名，参数值，参数类型，是否是心跳包，请求号由客户端发送时分配
+        RpcRequest rpcRequest = new RpcRequest(null, method.getDeclaringClass().getName(),
                 method.getName(), args, method.getParameterTypes(), false);
+        //0.异步接口，响应到达后在客户端的IO线程中检查响应并完成future
+        if (method.getReturnType() == CompletableFuture.class) {
+            return client.sendRequestAsync(rpcRequest, timeout).thenApply(rpcResponse -> {
+                RpcMessageChecker.check(rpcRequest, rpcResponse);
+                return rpcResponse.getData();
+            });
+        }
         RpcResponse rpcResponse = null;
         //1.当客户端通过Netty传输时
         if (client instanceof NettyClient) {
             try {
                 //接受服务端响应结果
-                CompletableFuture<RpcResponse> completableFuture = (CompletableFuture<RpcResponse>) client.sendRequest(rpcRequest);
+                CompletableFuture<RpcResponse> completableFuture = (CompletableFuture<RpcResponse>) client.sendRequest(rpcRequest, timeout);
                 rpcResponse = completableFuture.get();
-            } catch (InterruptedException | ExecutionException e) {
+            } catch (ExecutionException e) {
+                //超时或连接断开时future以RpcException结束，直接抛给调用方
+                if (e.getCause() instanceof RpcException) {
+                    throw (RpcException) e.getCause();
+                }
+                logger.error("方法调用请求发送失败", e);
+                return null;
+            } catch (InterruptedException e) {
                 logger.error("方法调用请求发送失败", e);
                 return null;
             }
         }
         //2.当客户端通过socket传输时
         if (client instanceof SocketClient) {
-            rpcResponse = (RpcResponse) client.sendRequest(rpcRequest);
+            rpcResponse = (RpcResponse) client.sendRequest(rpcRequest, timeout);
         }
         //通过requestId检查响应与请求是否匹配
         RpcMessageChecker.check(rpcRequest, rpcResponse);
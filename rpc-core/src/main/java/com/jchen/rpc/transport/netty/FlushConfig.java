@@ -0,0 +1,42 @@
+package com.jchen.rpc.transport.netty;
+
+import io.netty.handler.flush.FlushConsolidationHandler;
+
+/**
+ * 合并flush的配置，对应Netty的FlushConsolidationHandler
+ * 多次flush只在累计explicitFlushAfterFlushes次或没有更多待处理的读写时才真正flush一次，减少write系统调用
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/17/15:10
+ */
+public class FlushConfig {
+
+    //累计多少次flush后强制flush一次
+    private final int explicitFlushAfterFlushes;
+    //没有正在进行的读操作时（如业务线程写出）是否也合并flush，为true时将flush推迟到IO线程处理完已排队的任务之后
+    private final boolean consolidateWhenNoReadInProgress;
+
+    public FlushConfig() {
+        this(FlushConsolidationHandler.DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES, true);
+    }
+
+    public FlushConfig(int explicitFlushAfterFlushes, boolean consolidateWhenNoReadInProgress) {
+        if (explicitFlushAfterFlushes < 1) {
+            throw new IllegalArgumentException("explicitFlushAfterFlushes必须大于0");
+        }
+        this.explicitFlushAfterFlushes = explicitFlushAfterFlushes;
+        this.consolidateWhenNoReadInProgress = consolidateWhenNoReadInProgress;
+    }
+
+    public int getExplicitFlushAfterFlushes() {
+        return explicitFlushAfterFlushes;
+    }
+
+    public boolean isConsolidateWhenNoReadInProgress() {
+        return consolidateWhenNoReadInProgress;
+    }
+
+    public FlushConsolidationHandler newHandler() {
+        return new FlushConsolidationHandler(explicitFlushAfterFlushes, consolidateWhenNoReadInProgress);
+    }
+}
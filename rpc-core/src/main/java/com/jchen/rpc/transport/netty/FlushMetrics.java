@@ -0,0 +1,71 @@
+package com.jchen.rpc.transport.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 统计写到Socket的数据包数、字节数与实际的flush次数，用于观察flush合并的效果
+ * 作为pipeline中最靠近Socket的handler，同一个客户端或服务端的所有连接共用一个实例；批量包计为一个数据包
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/17/15:20
+ */
+@ChannelHandler.Sharable
+public class FlushMetrics extends ChannelOutboundHandlerAdapter {
+
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        messages.increment();
+        if (msg instanceof ByteBuf) {
+            bytes.add(((ByteBuf) msg).readableBytes());
+        }
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        flushes.increment();
+        ctx.flush();
+    }
+
+    public long getMessages() {
+        return messages.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    /**
+     * 平均每次flush写出的数据包数
+     */
+    public double getMessagesPerFlush() {
+        long flushCount = flushes.sum();
+        return flushCount == 0 ? 0 : (double) messages.sum() / flushCount;
+    }
+
+    public void reset() {
+        messages.reset();
+        bytes.reset();
+        flushes.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("messages=%d, bytes=%d, flushes=%d, messagesPerFlush=%.2f",
+                getMessages(), getBytes(), getFlushes(), getMessagesPerFlush());
+    }
+}
@@ -0,0 +1,63 @@
+package com.jchen.rpc.transport.netty;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Netty的IO实现：
+ * NIO为JDK的Selector实现，所有平台可用；
+ * EPOLL为Linux上基于epoll的原生实现（netty-all中已包含x86_64与aarch64的本地库），延迟更低、产生的垃圾更少，
+ * 并支持SO_REUSEPORT、TCP_QUICKACK等选项，不可用时（非Linux或本地库加载失败）退回NIO
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/18/10:05
+ */
+public enum NettyTransport {
+
+    NIO,
+    EPOLL;
+
+    /**
+     * Linux上本地库可用时使用EPOLL，否则使用NIO
+     */
+    public static NettyTransport auto() {
+        return Epoll.isAvailable() ? EPOLL : NIO;
+    }
+
+    public boolean isAvailable() {
+        return this == NIO || Epoll.isAvailable();
+    }
+
+    /**
+     * 不可用的原因，可用时为null
+     */
+    public Throwable unavailabilityCause() {
+        return this == NIO ? null : Epoll.unavailabilityCause();
+    }
+
+    /**
+     * @param threads 线程数，为0时使用Netty的默认值（CPU核数的两倍）
+     * @param threadFactory 线程工厂
+     */
+    public EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+        return this == EPOLL ? new EpollEventLoopGroup(threads, threadFactory) : new NioEventLoopGroup(threads, threadFactory);
+    }
+
+    public Class<? extends SocketChannel> socketChannelClass() {
+        return this == EPOLL ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    public Class<? extends ServerSocketChannel> serverSocketChannelClass() {
+        return this == EPOLL ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+}
@@ -0,0 +1,298 @@
+package com.jchen.rpc.transport.netty;
+
+import com.jchen.rpc.codec.BatchConfig;
+import com.jchen.rpc.codec.CommonDecoder;
+import com.jchen.rpc.codec.CommonEncoder;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.AdaptiveRecvByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.EpollChannelOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Netty传输层的配置，客户端(ChannelProvider)与服务端(NettyServer)共用：
+ * 1.ByteBuf分配器，默认使用池化的分配器，IO时优先使用直接内存；
+ * 2.读缓冲区的大小由AdaptiveRecvByteBufAllocator在最小值与最大值之间根据每次实际读到的字节数自适应调整；
+ * 3.Socket的发送/接收缓冲区大小，为0时使用操作系统的默认值；
+ * 4.写缓冲区的高低水位，待写出的数据超过高水位时Channel变为不可写，降到低水位以下后恢复；服务端在不可写期间暂停读取新的请求，响应不丢弃；
+ * 5.允许的最大数据包长度，以及编码器第一次分配输出缓冲区的大小（之后按实际编码的长度自适应）；
+ * 6.批量发送与合并flush的配置；
+ * 7.IO实现（NIO或Linux上的原生epoll），未指定时使用系统属性rpc.transport的值（nio或epoll），仍未指定时epoll可用则使用epoll；
+ * 使用epoll时可以开启SO_REUSEPORT，服务端在同一端口上绑定多个监听Socket，由多个线程accept，以及开启TCP_QUICKACK立即回复ACK
+ * 各项在创建客户端或服务端之前设置，之后修改不会影响已经创建的连接
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/17/17:30
+ */
+public class TransportConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransportConfig.class);
+
+    //指定IO实现的系统属性
+    public static final String TRANSPORT_PROPERTY = "rpc.transport";
+
+    //已经警告过不可用的IO实现，每种只警告一次
+    private static final Set<NettyTransport> warnedUnavailable = ConcurrentHashMap.newKeySet();
+
+    private NettyTransport transport = null;
+    //第一次取得时确定的实际IO实现，修改transport时重新确定
+    private volatile NettyTransport resolvedTransport = null;
+    private boolean reusePort = false;
+    private int acceptorThreads = 1;
+    private boolean tcpQuickAck = false;
+
+    private ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+    private int minReceiveBufferSize = 64;
+    private int initialReceiveBufferSize = 1024;
+    private int maxReceiveBufferSize = 64 * 1024;
+    private int sendBufferSize = 0;
+    private int receiveBufferSize = 0;
+    private int writeBufferLowWaterMark = 32 * 1024;
+    private int writeBufferHighWaterMark = 64 * 1024;
+    private int maxFrameLength = CommonDecoder.DEFAULT_MAX_FRAME_LENGTH;
+    private int initialEncodeBufferSize = CommonEncoder.DEFAULT_INITIAL_BUFFER_SIZE;
+    private BatchConfig batchConfig = null;
+    private FlushConfig flushConfig = new FlushConfig();
+
+    /**
+     * 设置客户端Bootstrap中每个连接的选项
+     */
+    public void applyTo(Bootstrap bootstrap) {
+        if (tcpQuickAck && getTransport() == NettyTransport.EPOLL) {
+            bootstrap.option(EpollChannelOption.TCP_QUICKACK, true);
+        }
+        bootstrap.option(ChannelOption.ALLOCATOR, allocator)
+                .option(ChannelOption.RCVBUF_ALLOCATOR, newRecvByteBufAllocator())
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK, newWriteBufferWaterMark());
+        if (sendBufferSize > 0) {
+            bootstrap.option(ChannelOption.SO_SNDBUF, sendBufferSize);
+        }
+        if (receiveBufferSize > 0) {
+            bootstrap.option(ChannelOption.SO_RCVBUF, receiveBufferSize);
+        }
+    }
+
+    /**
+     * 设置服务端ServerBootstrap中监听Channel与每个连接的选项，接收缓冲区大小设置在监听Channel上，对accept得到的连接生效
+     */
+    public void applyTo(ServerBootstrap serverBootstrap) {
+        if (getTransport() == NettyTransport.EPOLL) {
+            if (reusePort) {
+                serverBootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            }
+            if (tcpQuickAck) {
+                serverBootstrap.childOption(EpollChannelOption.TCP_QUICKACK, true);
+            }
+        }
+        serverBootstrap.option(ChannelOption.ALLOCATOR, allocator)
+                .childOption(ChannelOption.ALLOCATOR, allocator)
+                .childOption(ChannelOption.RCVBUF_ALLOCATOR, newRecvByteBufAllocator())
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, newWriteBufferWaterMark());
+        if (sendBufferSize > 0) {
+            serverBootstrap.childOption(ChannelOption.SO_SNDBUF, sendBufferSize);
+        }
+        if (receiveBufferSize > 0) {
+            serverBootstrap.option(ChannelOption.SO_RCVBUF, receiveBufferSize);
+        }
+    }
+
+    private AdaptiveRecvByteBufAllocator newRecvByteBufAllocator() {
+        return new AdaptiveRecvByteBufAllocator(minReceiveBufferSize, initialReceiveBufferSize, maxReceiveBufferSize);
+    }
+
+    private WriteBufferWaterMark newWriteBufferWaterMark() {
+        return new WriteBufferWaterMark(writeBufferLowWaterMark, writeBufferHighWaterMark);
+    }
+
+    /**
+     * 实际使用的IO实现，指定的实现不可用时退回NIO；只在第一次调用时确定，之后直接返回
+     */
+    public NettyTransport getTransport() {
+        NettyTransport resolved = resolvedTransport;
+        if (resolved == null) {
+            resolved = resolveTransport();
+            resolvedTransport = resolved;
+        }
+        return resolved;
+    }
+
+    private NettyTransport resolveTransport() {
+        NettyTransport configured = transport;
+        if (configured == null) {
+            String property = System.getProperty(TRANSPORT_PROPERTY);
+            if (property == null) {
+                return NettyTransport.auto();
+            }
+            configured = NettyTransport.valueOf(property.trim().toUpperCase());
+        }
+        if (!configured.isAvailable()) {
+            if (warnedUnavailable.add(configured)) {
+                logger.warn("{} 不可用，使用NIO", configured, configured.unavailabilityCause());
+            }
+            return NettyTransport.NIO;
+        }
+        return configured;
+    }
+
+    /**
+     * @param transport IO实现，为null时自动选择
+     */
+    public TransportConfig setTransport(NettyTransport transport) {
+        this.transport = transport;
+        this.resolvedTransport = null;
+        return this;
+    }
+
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    /**
+     * 服务端开启SO_REUSEPORT，并在同一端口上绑定acceptorThreads个监听Socket，只在使用epoll时生效
+     * @param reusePort 是否开启
+     * @param acceptorThreads 监听Socket与accept线程的数量
+     */
+    public TransportConfig setReusePort(boolean reusePort, int acceptorThreads) {
+        if (acceptorThreads < 1) {
+            throw new IllegalArgumentException("acceptorThreads必须大于0");
+        }
+        this.reusePort = reusePort;
+        this.acceptorThreads = acceptorThreads;
+        return this;
+    }
+
+    public int getAcceptorThreads() {
+        return acceptorThreads;
+    }
+
+    public boolean isTcpQuickAck() {
+        return tcpQuickAck;
+    }
+
+    /**
+     * 开启TCP_QUICKACK，收到数据后立即回复ACK而不是延迟确认，只在使用epoll时生效
+     */
+    public TransportConfig setTcpQuickAck(boolean tcpQuickAck) {
+        this.tcpQuickAck = tcpQuickAck;
+        return this;
+    }
+
+    public ByteBufAllocator getAllocator() {
+        return allocator;
+    }
+
+    public TransportConfig setAllocator(ByteBufAllocator allocator) {
+        this.allocator = allocator;
+        return this;
+    }
+
+    public int getMinReceiveBufferSize() {
+        return minReceiveBufferSize;
+    }
+
+    public int getInitialReceiveBufferSize() {
+        return initialReceiveBufferSize;
+    }
+
+    public int getMaxReceiveBufferSize() {
+        return maxReceiveBufferSize;
+    }
+
+    /**
+     * 读缓冲区自适应调整的范围
+     */
+    public TransportConfig setReceiveBufferSizes(int minimum, int initial, int maximum) {
+        if (minimum <= 0 || initial < minimum || maximum < initial) {
+            throw new IllegalArgumentException("需要满足 0 < minimum <= initial <= maximum");
+        }
+        this.minReceiveBufferSize = minimum;
+        this.initialReceiveBufferSize = initial;
+        this.maxReceiveBufferSize = maximum;
+        return this;
+    }
+
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    public TransportConfig setSendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+        return this;
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public TransportConfig setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+        return this;
+    }
+
+    public int getWriteBufferLowWaterMark() {
+        return writeBufferLowWaterMark;
+    }
+
+    public int getWriteBufferHighWaterMark() {
+        return writeBufferHighWaterMark;
+    }
+
+    public TransportConfig setWriteBufferWaterMark(int low, int high) {
+        if (low < 0 || high < low) {
+            throw new IllegalArgumentException("需要满足 0 <= low <= high");
+        }
+        this.writeBufferLowWaterMark = low;
+        this.writeBufferHighWaterMark = high;
+        return this;
+    }
+
+    public int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+
+    public TransportConfig setMaxFrameLength(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+        return this;
+    }
+
+    public int getInitialEncodeBufferSize() {
+        return initialEncodeBufferSize;
+    }
+
+    public TransportConfig setInitialEncodeBufferSize(int initialEncodeBufferSize) {
+        this.initialEncodeBufferSize = initialEncodeBufferSize;
+        return this;
+    }
+
+    public BatchConfig getBatchConfig() {
+        return batchConfig;
+    }
+
+    /**
+     * @param batchConfig 批量发送的配置，为null时不合并请求，默认为null
+     */
+    public TransportConfig setBatchConfig(BatchConfig batchConfig) {
+        this.batchConfig = batchConfig;
+        return this;
+    }
+
+    public FlushConfig getFlushConfig() {
+        return flushConfig;
+    }
+
+    /**
+     * @param flushConfig 合并flush的配置，为null时每次flush都立即执行
+     */
+    public TransportConfig setFlushConfig(FlushConfig flushConfig) {
+        this.flushConfig = flushConfig;
+        return this;
+    }
+}
@@ -0,0 +1,137 @@
+package com.jchen.rpc.transport.netty.client;
+
+import com.jchen.rpc.enumeration.RpcError;
+import com.jchen.rpc.exception.RpcException;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.util.AttributeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 与同一个服务端之间的连接池，最多保持固定数量的连接
+ * 连接在第一次被选中时才建立；连接断开后从池中移除，下次被选中时重新建立
+ * 每个位置保存的是连接的future，并发请求选中同一个正在建立连接的位置时共用同一个future，不会重复建立连接；
+ * 建立连接完全异步，不阻塞调用线程，连接失败或超时时future以RpcException结束，并清空该位置以便下次重试
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/14/09:52
+ */
+public class ChannelPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChannelPool.class);
+
+    //连接上等待响应的请求数，由UnprocessedRequests维护
+    public static final AttributeKey<AtomicInteger> PENDING_REQUESTS = AttributeKey.valueOf("pendingRequests");
+
+    private final InetSocketAddress inetSocketAddress;
+    private final Bootstrap bootstrap;
+    private final ChannelSelectStrategy selectStrategy;
+    private final AtomicReferenceArray<CompletableFuture<Channel>> channels;
+    private final AtomicInteger index = new AtomicInteger();
+
+    public ChannelPool(InetSocketAddress inetSocketAddress, Bootstrap bootstrap, int maxConnections, ChannelSelectStrategy selectStrategy) {
+        this.inetSocketAddress = inetSocketAddress;
+        this.bootstrap = bootstrap;
+        this.selectStrategy = selectStrategy;
+        this.channels = new AtomicReferenceArray<>(maxConnections);
+    }
+
+    /**
+     * 按选择策略取得一个连接，选中的位置还没有连接或连接已断开时建立新连接
+     * @return 连接的future，选中的连接正在建立时返回同一个future
+     */
+    public CompletableFuture<Channel> acquire() {
+        int slot = selectStrategy == ChannelSelectStrategy.LEAST_PENDING ? leastPendingSlot() : roundRobinSlot();
+        while (true) {
+            CompletableFuture<Channel> current = channels.get(slot);
+            if (current != null && (!current.isDone() || isActive(current))) {
+                return current;
+            }
+            CompletableFuture<Channel> connectFuture = new CompletableFuture<>();
+            //只有替换成功的请求建立连接，其余并发的请求在下一轮循环中取得该future
+            if (channels.compareAndSet(slot, current, connectFuture)) {
+                connect(slot, connectFuture);
+                return connectFuture;
+            }
+        }
+    }
+
+    private int roundRobinSlot() {
+        return (index.getAndIncrement() & Integer.MAX_VALUE) % channels.length();
+    }
+
+    /**
+     * 选择等待响应的请求数最少的可用连接，所有可用连接都有请求在等待时，选择一个空位建立新连接
+     * 正在建立的连接视为没有可用连接的空位，选中后共用其future
+     */
+    private int leastPendingSlot() {
+        int bestSlot = -1;
+        int bestPending = Integer.MAX_VALUE;
+        int emptySlot = -1;
+        for (int i = 0; i < channels.length(); i++) {
+            CompletableFuture<Channel> future = channels.get(i);
+            if (future == null || !isActive(future)) {
+                if (emptySlot < 0) {
+                    emptySlot = i;
+                }
+                continue;
+            }
+            int pending = future.getNow(null).attr(PENDING_REQUESTS).get().get();
+            if (pending < bestPending) {
+                bestSlot = i;
+                bestPending = pending;
+            }
+        }
+        if (bestSlot < 0 || (bestPending > 0 && emptySlot >= 0)) {
+            return emptySlot;
+        }
+        return bestSlot;
+    }
+
+    /**
+     * 异步建立连接，超时时间由Bootstrap的CONNECT_TIMEOUT_MILLIS限制
+     */
+    private void connect(int slot, CompletableFuture<Channel> connectFuture) {
+        bootstrap.connect(inetSocketAddress).addListener((ChannelFutureListener) future -> {
+            if (future.isSuccess()) {
+                logger.info("客户端连接成功!");
+                Channel channel = future.channel();
+                channel.attr(PENDING_REQUESTS).set(new AtomicInteger());
+                //连接断开时从池中移除
+                channel.closeFuture().addListener((ChannelFutureListener) closeFuture -> channels.compareAndSet(slot, connectFuture, null));
+                connectFuture.complete(channel);
+            } else {
+                logger.error("连接服务端 {} 失败", inetSocketAddress, future.cause());
+                channels.compareAndSet(slot, connectFuture, null);
+                connectFuture.completeExceptionally(
+                        new RpcException(RpcError.CLIENT_CONNECT_SERVER_FAILURE, inetSocketAddress.toString(), future.cause()));
+            }
+        });
+    }
+
+    /**
+     * 关闭池中所有的连接，正在建立的连接在建立成功后立即关闭
+     */
+    public void close() {
+        for (int i = 0; i < channels.length(); i++) {
+            CompletableFuture<Channel> future = channels.getAndSet(i, null);
+            if (future != null) {
+                future.thenAccept(Channel::close);
+            }
+        }
+    }
+
+    private static boolean isActive(CompletableFuture<Channel> future) {
+        if (!future.isDone() || future.isCompletedExceptionally()) {
+            return false;
+        }
+        return future.getNow(null).isActive();
+    }
+}
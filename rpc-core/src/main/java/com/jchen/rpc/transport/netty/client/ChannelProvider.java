@@ -1,109 +1,192 @@
 package com.jchen.rpc.transport.netty.client;
 
+import com.jchen.rpc.codec.BatchConfig;
+import com.jchen.rpc.codec.BatchingHandler;
 import com.jchen.rpc.codec.CommonDecoder;
 import com.jchen.rpc.codec.CommonEncoder;
 import com.jchen.rpc.enumeration.RpcError;
 import com.jchen.rpc.exception.RpcException;
+import com.jchen.rpc.factory.SingletonFactory;
 import com.jchen.rpc.serializer.CommonSerializer;
+import com.jchen.rpc.transport.netty.FlushConfig;
+import com.jchen.rpc.transport.netty.FlushMetrics;
+import com.jchen.rpc.transport.netty.NettyTransport;
+import com.jchen.rpc.transport.netty.TransportConfig;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.timeout.IdleStateHandler;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import io.netty.util.concurrent.DefaultThreadFactory;
 
 import java.net.InetSocketAddress;
-import java.util.Date;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 用于获取Channel对象，进行Netty的初始化工作、在pipeline中添加编解码器和自定义handler、建立与服务器的连接
+ * 每个客户端持有一个，为每个服务端维护一个连接池，请求分散在多个连接上，由服务端的多个IO线程处理
+ * 使用同一IO实现的ChannelProvider共用IO线程组，最后一个使用者关闭时释放IO线程
  *
  * @Auther: jchen
  * @Date: 2021/03/21/15:25
  */
 public class ChannelProvider {
-    private static final Logger logger = LoggerFactory.getLogger(ChannelProvider.class);
-    private static EventLoopGroup eventLoopGroup;
-    private static Bootstrap bootstrap = initializeBootstrap();
+    //<IO实现，IO线程组>，使用同一IO实现的客户端共用IO线程，设为守护线程，不阻止客户端进程退出
+    private static final Map<NettyTransport, EventLoopGroup> eventLoopGroups = new HashMap<>();
+    //<IO实现，使用该IO线程组且未关闭的ChannelProvider数>，与eventLoopGroups一起在类锁中访问
+    private static final Map<NettyTransport, Integer> eventLoopGroupUsers = new HashMap<>();
 
-    private static Map<String, Channel> channels = new ConcurrentHashMap<>();
+    //默认每个服务端只建立一个连接
+    public static final int DEFAULT_CONNECTIONS = 1;
+    //建立连接的超时时间，单位毫秒，超过这个时间还是建立不上的话则代表连接失败
+    public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+
+    private final NettyTransport transport;
+    private final Bootstrap bootstrap;
+    private final int connectionsPerEndpoint;
+    private final ChannelSelectStrategy selectStrategy;
+    //该客户端所有连接的flush统计
+    private final FlushMetrics flushMetrics = new FlushMetrics();
+
+    //<服务端地址，连接池>
+    private final Map<InetSocketAddress, ChannelPool> channelPools = new ConcurrentHashMap<>();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    public ChannelProvider(CommonSerializer serializer) {
+        this(serializer, DEFAULT_CONNECTIONS, ChannelSelectStrategy.ROUND_ROBIN);
+    }
+
+    /**
+     * @param serializer 序列化器
+     * @param connectionsPerEndpoint 每个服务端最多建立的连接数
+     * @param selectStrategy 从多个连接中选择发送请求的连接的策略
+     */
+    public ChannelProvider(CommonSerializer serializer, int connectionsPerEndpoint, ChannelSelectStrategy selectStrategy) {
+        this(serializer, connectionsPerEndpoint, selectStrategy, DEFAULT_CONNECT_TIMEOUT);
+    }
+
+    /**
+     * @param serializer 序列化器
+     * @param connectionsPerEndpoint 每个服务端最多建立的连接数
+     * @param selectStrategy 从多个连接中选择发送请求的连接的策略
+     * @param connectTimeout 建立连接的超时时间，单位毫秒
+     */
+    public ChannelProvider(CommonSerializer serializer, int connectionsPerEndpoint, ChannelSelectStrategy selectStrategy, int connectTimeout) {
+        this(serializer, connectionsPerEndpoint, selectStrategy, connectTimeout, new TransportConfig());
+    }
 
     /**
-     * channel的一些配置，在pipeline中添加编解码器和自定义handler，建立与服务器的连接
-     * @param inetSocketAddress 连接的服务器地址
      * @param serializer 序列化器
-     * @return
-     * @throws InterruptedException
+     * @param connectionsPerEndpoint 每个服务端最多建立的连接数
+     * @param selectStrategy 从多个连接中选择发送请求的连接的策略
+     * @param connectTimeout 建立连接的超时时间，单位毫秒
+     * @param transportConfig 传输层配置，包括缓冲区分配、水位、批量发送与合并flush
      */
-    public static Channel get(InetSocketAddress inetSocketAddress, CommonSerializer serializer) throws InterruptedException {
-        String key = inetSocketAddress.toString() + serializer.getCode();
-        if (channels.containsKey(key)) {
-            Channel channel = channels.get(key);
-            if(channels != null && channel.isActive()) {
-                return channel;
-            } else {
-                channels.remove(key);
-            }
+    public ChannelProvider(CommonSerializer serializer, int connectionsPerEndpoint, ChannelSelectStrategy selectStrategy,
+                           int connectTimeout, TransportConfig transportConfig) {
+        if (connectionsPerEndpoint < 1) {
+            throw new IllegalArgumentException("connectionsPerEndpoint必须大于0");
         }
-        //绑定handler
-        bootstrap.handler(new ChannelInitializer<SocketChannel>() {
-            @Override
-            protected void initChannel(SocketChannel ch) {
-                /*自定义序列化编解码器*/
-                // RpcResponse -> ByteBuf
-                ch.pipeline().addLast(new CommonEncoder(serializer))
-                        //心跳检查机制，当5s内没有写入数据到channel中时，会触发WRITER_IDLE的IdleStateEvent事件，触发userEventTrigger()方法
-                        .addLast(new IdleStateHandler(0, 5, 0, TimeUnit.SECONDS))
-                        .addLast(new CommonDecoder())
-                        .addLast(new NettyClientHandler());
-            }
-        });
-        Channel channel = null;
-        try {
-            //建立与服务器的连接
-            channel = connect(bootstrap, inetSocketAddress);
-        } catch (ExecutionException e) {
-            logger.error("连接客户端时有错误发生", e);
-            return null;
+        //epoll可用时使用原生epoll，否则使用NIO
+        this.transport = transportConfig.getTransport();
+        this.bootstrap = initializeBootstrap(transport, serializer, connectTimeout, transportConfig, flushMetrics);
+        this.connectionsPerEndpoint = connectionsPerEndpoint;
+        this.selectStrategy = selectStrategy;
+    }
+
+    /**
+     * 从服务端对应的连接池中取得一个连接，不阻塞调用线程
+     * @param inetSocketAddress 连接的服务器地址
+     * @return 连接的future，连接失败、超时或已关闭时以RpcException结束
+     */
+    public CompletableFuture<Channel> get(InetSocketAddress inetSocketAddress) {
+        if (closed.get()) {
+            CompletableFuture<Channel> future = new CompletableFuture<>();
+            future.completeExceptionally(new RpcException(RpcError.CLIENT_CONNECT_SERVER_FAILURE, "客户端已关闭"));
+            return future;
         }
-        channels.put(key, channel);
-        return channel;
+        ChannelPool channelPool = channelPools.computeIfAbsent(inetSocketAddress,
+                address -> new ChannelPool(address, bootstrap, connectionsPerEndpoint, selectStrategy));
+        return channelPool.acquire();
+    }
+
+    public FlushMetrics getFlushMetrics() {
+        return flushMetrics;
     }
 
     /**
-     * 客户端建立与服务端的连接
+     * 关闭所有连接，没有其他ChannelProvider使用同一IO线程组时一并关闭IO线程，重复调用没有影响
      */
-    private static Channel connect(Bootstrap bootstrap, InetSocketAddress inetSocketAddress) throws ExecutionException, InterruptedException {
-        CompletableFuture<Channel> completableFuture = new CompletableFuture<>();
-        bootstrap.connect(inetSocketAddress).addListener((ChannelFutureListener) future -> {
-            if (future.isSuccess()) {
-                logger.info("客户端连接成功!");
-                completableFuture.complete(future.channel());
-            } else {
-                throw new IllegalStateException();
-            }
-        });
-        return completableFuture.get();
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        for (ChannelPool channelPool : channelPools.values()) {
+            channelPool.close();
+        }
+        channelPools.clear();
+        releaseEventLoopGroup(transport);
+    }
+
+    private static synchronized EventLoopGroup retainEventLoopGroup(NettyTransport transport) {
+        EventLoopGroup eventLoopGroup = eventLoopGroups.computeIfAbsent(transport,
+                t -> t.newEventLoopGroup(0, new DefaultThreadFactory("rpc-client-" + t.name().toLowerCase(), true)));
+        eventLoopGroupUsers.merge(transport, 1, Integer::sum);
+        return eventLoopGroup;
+    }
+
+    private static synchronized void releaseEventLoopGroup(NettyTransport transport) {
+        if (eventLoopGroupUsers.merge(transport, -1, Integer::sum) == 0) {
+            eventLoopGroupUsers.remove(transport);
+            eventLoopGroups.remove(transport).shutdownGracefully();
+        }
     }
 
     /**
-     * 初始化Bootstrap
+     * 初始化Bootstrap，channel的一些配置，在pipeline中添加编解码器和自定义handler
      */
-    private static Bootstrap initializeBootstrap() {
-        eventLoopGroup = new NioEventLoopGroup();
+    private static Bootstrap initializeBootstrap(NettyTransport transport, CommonSerializer serializer, int connectTimeout,
+                                                 TransportConfig transportConfig, FlushMetrics flushMetrics) {
+        FlushConfig flushConfig = transportConfig.getFlushConfig();
+        BatchConfig batchConfig = transportConfig.getBatchConfig();
+        UnprocessedRequests unprocessedRequests = SingletonFactory.getInstance(UnprocessedRequests.class);
+        EventLoopGroup eventLoopGroup = retainEventLoopGroup(transport);
         Bootstrap bootstrap = new Bootstrap();
+        //缓冲区分配器、读缓冲区大小、写缓冲区水位等
+        transportConfig.applyTo(bootstrap);
         bootstrap.group(eventLoopGroup)
-                .channel(NioSocketChannel.class)
+                .channel(transport.socketChannelClass())
                 //连接的超时时间，超过这个时间还是建立不上的话则代表连接失败
-                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout)
                 //是否开启 TCP 底层心跳机制
                 .option(ChannelOption.SO_KEEPALIVE, true)
                 //TCP默认开启了 Nagle 算法，该算法的作用是尽可能的发送大数据快，减少网络传输。TCP_NODELAY 参数的作用就是控制是否启用 Nagle 算法。
-                .option(ChannelOption.TCP_NODELAY, true);
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        //最靠近Socket，统计实际写出的数据包与flush次数
+                        ch.pipeline().addLast(flushMetrics);
+                        //合并多次flush，减少write系统调用
+                        if (flushConfig != null) {
+                            ch.pipeline().addLast(flushConfig.newHandler());
+                        }
+                        /*自定义序列化编解码器*/
+                        // RpcResponse -> ByteBuf
+                        ch.pipeline().addLast(new CommonEncoder(serializer, transportConfig.getInitialEncodeBufferSize()));
+                        //合并短时间内写入的请求，位于编码器之后，先于编码器处理写出的消息
+                        if (batchConfig != null) {
+                            ch.pipeline().addLast(new BatchingHandler(batchConfig, false));
+                        }
+                        //心跳检查机制，当5s内没有写入数据到channel中时，会触发WRITER_IDLE的IdleStateEvent事件，触发userEventTrigger()方法
+                        ch.pipeline().addLast(new IdleStateHandler(0, 5, 0, TimeUnit.SECONDS))
+                                //按协议头中的请求号丢弃已超时请求的响应，不再反序列化
+                                .addLast(new CommonDecoder(transportConfig.getMaxFrameLength(), unprocessedRequests::contains))
+                                .addLast(new NettyClientHandler());
+                    }
+                });
         return bootstrap;
     }
 }
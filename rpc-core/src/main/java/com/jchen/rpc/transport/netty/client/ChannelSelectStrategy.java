@@ -0,0 +1,16 @@
+package com.jchen.rpc.transport.netty.client;
+
+/**
+ * 从同一服务端的多个连接中选择发送请求的连接的策略
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/14/09:40
+ */
+public enum ChannelSelectStrategy {
+
+    //依次轮流使用各个连接
+    ROUND_ROBIN,
+    //使用等待响应的请求数最少的连接，所有连接都有请求在等待时才建立新连接
+    LEAST_PENDING
+
+}
@@ -1,30 +1,28 @@
 package com.jchen.rpc.transport.netty.client;
 
 import com.jchen.rpc.factory.SingletonFactory;
+import com.jchen.rpc.generator.RequestIdGenerator;
+import com.jchen.rpc.generator.SequenceRequestIdGenerator;
+import com.jchen.rpc.loadbalancer.EndpointStats;
 import com.jchen.rpc.loadbalancer.LoadBalancer;
 import com.jchen.rpc.loadbalancer.RandomLoadBalancer;
-import com.jchen.rpc.registry.NacosServiceDiscovery;
-import com.jchen.rpc.registry.NacosServiceRegistry;
+import com.jchen.rpc.factory.RegistryFactory;
 import com.jchen.rpc.registry.ServiceDiscovery;
-import com.jchen.rpc.registry.ServiceRegistry;
 import com.jchen.rpc.transport.RpcClient;
+import com.jchen.rpc.transport.netty.FlushMetrics;
+import com.jchen.rpc.transport.netty.TransportConfig;
 import com.jchen.rpc.entity.RpcRequest;
 import com.jchen.rpc.entity.RpcResponse;
 import com.jchen.rpc.enumeration.RpcError;
 import com.jchen.rpc.exception.RpcException;
 import com.jchen.rpc.serializer.CommonSerializer;
 import com.jchen.rpc.util.RpcMessageChecker;
-import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.util.AttributeKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * NIO方式消费者客户端类
@@ -35,20 +33,12 @@ import java.util.concurrent.atomic.AtomicReference;
 public class NettyClient implements RpcClient {
 
     private static final Logger logger = LoggerFactory.getLogger(NettyClient.class);
-    private static final EventLoopGroup group;
-    private static final Bootstrap bootstrap;
-
-
-    static {
-        group = new NioEventLoopGroup();
-        bootstrap = new Bootstrap();
-        bootstrap.group(group)
-                .channel(NioSocketChannel.class);
-    }
 
     private final ServiceDiscovery serviceDiscovery;
     private final CommonSerializer serializer;
     private final UnprocessedRequests unprocessedRequests;
+    private final RequestIdGenerator requestIdGenerator;
+    private final ChannelProvider channelProvider;
 
     public NettyClient() {
         this(DEFAULT_SERIALIZER, new RandomLoadBalancer());
@@ -63,46 +53,116 @@ public class NettyClient implements RpcClient {
     }
 
     public NettyClient(Integer serializer, LoadBalancer loadBalancer) {
-        this.serviceDiscovery = new NacosServiceDiscovery(loadBalancer);
+        this(serializer, RegistryFactory.getServiceDiscovery(loadBalancer));
+    }
+
+    public NettyClient(Integer serializer, ServiceDiscovery serviceDiscovery) {
+        this(serializer, serviceDiscovery, new SequenceRequestIdGenerator());
+    }
+
+    public NettyClient(Integer serializer, ServiceDiscovery serviceDiscovery, RequestIdGenerator requestIdGenerator) {
+        this(serializer, serviceDiscovery, requestIdGenerator, ChannelProvider.DEFAULT_CONNECTIONS, ChannelSelectStrategy.ROUND_ROBIN);
+    }
+
+    public NettyClient(Integer serializer, ServiceDiscovery serviceDiscovery, int connectionsPerEndpoint, ChannelSelectStrategy selectStrategy) {
+        this(serializer, serviceDiscovery, new SequenceRequestIdGenerator(), connectionsPerEndpoint, selectStrategy);
+    }
+
+    /**
+     * @param serializer 序列化器
+     * @param serviceDiscovery 服务发现
+     * @param requestIdGenerator 请求号生成器
+     * @param connectionsPerEndpoint 与每个服务端最多建立的连接数
+     * @param selectStrategy 从多个连接中选择发送请求的连接的策略
+     */
+    public NettyClient(Integer serializer, ServiceDiscovery serviceDiscovery, RequestIdGenerator requestIdGenerator,
+                       int connectionsPerEndpoint, ChannelSelectStrategy selectStrategy) {
+        this(serializer, serviceDiscovery, requestIdGenerator, connectionsPerEndpoint, selectStrategy, new TransportConfig());
+    }
+
+    /**
+     * @param serializer 序列化器
+     * @param serviceDiscovery 服务发现
+     * @param requestIdGenerator 请求号生成器
+     * @param connectionsPerEndpoint 与每个服务端最多建立的连接数
+     * @param selectStrategy 从多个连接中选择发送请求的连接的策略
+     * @param transportConfig 传输层配置，包括缓冲区分配、水位、批量发送与合并flush
+     */
+    public NettyClient(Integer serializer, ServiceDiscovery serviceDiscovery, RequestIdGenerator requestIdGenerator,
+                       int connectionsPerEndpoint, ChannelSelectStrategy selectStrategy, TransportConfig transportConfig) {
+        this.serviceDiscovery = serviceDiscovery;
         this.serializer = CommonSerializer.getByCode(serializer);
         this.unprocessedRequests = SingletonFactory.getInstance(UnprocessedRequests.class);
+        this.requestIdGenerator = requestIdGenerator;
+        this.channelProvider = new ChannelProvider(this.serializer, connectionsPerEndpoint, selectStrategy,
+                ChannelProvider.DEFAULT_CONNECT_TIMEOUT, transportConfig);
     }
 
     /**
-     * 1.查找对应的服务器地址；2.进行Netty初始化工作，绑定handler，建立连接；3.发送RpcRequest对象；
+     * 获取该客户端所有连接的flush统计
+     */
+    public FlushMetrics getFlushMetrics() {
+        return channelProvider.getFlushMetrics();
+    }
+
+    /**
+     * 关闭该客户端的所有连接，没有其他客户端使用同一IO线程组时一并关闭IO线程；之后的调用以RpcException结束
+     */
+    public void close() {
+        channelProvider.close();
+    }
+
+    /**
+     * 1.查找对应的服务器地址；2.取得与服务器的连接；3.连接建立后发送RpcRequest对象；
+     * 整个过程不阻塞调用线程，连接失败、超过timeout毫秒未收到响应或连接断开时，返回的future以RpcException结束
      * @param rpcRequest RpcRequest对象
+     * @param timeout 超时时间，单位毫秒
      * @return
      */
     @Override
-    public CompletableFuture<RpcResponse> sendRequest(RpcRequest rpcRequest) {
+    public CompletableFuture<RpcResponse> sendRequest(RpcRequest rpcRequest, long timeout) {
         if (serializer == null) {
             logger.error("未设置序列化器");
             throw new RpcException(RpcError.SERIALIZER_NOT_FOUND);
         }
+        if (rpcRequest.getRequestId() == null) {
+            rpcRequest.setRequestId(requestIdGenerator.nextId());
+        }
         CompletableFuture<RpcResponse> resultFuture = new CompletableFuture<>();
-        try {
-            //1.查找能够提供服务的服务器地址
-            InetSocketAddress inetSocketAddress = serviceDiscovery.lookupService(rpcRequest.getInterfaceName());
-            //2.进行Netty初始化，channel绑定编解码器和读取返回结果的handler，建立与服务器的连接
-            Channel channel = ChannelProvider.get(inetSocketAddress, serializer);
-            if (channel.isActive()) {
-                group.shutdownGracefully();
-                return null;
+        //1.查找能够提供服务的服务器地址
+        InetSocketAddress inetSocketAddress = serviceDiscovery.lookupService(rpcRequest);
+        //记录该服务端正在进行的调用数与响应时间，供负载均衡策略使用
+        EndpointStats endpointStats = EndpointStats.of(inetSocketAddress);
+        long startTime = endpointStats.begin();
+        resultFuture.whenComplete((rpcResponse, e) -> endpointStats.end(startTime));
+        //2.取得与服务器的连接，连接正在建立时与其他请求共用同一次连接
+        channelProvider.get(inetSocketAddress).whenComplete((channel, e) -> {
+            if (e != null) {
+                //连接失败，调用方可以据此换一个服务端重试
+                resultFuture.completeExceptionally(e);
+                return;
             }
             //3.发送RpcRequest对象
-            unprocessedRequests.put(rpcRequest.getRequestId(), resultFuture);
-            channel.writeAndFlush(rpcRequest).addListener((ChannelFutureListener) future1 -> {
-                if (future1.isSuccess()) {
-                    logger.info(String.format("客户端发送消息: %s", rpcRequest.toString()));
-                } else {
-                    logger.error("发送消息时有错误发生: ", future1.cause());
-                }
-            });
-        } catch (InterruptedException e) {
-            unprocessedRequests.remove(rpcRequest.getRequestId());
-            logger.error(e.getMessage(), e);
-            Thread.currentThread().interrupt();
-        }
+            send(channel, rpcRequest, resultFuture, timeout);
+        });
         return resultFuture;
     }
+
+    private void send(Channel channel, RpcRequest rpcRequest, CompletableFuture<RpcResponse> resultFuture, long timeout) {
+        unprocessedRequests.put(rpcRequest.getRequestId(), resultFuture, channel, timeout);
+        channel.writeAndFlush(rpcRequest).addListener((ChannelFutureListener) future1 -> {
+            if (future1.isSuccess()) {
+                logger.info(String.format("客户端发送消息: %s", rpcRequest.toString()));
+            } else {
+                logger.error("发送消息时有错误发生: ", future1.cause());
+                unprocessedRequests.remove(rpcRequest.getRequestId());
+                resultFuture.completeExceptionally(future1.cause());
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<RpcResponse> sendRequestAsync(RpcRequest rpcRequest, long timeout) {
+        return sendRequest(rpcRequest, timeout);
+    }
 }
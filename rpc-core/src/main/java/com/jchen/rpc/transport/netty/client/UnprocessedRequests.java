@@ -1,33 +1,187 @@
 package com.jchen.rpc.transport.netty.client;
 
 import com.jchen.rpc.entity.RpcResponse;
+import com.jchen.rpc.enumeration.RpcError;
+import com.jchen.rpc.exception.RpcException;
+import io.netty.channel.Channel;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.collection.LongObjectHashMap;
+import io.netty.util.collection.LongObjectMap;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * 保存已发送但还未收到响应的请求
+ * 以long类型的请求号为键，分段保存在开放寻址的LongObjectHashMap中，避免请求号装箱以及String的哈希计算，
+ * 每一段单独加锁，减少并发请求之间的竞争
+ * 每个请求在时间轮中登记超时任务，超时未收到响应或所在的Channel断开时，以RpcException结束对应的future并移出表，
+ * 避免调用方无限等待以及表无限增长
+ *
  * @Auther: jchen
  * @Date: 2021/03/23/15:22
  */
 public class UnprocessedRequests {
 
-    private static ConcurrentHashMap<String, CompletableFuture<RpcResponse>> unprocessedResponseFutures = new ConcurrentHashMap<>();
+    private static final Logger logger = LoggerFactory.getLogger(UnprocessedRequests.class);
 
-    public void put(String requestId, CompletableFuture<RpcResponse> future) {
-        unprocessedResponseFutures.put(requestId, future);
+    //分段数，必须是2的幂
+    private static final int SEGMENT_COUNT = 32;
+    //时间轮每10ms走一格，超时的精度在10ms左右，对RPC调用已经足够
+    private static final Timer TIMER = new HashedWheelTimer(
+            new DefaultThreadFactory("rpc-response-timeout", true), 10, TimeUnit.MILLISECONDS);
+
+    private static final LongObjectHashMap<PendingRequest>[] segments = createSegments();
+
+    /**
+     * 登记一个已发送的请求
+     * @param requestId 请求号
+     * @param future 收到响应时完成的future
+     * @param channel 发送请求的Channel，Channel断开时该请求失败
+     * @param timeout 超时时间，单位毫秒，不大于0时不设超时
+     */
+    public void put(long requestId, CompletableFuture<RpcResponse> future, Channel channel, long timeout) {
+        PendingRequest pendingRequest = new PendingRequest(future, channel, channel.attr(ChannelPool.PENDING_REQUESTS).get());
+        LongObjectHashMap<PendingRequest> segment = segmentFor(requestId);
+        synchronized (segment) {
+            segment.put(requestId, pendingRequest);
+        }
+        if (timeout > 0) {
+            pendingRequest.timeout = TIMER.newTimeout(t -> expire(requestId, timeout), timeout, TimeUnit.MILLISECONDS);
+        }
     }
 
-    public void remove(String requestId) {
-        unprocessedResponseFutures.remove(requestId);
+    public void remove(long requestId) {
+        PendingRequest pendingRequest = take(requestId);
+        if (pendingRequest != null) {
+            pendingRequest.cancelTimeout();
+        }
+    }
+
+    /**
+     * 请求是否还在等待响应，解码器据此在反序列化之前丢弃已超时或已取消的请求的响应
+     */
+    public boolean contains(long requestId) {
+        LongObjectHashMap<PendingRequest> segment = segmentFor(requestId);
+        synchronized (segment) {
+            return segment.containsKey(requestId);
+        }
     }
 
     public void complete(RpcResponse rpcResponse) {
-        CompletableFuture<RpcResponse> future = unprocessedResponseFutures.remove(rpcResponse.getRequestId());
-        if (null != future) {
-            future.complete(rpcResponse);
+        PendingRequest pendingRequest = take(rpcResponse.getRequestId());
+        if (pendingRequest != null) {
+            pendingRequest.cancelTimeout();
+            pendingRequest.future.complete(rpcResponse);
         } else {
-            throw new IllegalStateException();
+            //请求已超时或已被取消，迟到的响应直接丢弃
+            logger.warn("收到未知请求号的响应，请求可能已超时: {}", rpcResponse.getRequestId());
+        }
+    }
+
+    /**
+     * Channel断开后，通过它发送的请求不会再收到响应，将这些请求全部置为失败
+     */
+    public void failAll(Channel channel) {
+        List<PendingRequest> failed = new ArrayList<>();
+        for (LongObjectHashMap<PendingRequest> segment : segments) {
+            synchronized (segment) {
+                Iterator<LongObjectMap.PrimitiveEntry<PendingRequest>> iterator = segment.entries().iterator();
+                while (iterator.hasNext()) {
+                    PendingRequest pendingRequest = iterator.next().value();
+                    if (pendingRequest.channel == channel) {
+                        iterator.remove();
+                        pendingRequest.release();
+                        failed.add(pendingRequest);
+                    }
+                }
+            }
+        }
+        if (!failed.isEmpty()) {
+            logger.error("连接 {} 已断开，{} 个请求未得到响应", channel.remoteAddress(), failed.size());
+        }
+        for (PendingRequest pendingRequest : failed) {
+            pendingRequest.cancelTimeout();
+            pendingRequest.future.completeExceptionally(
+                    new RpcException(RpcError.CHANNEL_CLOSED, String.valueOf(channel.remoteAddress())));
+        }
+    }
+
+    private void expire(long requestId, long timeout) {
+        PendingRequest pendingRequest = take(requestId);
+        if (pendingRequest != null) {
+            pendingRequest.future.completeExceptionally(
+                    new RpcException(RpcError.RESPONSE_TIMEOUT, "requestId:" + requestId + ", timeout:" + timeout + "ms"));
+        }
+    }
+
+    private PendingRequest take(long requestId) {
+        LongObjectHashMap<PendingRequest> segment = segmentFor(requestId);
+        PendingRequest pendingRequest;
+        synchronized (segment) {
+            pendingRequest = segment.remove(requestId);
+        }
+        if (pendingRequest != null) {
+            pendingRequest.release();
+        }
+        return pendingRequest;
+    }
+
+    /**
+     * 请求号的低位是递增序号，直接取低位即可使请求均匀地分布在各段中
+     */
+    private static LongObjectHashMap<PendingRequest> segmentFor(long requestId) {
+        return segments[(int) requestId & (SEGMENT_COUNT - 1)];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static LongObjectHashMap<PendingRequest>[] createSegments() {
+        LongObjectHashMap<PendingRequest>[] segments = new LongObjectHashMap[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new LongObjectHashMap<>();
+        }
+        return segments;
+    }
+
+    private static class PendingRequest {
+        private final CompletableFuture<RpcResponse> future;
+        private final Channel channel;
+        //所在连接上等待响应的请求数，连接池据此选择连接
+        private final AtomicInteger channelPending;
+        //登记超时任务前响应可能已经到达，此时超时任务触发时在表中找不到请求，不会产生影响
+        private volatile Timeout timeout;
+
+        PendingRequest(CompletableFuture<RpcResponse> future, Channel channel, AtomicInteger channelPending) {
+            this.future = future;
+            this.channel = channel;
+            this.channelPending = channelPending;
+            if (channelPending != null) {
+                channelPending.incrementAndGet();
+            }
+        }
+
+        //请求移出表时调用，每个请求只会被移出一次
+        void release() {
+            if (channelPending != null) {
+                channelPending.decrementAndGet();
+            }
+        }
+
+        void cancelTimeout() {
+            Timeout timeout = this.timeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
         }
     }
 
-}
\ No newline at end of file
+}
@@ -1,12 +1,18 @@
 package com.jchen.rpc.transport.netty.server;
 
+import com.jchen.rpc.handler.RequestDispatcher;
 import com.jchen.rpc.hook.ShutdownHook;
 import com.jchen.rpc.provider.ServiceProvider;
 import com.jchen.rpc.provider.ServiceProviderImpl;
-import com.jchen.rpc.registry.NacosServiceRegistry;
+import com.jchen.rpc.factory.RegistryFactory;
 import com.jchen.rpc.registry.ServiceRegistry;
 import com.jchen.rpc.transport.AbstractRpcServer;
 import com.jchen.rpc.transport.RpcServer;
+import com.jchen.rpc.transport.netty.FlushMetrics;
+import com.jchen.rpc.transport.netty.NettyTransport;
+import com.jchen.rpc.transport.netty.TransportConfig;
+import com.jchen.rpc.codec.BatchConfig;
+import com.jchen.rpc.codec.BatchingHandler;
 import com.jchen.rpc.codec.CommonDecoder;
 import com.jchen.rpc.codec.CommonEncoder;
 import com.jchen.rpc.enumeration.RpcError;
@@ -14,16 +20,17 @@ import com.jchen.rpc.exception.RpcException;
 import com.jchen.rpc.serializer.CommonSerializer;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -35,31 +42,75 @@ import java.util.concurrent.TimeUnit;
 public class NettyServer extends AbstractRpcServer {
 
     private final CommonSerializer serializer;
+    private final RequestDispatcher requestDispatcher;
+    private final TransportConfig transportConfig;
+    //所有连接的flush统计
+    private final FlushMetrics flushMetrics = new FlushMetrics();
 
     public NettyServer(String host, int port) {
         this(host, port, DEFAULT_SERIALIZER);
     }
 
     public NettyServer(String host, int port, Integer serializer) {
+        this(host, port, serializer, RegistryFactory.getServiceRegistry());
+    }
+
+    public NettyServer(String host, int port, Integer serializer, ServiceRegistry serviceRegistry) {
+        this(host, port, serializer, serviceRegistry, new RequestDispatcher());
+    }
+
+    public NettyServer(String host, int port, Integer serializer, ServiceRegistry serviceRegistry, RequestDispatcher requestDispatcher) {
+        this(host, port, serializer, serviceRegistry, requestDispatcher, new TransportConfig());
+    }
+
+    /**
+     * @param transportConfig 传输层配置，包括缓冲区分配、水位、批量发送与合并flush
+     */
+    public NettyServer(String host, int port, Integer serializer, ServiceRegistry serviceRegistry, RequestDispatcher requestDispatcher,
+                       TransportConfig transportConfig) {
         this.host = host;
         this.port = port;
-        serviceRegistry = new NacosServiceRegistry();
+        this.serviceRegistry = serviceRegistry;
         serviceProvider = new ServiceProviderImpl();
         this.serializer = CommonSerializer.getByCode(serializer);
+        this.requestDispatcher = requestDispatcher;
+        this.transportConfig = transportConfig;
         scanServices();
     }
 
+    /**
+     * 获取请求分发器，可以在启动前为服务或方法单独指定线程池
+     */
+    public RequestDispatcher getRequestDispatcher() {
+        return requestDispatcher;
+    }
+
+    /**
+     * 获取所有连接的flush统计
+     */
+    public FlushMetrics getFlushMetrics() {
+        return flushMetrics;
+    }
+
 
     @Override
     public void start() {
         //添加钩子，服务端关闭时自动注销该部分服务
-        ShutdownHook.getShutdownHook().addClearAllHook();
-        EventLoopGroup bossGroup = new NioEventLoopGroup();
-        EventLoopGroup workerGroup = new NioEventLoopGroup();
+        ShutdownHook.getShutdownHook().addClearAllHook(serviceRegistry);
+        //epoll可用时使用原生epoll，否则使用NIO
+        NettyTransport transport = transportConfig.getTransport();
+        //开启SO_REUSEPORT时在同一端口上绑定多个监听Socket，每个由一个accept线程处理，内核在它们之间分配新连接
+        int acceptors = transport == NettyTransport.EPOLL && transportConfig.isReusePort() ? transportConfig.getAcceptorThreads() : 1;
+        EventLoopGroup bossGroup = transport.newEventLoopGroup(acceptors, new DefaultThreadFactory("rpc-server-boss"));
+        EventLoopGroup workerGroup = transport.newEventLoopGroup(0, new DefaultThreadFactory("rpc-server-worker"));
+        //未配置批量发送时，仍然以默认配置合并发往批量客户端的响应
+        BatchConfig batchConfig = transportConfig.getBatchConfig() != null ? transportConfig.getBatchConfig() : new BatchConfig();
         try {
             ServerBootstrap serverBootstrap = new ServerBootstrap();
+            //缓冲区分配器、读缓冲区大小、写缓冲区水位等
+            transportConfig.applyTo(serverBootstrap);
             serverBootstrap.group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(transport.serverSocketChannelClass())
                     .handler(new LoggingHandler(LogLevel.INFO))
                     //当服务器请求处理线程全满时，用于临时存放已完成三次握手的请求的队列的最大长度
                     .option(ChannelOption.SO_BACKLOG, 256)
@@ -71,17 +122,31 @@ public class NettyServer extends AbstractRpcServer {
                         @Override
                         protected void initChannel(SocketChannel ch) throws Exception {
                             ChannelPipeline pipeline = ch.pipeline();
+                            //最靠近Socket，统计实际写出的数据包与flush次数
+                            pipeline.addLast(flushMetrics);
+                            //合并多次flush，在IO线程中执行请求时，一次读事件中产生的响应只flush一次
+                            if (transportConfig.getFlushConfig() != null) {
+                                pipeline.addLast(transportConfig.getFlushConfig().newHandler());
+                            }
                             //心跳检查机制，当超过30s没有从Channel中读取到数据时，会触发READER_IDLE的IdleStateEvent事件，触发userEventTrigger()方法
                             pipeline.addLast(new IdleStateHandler(30, 0, 0, TimeUnit.SECONDS))
-                            .addLast(new CommonEncoder(serializer))
-                            .addLast(new CommonDecoder())
-                            .addLast(new NettyServerHandler());
+                            .addLast(new CommonEncoder(serializer, transportConfig.getInitialEncodeBufferSize()))
+                            //对端批量发送请求时，同样合并响应
+                            .addLast(new BatchingHandler(batchConfig, true))
+                            .addLast(new CommonDecoder(transportConfig.getMaxFrameLength()))
+                            .addLast(new NettyServerHandler(requestDispatcher));
                         }
                     });
             //绑定端口，启动Netty，sync()表示阻塞主Server线程，以执行Netty线程，如果不阻塞那么马上就被shutdown了
-            ChannelFuture future = serverBootstrap.bind(host, port).sync();
-            //等确定通道关闭了，关闭future回到主Server线程
-            future.channel().closeFuture().sync();
+            List<Channel> serverChannels = new ArrayList<>(acceptors);
+            for (int i = 0; i < acceptors; i++) {
+                serverChannels.add(serverBootstrap.bind(host, port).sync().channel());
+            }
+            logger.info("服务端使用 {} 传输，监听 {}:{}，监听Socket数 {}", transport, host, port, acceptors);
+            //等确定通道都关闭了，回到主Server线程
+            for (Channel serverChannel : serverChannels) {
+                serverChannel.closeFuture().sync();
+            }
 
         } catch (InterruptedException e) {
             logger.error("启动服务器时有错误发生: ", e);
@@ -2,9 +2,11 @@ package com.jchen.rpc.transport.netty.server;
 
 import com.jchen.rpc.entity.RpcRequest;
 import com.jchen.rpc.entity.RpcResponse;
+import com.jchen.rpc.enumeration.ResponseCode;
 import com.jchen.rpc.factory.SingletonFactory;
 import com.jchen.rpc.provider.ServiceProviderImpl;
 import com.jchen.rpc.registry.ServiceRegistry;
+import com.jchen.rpc.handler.RequestDispatcher;
 import com.jchen.rpc.handler.RequestHandler;
 import com.jchen.rpc.util.ThreadPoolFactory;
 import io.netty.channel.*;
@@ -26,13 +28,15 @@ public class NettyServerHandler extends SimpleChannelInboundHandler<RpcRequest>
 
     private static final Logger logger = LoggerFactory.getLogger(NettyServerHandler.class);
     private final RequestHandler requestHandler;
+    private final RequestDispatcher requestDispatcher;
 
-    public NettyServerHandler() {
+    public NettyServerHandler(RequestDispatcher requestDispatcher) {
         this.requestHandler = SingletonFactory.getInstance(RequestHandler.class);
+        this.requestDispatcher = requestDispatcher;
     }
 
     /**
-     * 接受RpcRequest对象，调用RequestHandler执行，获得执行结果并将结果发送出去
+     * 接受RpcRequest对象，由RequestDispatcher选择执行的线程，调用RequestHandler执行，获得执行结果并将结果发送出去
      * 在超时时间内如果ChannelRead()方法未被调用，那么将调用userEventTriggered方法
      */
     @Override
@@ -43,18 +47,47 @@ public class NettyServerHandler extends SimpleChannelInboundHandler<RpcRequest>
                 return;
             }
             logger.info("服务器接收到请求: {}", msg);
-            //调用requestHandler查找服务并通过反射调用方法执行
-            Object result = requestHandler.handle(msg);
-            if (ctx.channel().isActive() && ctx.channel().isWritable()) {
-                ctx.writeAndFlush(RpcResponse.success(result, msg.getRequestId()));
-            } else {
-                logger.error("通道不可写");
+            //在IO线程或业务线程池中调用requestHandler查找服务并通过反射调用方法执行
+            if (!requestDispatcher.dispatch(msg, () -> handle(ctx, msg))) {
+                writeResponse(ctx, RpcResponse.fail(ResponseCode.SERVER_BUSY, msg.getRequestId()));
             }
         } finally {
             ReferenceCountUtil.release(msg);
         }
     }
 
+    /**
+     * 执行请求，服务返回CompletableFuture时在其完成后再写回响应，不占用当前线程
+     */
+    private void handle(ChannelHandlerContext ctx, RpcRequest msg) {
+        requestHandler.handleAsync(msg).thenAccept(response -> writeResponse(ctx, response));
+    }
+
+    /**
+     * 写回响应，在非IO线程中调用时Netty会将写操作提交到Channel所在的IO线程中执行
+     * 写缓冲区的水位只是提示，Channel不可写时响应同样写入缓冲区，已经执行完的请求不丢弃响应，背压由channelWritabilityChanged停止读取实现
+     */
+    private void writeResponse(ChannelHandlerContext ctx, RpcResponse<Object> response) {
+        if (ctx.channel().isActive()) {
+            ctx.writeAndFlush(response);
+        } else {
+            logger.error("通道已关闭，无法写回请求{}的响应", response.getRequestId());
+        }
+    }
+
+    /**
+     * 待写出的响应超过写缓冲区的高水位时停止读取新的请求，客户端读走响应、降到低水位以下后恢复读取
+     */
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        boolean writable = ctx.channel().isWritable();
+        ctx.channel().config().setAutoRead(writable);
+        if (!writable) {
+            logger.warn("通道 {} 的写缓冲区超过高水位，暂停读取请求", ctx.channel());
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         logger.error("处理过程调用时有错误发生:");
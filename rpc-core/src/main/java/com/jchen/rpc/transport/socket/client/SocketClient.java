@@ -1,11 +1,12 @@
 package com.jchen.rpc.transport.socket.client;
 
+import com.jchen.rpc.generator.RequestIdGenerator;
+import com.jchen.rpc.generator.SequenceRequestIdGenerator;
+import com.jchen.rpc.loadbalancer.EndpointStats;
 import com.jchen.rpc.loadbalancer.LoadBalancer;
 import com.jchen.rpc.loadbalancer.RandomLoadBalancer;
-import com.jchen.rpc.registry.NacosServiceDiscovery;
-import com.jchen.rpc.registry.NacosServiceRegistry;
+import com.jchen.rpc.factory.RegistryFactory;
 import com.jchen.rpc.registry.ServiceDiscovery;
-import com.jchen.rpc.registry.ServiceRegistry;
 import com.jchen.rpc.transport.RpcClient;
 import com.jchen.rpc.entity.RpcRequest;
 import com.jchen.rpc.entity.RpcResponse;
@@ -13,18 +14,18 @@ import com.jchen.rpc.enumeration.ResponseCode;
 import com.jchen.rpc.enumeration.RpcError;
 import com.jchen.rpc.exception.RpcException;
 import com.jchen.rpc.serializer.CommonSerializer;
-import com.jchen.rpc.transport.socket.util.ObjectReader;
-import com.jchen.rpc.transport.socket.util.ObjectWriter;
 import com.jchen.rpc.util.RpcMessageChecker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.*;
 import java.net.InetSocketAddress;
-import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Socket方式远程方法调用的消费者（客户端）
+ * 为每个服务端维护一个长连接池，连接在多次调用之间复用，不再为每次调用建立新连接；
+ * 多个线程可以在同一个连接上同时发送请求，响应按请求号匹配
  *
  * @Auther: jchen
  * @Date: 2021/03/15/18:19
@@ -34,6 +35,16 @@ public class SocketClient implements RpcClient {
 
     private final ServiceDiscovery serviceDiscovery;
     private final CommonSerializer serializer;
+    private final RequestIdGenerator requestIdGenerator;
+    private final int connectionsPerEndpoint;
+
+    //默认每个服务端只建立一个连接
+    public static final int DEFAULT_CONNECTIONS = 1;
+    //建立连接的超时时间，单位毫秒
+    public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+
+    //<服务端地址，连接池>
+    private final Map<InetSocketAddress, SocketConnectionPool> connectionPools = new ConcurrentHashMap<>();
 
     public SocketClient() {
         this(DEFAULT_SERIALIZER, new RandomLoadBalancer());
@@ -47,32 +58,63 @@ public class SocketClient implements RpcClient {
     }
 
     public SocketClient(Integer serializer, LoadBalancer loadBalancer) {
-        this.serviceDiscovery = new NacosServiceDiscovery(loadBalancer);
+        this(serializer, loadBalancer, new SequenceRequestIdGenerator());
+    }
+
+    public SocketClient(Integer serializer, LoadBalancer loadBalancer, RequestIdGenerator requestIdGenerator) {
+        this(serializer, RegistryFactory.getServiceDiscovery(loadBalancer), requestIdGenerator);
+    }
+
+    public SocketClient(Integer serializer, ServiceDiscovery serviceDiscovery) {
+        this(serializer, serviceDiscovery, new SequenceRequestIdGenerator());
+    }
+
+    public SocketClient(Integer serializer, ServiceDiscovery serviceDiscovery, RequestIdGenerator requestIdGenerator) {
+        this(serializer, serviceDiscovery, requestIdGenerator, DEFAULT_CONNECTIONS);
+    }
+
+    /**
+     * @param serializer 序列化器
+     * @param serviceDiscovery 服务发现
+     * @param requestIdGenerator 请求号生成器
+     * @param connectionsPerEndpoint 每个服务端最多建立的长连接数
+     */
+    public SocketClient(Integer serializer, ServiceDiscovery serviceDiscovery, RequestIdGenerator requestIdGenerator,
+                        int connectionsPerEndpoint) {
+        if (connectionsPerEndpoint < 1) {
+            throw new IllegalArgumentException("connectionsPerEndpoint必须大于0");
+        }
+        this.serviceDiscovery = serviceDiscovery;
         this.serializer = CommonSerializer.getByCode(serializer);
+        this.requestIdGenerator = requestIdGenerator;
+        this.connectionsPerEndpoint = connectionsPerEndpoint;
     }
 
     /**
-     * 基于Socket的传输方式，通过注册中心查找对应服务所在服务器地址，向服务端发送rpcRequest对象
+     * 基于Socket的传输方式，通过注册中心查找对应服务所在服务器地址，通过该服务器的长连接发送rpcRequest对象
      * @param rpcRequest
+     * @param timeout 读取响应的超时时间，单位毫秒
      * @return
      */
     @Override
-    public Object sendRequest(RpcRequest rpcRequest) {
+    public Object sendRequest(RpcRequest rpcRequest, long timeout) {
         if(serializer == null) {
             logger.error("未设置序列化器");
             throw new RpcException(RpcError.SERIALIZER_NOT_FOUND);
         }
+        if (rpcRequest.getRequestId() == null) {
+            rpcRequest.setRequestId(requestIdGenerator.nextId());
+        }
         //根据接口名在注册中心总查找服务端中的服务，返回提供服务的服务端地址(ip,port)
-        InetSocketAddress inetSocketAddress = serviceDiscovery.lookupService(rpcRequest.getInterfaceName());
-        try (Socket socket = new Socket()) {
-            socket.connect(inetSocketAddress);
-            OutputStream outputStream = socket.getOutputStream();
-            InputStream inputStream = socket.getInputStream();
-            //为了保证Socket方式支持多种序列化器，通过自定义的类ObjectWriter将rpcRequest写入输出流
-            ObjectWriter.writeObject(outputStream, rpcRequest, serializer);
-            //通过自定义的ObjectReader类从输入流中读取rpcResponse响应对象
-            Object obj = ObjectReader.readObject(inputStream);
-            RpcResponse rpcResponse = (RpcResponse) obj;
+        InetSocketAddress inetSocketAddress = serviceDiscovery.lookupService(rpcRequest);
+        //记录该服务端正在进行的调用数与响应时间，供负载均衡策略使用
+        EndpointStats endpointStats = EndpointStats.of(inetSocketAddress);
+        long startTime = endpointStats.begin();
+        try {
+            SocketConnection connection = connectionPools.computeIfAbsent(inetSocketAddress,
+                    address -> new SocketConnectionPool(address, serializer, connectionsPerEndpoint, DEFAULT_CONNECT_TIMEOUT)).acquire();
+            //写出请求并等待按请求号匹配的响应，超时或连接断开时抛出RpcException
+            RpcResponse rpcResponse = connection.send(rpcRequest, timeout);
             if (rpcResponse == null) {
                 logger.error("服务调用失败，service：{}", rpcRequest.getInterfaceName());
                 throw new RpcException(RpcError.SERVICE_INVOCATION_FAILURE, " service:" + rpcRequest.getInterfaceName());
@@ -84,9 +126,18 @@ public class SocketClient implements RpcClient {
             //通过requestId检查响应与请求是否匹配
             RpcMessageChecker.check(rpcRequest, rpcResponse);
             return rpcResponse;
-        } catch (IOException e) {
-            logger.error("调用时有错误发生：", e);
-            throw new RpcException("服务调用失败: ", e);
+        } finally {
+            endpointStats.end(startTime);
+        }
+    }
+
+    /**
+     * 关闭所有长连接
+     */
+    public void close() {
+        for (SocketConnectionPool connectionPool : connectionPools.values()) {
+            connectionPool.close();
         }
+        connectionPools.clear();
     }
 }
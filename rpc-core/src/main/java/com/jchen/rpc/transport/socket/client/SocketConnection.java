@@ -0,0 +1,181 @@
+package com.jchen.rpc.transport.socket.client;
+
+import com.jchen.rpc.codec.CommonDecoder;
+import com.jchen.rpc.entity.RpcRequest;
+import com.jchen.rpc.entity.RpcResponse;
+import com.jchen.rpc.enumeration.RpcError;
+import com.jchen.rpc.exception.RpcException;
+import com.jchen.rpc.serializer.CommonSerializer;
+import com.jchen.rpc.transport.socket.util.ObjectReader;
+import com.jchen.rpc.transport.socket.util.ObjectWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * 客户端与服务端之间的一个长连接，可以同时承载多个请求（pipelining）
+ * 发送请求的线程在锁内写出请求后等待响应的future，不需要等前一个请求的响应返回；
+ * 每个连接有一个读线程，持续读取响应，并按请求号完成对应的future，响应不必按请求的顺序返回
+ * 等待超时的请求从表中移除，迟到的响应直接丢弃，连接仍可继续使用；
+ * 读写出错或对端关闭时连接关闭，所有等待中的请求以RpcException结束
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/18/14:20
+ */
+public class SocketConnection {
+
+    private static final Logger logger = LoggerFactory.getLogger(SocketConnection.class);
+
+    private final InetSocketAddress inetSocketAddress;
+    private final Socket socket;
+    //只由读线程使用
+    private final ObjectReader objectReader;
+    //多个发送请求的线程共用，使用时加锁
+    private final ObjectWriter objectWriter;
+    //<请求号，等待响应的future>
+    private final Map<Long, CompletableFuture<RpcResponse>> pendingRequests = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    private SocketConnection(InetSocketAddress inetSocketAddress, Socket socket, CommonSerializer serializer) throws IOException {
+        this.inetSocketAddress = inetSocketAddress;
+        this.socket = socket;
+        //已超时的请求的响应不再反序列化
+        this.objectReader = new ObjectReader(socket.getInputStream(), CommonDecoder.DEFAULT_MAX_FRAME_LENGTH,
+                requestId -> pendingRequests.containsKey(requestId));
+        this.objectWriter = new ObjectWriter(socket.getOutputStream(), serializer);
+    }
+
+    /**
+     * 建立连接并启动读线程
+     * @param inetSocketAddress 服务端地址
+     * @param connectTimeout 建立连接的超时时间，单位毫秒
+     * @param serializer 序列化器
+     */
+    public static SocketConnection connect(InetSocketAddress inetSocketAddress, int connectTimeout, CommonSerializer serializer)
+            throws IOException {
+        Socket socket = new Socket();
+        try {
+            //一个连接上连续发送多个小数据包，关闭Nagle算法，避免与延迟确认叠加产生的停顿
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.connect(inetSocketAddress, connectTimeout);
+            SocketConnection connection = new SocketConnection(inetSocketAddress, socket, serializer);
+            Thread reader = new Thread(connection::readLoop, "socket-rpc-reader-" + inetSocketAddress);
+            reader.setDaemon(true);
+            reader.start();
+            return connection;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 发送请求并等待响应
+     * @param rpcRequest 请求对象，请求号用于匹配响应
+     * @param timeout 超时时间，单位毫秒，不大于0时不设超时
+     * @return 响应对象
+     */
+    public RpcResponse send(RpcRequest rpcRequest, long timeout) {
+        Long requestId = rpcRequest.getRequestId();
+        CompletableFuture<RpcResponse> future = new CompletableFuture<>();
+        pendingRequests.put(requestId, future);
+        //先登记再检查，与close()中的先置标志再清理配合，保证请求不会遗留在表中
+        if (closed) {
+            pendingRequests.remove(requestId);
+            throw new RpcException(RpcError.CHANNEL_CLOSED, inetSocketAddress.toString());
+        }
+        try {
+            //多个线程共用一个连接，整个协议包在锁内写出，保证不会交错
+            synchronized (objectWriter) {
+                objectWriter.writeObject(rpcRequest);
+            }
+        } catch (IOException e) {
+            pendingRequests.remove(requestId);
+            close();
+            throw new RpcException(RpcError.CHANNEL_CLOSED, inetSocketAddress.toString(), e);
+        }
+        try {
+            return timeout > 0 ? future.get(timeout, TimeUnit.MILLISECONDS) : future.get();
+        } catch (TimeoutException e) {
+            pendingRequests.remove(requestId);
+            throw new RpcException(RpcError.RESPONSE_TIMEOUT, "requestId:" + requestId + ", timeout:" + timeout + "ms");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RpcException) {
+                throw (RpcException) e.getCause();
+            }
+            throw new RpcException("服务调用失败: ", e.getCause());
+        } catch (InterruptedException e) {
+            pendingRequests.remove(requestId);
+            Thread.currentThread().interrupt();
+            throw new RpcException("等待响应时被中断: ", e);
+        }
+    }
+
+    public boolean isActive() {
+        return !closed;
+    }
+
+    /**
+     * 关闭连接，等待中的请求全部失败
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.warn("关闭连接 {} 时有错误发生", inetSocketAddress, e);
+        }
+        List<CompletableFuture<RpcResponse>> failed = new ArrayList<>();
+        for (Long requestId : pendingRequests.keySet()) {
+            CompletableFuture<RpcResponse> future = pendingRequests.remove(requestId);
+            if (future != null) {
+                failed.add(future);
+            }
+        }
+        if (!failed.isEmpty()) {
+            logger.error("连接 {} 已断开，{} 个请求未得到响应", inetSocketAddress, failed.size());
+        }
+        for (CompletableFuture<RpcResponse> future : failed) {
+            future.completeExceptionally(new RpcException(RpcError.CHANNEL_CLOSED, inetSocketAddress.toString()));
+        }
+    }
+
+    /**
+     * 读线程，持续读取响应直到连接关闭
+     */
+    private void readLoop() {
+        try {
+            while (!closed) {
+                RpcResponse rpcResponse = (RpcResponse) objectReader.readObject();
+                Long requestId = rpcResponse.getRequestId();
+                CompletableFuture<RpcResponse> future = pendingRequests.remove(requestId);
+                if (future != null) {
+                    future.complete(rpcResponse);
+                } else {
+                    //请求已超时，迟到的响应直接丢弃
+                    logger.warn("收到未知请求号的响应，请求可能已超时: {}", requestId);
+                }
+            }
+        } catch (EOFException e) {
+            logger.info("服务端 {} 关闭了连接", inetSocketAddress);
+        } catch (IOException | RuntimeException e) {
+            if (!closed) {
+                logger.error("读取服务端 {} 的响应时有错误发生", inetSocketAddress, e);
+            }
+        } finally {
+            close();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.jchen.rpc.transport.socket.client;
+
+import com.jchen.rpc.enumeration.RpcError;
+import com.jchen.rpc.exception.RpcException;
+import com.jchen.rpc.serializer.CommonSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 与同一个服务端之间的长连接池，最多保持固定数量的连接，请求轮流使用各个连接
+ * 连接在第一次被选中时才建立；连接断开后在下次被选中时重新建立
+ * 每个连接可以同时承载多个请求，因此连接数不需要与调用线程数相同
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/18/14:50
+ */
+public class SocketConnectionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(SocketConnectionPool.class);
+
+    private final InetSocketAddress inetSocketAddress;
+    private final CommonSerializer serializer;
+    private final int connectTimeout;
+    private final AtomicReferenceArray<SocketConnection> connections;
+    private final AtomicInteger index = new AtomicInteger();
+
+    /**
+     * @param inetSocketAddress 服务端地址
+     * @param serializer 序列化器
+     * @param maxConnections 最多建立的连接数
+     * @param connectTimeout 建立连接的超时时间，单位毫秒
+     */
+    public SocketConnectionPool(InetSocketAddress inetSocketAddress, CommonSerializer serializer, int maxConnections, int connectTimeout) {
+        this.inetSocketAddress = inetSocketAddress;
+        this.serializer = serializer;
+        this.connectTimeout = connectTimeout;
+        this.connections = new AtomicReferenceArray<>(maxConnections);
+    }
+
+    /**
+     * 轮流取得一个连接，选中的位置还没有连接或连接已断开时建立新连接
+     * @return 可用的连接
+     */
+    public SocketConnection acquire() {
+        int slot = (index.getAndIncrement() & Integer.MAX_VALUE) % connections.length();
+        SocketConnection connection = connections.get(slot);
+        if (connection != null && connection.isActive()) {
+            return connection;
+        }
+        //建立连接很少发生，加锁避免并发的请求重复建立连接
+        synchronized (this) {
+            connection = connections.get(slot);
+            if (connection != null && connection.isActive()) {
+                return connection;
+            }
+            try {
+                connection = SocketConnection.connect(inetSocketAddress, connectTimeout, serializer);
+            } catch (IOException e) {
+                logger.error("连接服务端 {} 失败", inetSocketAddress, e);
+                throw new RpcException(RpcError.CLIENT_CONNECT_SERVER_FAILURE, inetSocketAddress.toString(), e);
+            }
+            logger.info("客户端连接成功!");
+            connections.set(slot, connection);
+            return connection;
+        }
+    }
+
+    /**
+     * 关闭池中的所有连接
+     */
+    public void close() {
+        for (int i = 0; i < connections.length(); i++) {
+            SocketConnection connection = connections.getAndSet(i, null);
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+}
@@ -2,7 +2,8 @@ package com.jchen.rpc.transport.socket.server;
 
 import com.jchen.rpc.entity.RpcRequest;
 import com.jchen.rpc.entity.RpcResponse;
-import com.jchen.rpc.registry.ServiceRegistry;
+import com.jchen.rpc.enumeration.ResponseCode;
+import com.jchen.rpc.handler.RequestDispatcher;
 import com.jchen.rpc.handler.RequestHandler;
 import com.jchen.rpc.serializer.CommonSerializer;
 import com.jchen.rpc.transport.socket.util.ObjectReader;
@@ -10,13 +11,19 @@ import com.jchen.rpc.transport.socket.util.ObjectWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * 处理RpcRequest的工作线程，从输入流中获取rpcRequest对象，并获取对应服务，将服务执行后得到的RpcResponse对象写入输出流
+ * 处理一个连接的工作线程，从输入流中持续读取rpcRequest对象，直到客户端关闭连接
+ * 每个请求交给RequestDispatcher选择的线程池执行，执行得到的RpcResponse对象在锁内写入输出流，
+ * 同一连接上的多个请求可以同时执行，响应按完成的顺序写回，客户端按请求号匹配；线程池已满时返回失败的响应
+ * 同时执行的请求数达到上限时暂停读取，直到有请求执行完，未读取的数据积压在Socket的接收缓冲区中，由TCP的流量控制让客户端放慢发送
  *
  * @Auther: jchen
  * @Date: 2021/03/16/19:26
@@ -27,30 +34,99 @@ public class SocketRequestHandlerThread implements Runnable {
 
     private Socket socket;
     private RequestHandler requestHandler;
+    private RequestDispatcher requestDispatcher;
     private CommonSerializer serializer;
+    //该连接上同时执行的请求数的许可
+    private Semaphore pendingRequests;
+    //连接关闭后执行，只执行一次
+    private Runnable closeCallback;
+    private final AtomicBoolean closed = new AtomicBoolean();
 
-    public SocketRequestHandlerThread(Socket socket, RequestHandler requestHandler, CommonSerializer serializer) {
+    /**
+     * @param socket 连接
+     * @param requestHandler 执行请求
+     * @param requestDispatcher 选择执行请求的线程池
+     * @param serializer 序列化器
+     * @param maxPendingRequests 同时执行的最大请求数
+     * @param closeCallback 连接关闭后执行
+     */
+    public SocketRequestHandlerThread(Socket socket, RequestHandler requestHandler, RequestDispatcher requestDispatcher,
+                                      CommonSerializer serializer, int maxPendingRequests, Runnable closeCallback) {
         this.socket = socket;
         this.requestHandler = requestHandler;
+        this.requestDispatcher = requestDispatcher;
         this.serializer = serializer;
+        this.pendingRequests = new Semaphore(maxPendingRequests);
+        this.closeCallback = closeCallback;
     }
 
     /**
-     * 处理线程，从输入流中获取rpcRequest对象，并获取对应服务，将服务执行后得到的RpcResponse对象写入输出流
+     * 处理线程，从输入流中循环读取rpcRequest对象，并获取对应服务，将服务执行后得到的RpcResponse对象写入输出流
      */
     @Override
     public void run() {
         try (InputStream inputStream = socket.getInputStream();//这种写法可以在执行完后自动关闭流，不需要手动关闭
-             OutputStream outputStream = socket.getOutputStream();) {
-            //读取rpcRequest对象
-             RpcRequest rpcRequest = (RpcRequest) ObjectReader.readObject(inputStream);
-             //通过requestHandler通过反射调用方法执行，返回执行结果
-             Object result = requestHandler.handle(rpcRequest);
-             //将执行结果封装到RpcResponse对象中，写入输出流，供客户端读取
-             RpcResponse<Object> response = RpcResponse.success(result, rpcRequest.getRequestId());
-             ObjectWriter.writeObject(outputStream, response, serializer);
-        } catch (IOException e) {
+             OutputStream outputStream = socket.getOutputStream()) {
+            //每个连接一个，复用其中的缓冲区
+            ObjectReader objectReader = new ObjectReader(inputStream);
+            ObjectWriter objectWriter = new ObjectWriter(outputStream, serializer);
+            while (true) {
+                //读取rpcRequest对象，客户端关闭连接时结束
+                RpcRequest rpcRequest = (RpcRequest) objectReader.readObject();
+                if (Boolean.TRUE.equals(rpcRequest.getHeartBeat())) {
+                    logger.info("接收到客户端心跳包...");
+                    continue;
+                }
+                //同时执行的请求数达到上限时在这里等待，暂停读取
+                pendingRequests.acquire();
+                //通过requestHandler通过反射调用方法执行，服务返回CompletableFuture时在其完成后再写回响应
+                if (!requestDispatcher.dispatch(rpcRequest, () -> requestHandler.handleAsync(rpcRequest)
+                        .whenComplete((response, e) -> {
+                            try {
+                                writeResponse(objectWriter, response);
+                            } finally {
+                                pendingRequests.release();
+                            }
+                        }))) {
+                    pendingRequests.release();
+                    writeResponse(objectWriter, RpcResponse.fail(ResponseCode.SERVER_BUSY, rpcRequest.getRequestId()));
+                }
+            }
+        } catch (EOFException e) {
+            logger.info("消费者关闭了连接: {}:{}", socket.getInetAddress(), socket.getPort());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
             logger.error("调用或发送时有错误发生：", e);
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * 将RpcResponse对象写入输出流，供客户端读取；多个请求的响应可能同时写回，整个协议包在锁内写出
+     */
+    private void writeResponse(ObjectWriter objectWriter, RpcResponse<Object> response) {
+        try {
+            synchronized (objectWriter) {
+                objectWriter.writeObject(response);
+            }
+        } catch (IOException e) {
+            logger.error("发送响应时有错误发生：", e);
+            close();
+        }
+    }
+
+    private void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.error("关闭连接时有错误发生：", e);
+        } finally {
+            closeCallback.run();
         }
     }
 
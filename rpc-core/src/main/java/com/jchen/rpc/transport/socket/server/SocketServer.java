@@ -1,17 +1,21 @@
 package com.jchen.rpc.transport.socket.server;
 
+import com.jchen.rpc.enumeration.ConnectionThreadMode;
+import com.jchen.rpc.enumeration.DispatchMode;
 import com.jchen.rpc.enumeration.RpcError;
 import com.jchen.rpc.exception.RpcException;
 import com.jchen.rpc.hook.ShutdownHook;
 import com.jchen.rpc.provider.ServiceProvider;
 import com.jchen.rpc.provider.ServiceProviderImpl;
-import com.jchen.rpc.registry.NacosServiceRegistry;
+import com.jchen.rpc.factory.RegistryFactory;
 import com.jchen.rpc.transport.AbstractRpcServer;
 import com.jchen.rpc.transport.RpcServer;
 import com.jchen.rpc.registry.ServiceRegistry;
+import com.jchen.rpc.handler.RequestDispatcher;
 import com.jchen.rpc.handler.RequestHandler;
 import com.jchen.rpc.serializer.CommonSerializer;
 import com.jchen.rpc.util.ThreadPoolFactory;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,6 +27,10 @@ import java.util.concurrent.*;
 
 /**
  * Socket方式远程方法调用的提供者（服务端）
+ * 每个连接由一个线程持续读取请求，直到客户端关闭连接，请求交给业务线程池执行；
+ * 连接线程与业务线程池分开，长连接不会占满执行请求的线程池
+ * 支持虚拟线程（JDK 21及以上）时，每个连接与每个请求都在各自的虚拟线程中执行，保持阻塞的编程方式而没有线程数的上限；
+ * 连接数或单个连接上执行的请求数达到上限时，暂停accept或暂停读取，以阻塞的方式向客户端施加背压，详见SocketServerConfig
  *
  * @Auther: jchen
  * @Date: 2021/03/15/20:06
@@ -30,7 +38,13 @@ import java.util.concurrent.*;
 public class SocketServer extends AbstractRpcServer {
 
     private final ExecutorService threadPool;
+    //读取各个连接上请求的线程，每个连接一个，连接关闭后线程回收
+    private final ExecutorService connectionThreadPool;
+    private final RequestDispatcher requestDispatcher;
     private final CommonSerializer serializer;
+    private final SocketServerConfig config;
+    //正在处理的连接数的许可
+    private final Semaphore connectionPermits;
     private RequestHandler requestHandler = new RequestHandler();
 
     public SocketServer(String host, int port) {
@@ -38,10 +52,37 @@ public class SocketServer extends AbstractRpcServer {
     }
 
     public SocketServer(String host, int port, Integer serializer) {
+        this(host, port, serializer, RegistryFactory.getServiceRegistry());
+    }
+
+    public SocketServer(String host, int port, Integer serializer, ServiceRegistry serviceRegistry) {
+        this(host, port, serializer, serviceRegistry, new SocketServerConfig());
+    }
+
+    /**
+     * @param host 监听的地址
+     * @param port 监听的端口
+     * @param serializer 序列化器
+     * @param serviceRegistry 注册中心
+     * @param config 线程模型、最大连接数与每个连接上同时执行的最大请求数
+     */
+    public SocketServer(String host, int port, Integer serializer, ServiceRegistry serviceRegistry, SocketServerConfig config) {
         this.host = host;
         this.port = port;
-        threadPool = ThreadPoolFactory.createDefaultThreadPool("socket-rpc-server");
-        this.serviceRegistry = new NacosServiceRegistry();
+        this.config = config;
+        if (config.useVirtualThreads()) {
+            connectionThreadPool = ThreadPoolFactory.createThreadPerTaskExecutor("socket-rpc-connection");
+            threadPool = ThreadPoolFactory.createThreadPerTaskExecutor("socket-rpc-server");
+        } else {
+            if (config.getThreadMode() == ConnectionThreadMode.VIRTUAL) {
+                logger.warn("当前JVM不支持虚拟线程，使用平台线程");
+            }
+            connectionThreadPool = Executors.newCachedThreadPool(new DefaultThreadFactory("socket-rpc-connection"));
+            threadPool = ThreadPoolFactory.createDefaultThreadPool("socket-rpc-server");
+        }
+        connectionPermits = new Semaphore(config.getMaxConnections());
+        requestDispatcher = new RequestDispatcher(DispatchMode.EXECUTOR, threadPool);
+        this.serviceRegistry = serviceRegistry;
         this.serviceProvider = new ServiceProviderImpl();
         this.serializer = CommonSerializer.getByCode(serializer);
         scanServices();
@@ -54,17 +95,54 @@ public class SocketServer extends AbstractRpcServer {
             serverSocket.bind(new InetSocketAddress(host, port));
             logger.info("服务器启动……");
             //添加自动注销服务的钩子，在服务端关闭时，将自动注销服务
-            ShutdownHook.getShutdownHook().addClearAllHook();
-            Socket socket;
-            //监听到消费者连接
-            while((socket = serverSocket.accept()) != null) {
+            ShutdownHook.getShutdownHook().addClearAllHook(serviceRegistry);
+            logger.info("服务端使用{}线程处理连接，最大连接数 {}", config.useVirtualThreads() ? "虚拟" : "平台", config.getMaxConnections());
+            while (true) {
+                //连接数达到上限时暂停accept，新连接留在操作系统的连接队列中，直到有连接关闭
+                if (!connectionPermits.tryAcquire()) {
+                    logger.warn("连接数达到上限 {}，暂停接受新连接", config.getMaxConnections());
+                    connectionPermits.acquire();
+                }
+                Socket socket;
+                try {
+                    //监听到消费者连接
+                    socket = serverSocket.accept();
+                } catch (IOException e) {
+                    connectionPermits.release();
+                    throw e;
+                }
                 logger.info("消费者连接: {}:{}", socket.getInetAddress(), socket.getPort());
-                //创建工作线程，处理rpcRequest对象，获取对应服务，将执行结果写入rpcResponse写入输出流中供客户端读取
-                threadPool.execute(new SocketRequestHandlerThread(socket, requestHandler, serializer));
+                handleConnection(socket);
             }
-            threadPool.shutdown();
         } catch (IOException e) {
             logger.error("服务器启动时有错误发生:", e);
+        } catch (InterruptedException e) {
+            logger.error("服务器被中断:", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            connectionThreadPool.shutdown();
+            threadPool.shutdown();
+        }
+    }
+
+    /**
+     * 创建连接线程，循环读取rpcRequest对象，获取对应服务，将执行结果写入rpcResponse写入输出流中供客户端读取
+     * 无法创建线程时只关闭该连接，不影响继续接受其他连接
+     */
+    private void handleConnection(Socket socket) {
+        try {
+            //一个连接上连续写回多个小的响应，关闭Nagle算法，避免与客户端的延迟确认叠加产生的停顿
+            socket.setTcpNoDelay(true);
+            connectionThreadPool.execute(new SocketRequestHandlerThread(socket, requestHandler, requestDispatcher, serializer,
+                    config.getMaxPendingRequestsPerConnection(), connectionPermits::release));
+        } catch (IOException | RejectedExecutionException e) {
+            logger.error("无法处理连接 {}:{}，关闭连接", socket.getInetAddress(), socket.getPort(), e);
+            connectionPermits.release();
+            try {
+                socket.close();
+            } catch (IOException closeException) {
+                logger.error("关闭连接时有错误发生：", closeException);
+            }
         }
     }
 }
@@ -0,0 +1,64 @@
+package com.jchen.rpc.transport.socket.server;
+
+import com.jchen.rpc.enumeration.ConnectionThreadMode;
+import com.jchen.rpc.util.ThreadPoolFactory;
+
+/**
+ * Socket服务端的配置：
+ * 1.处理连接的线程模型，默认在支持时使用虚拟线程；
+ * 2.最大连接数，达到上限时暂停accept，新连接留在操作系统的连接队列中，直到有连接关闭；
+ * 3.每个连接上同时执行的最大请求数，达到上限时暂停读取该连接，由TCP的流量控制让客户端放慢发送
+ * 两个上限都以阻塞的方式向客户端施加背压，而不是拒绝或丢弃连接
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/18/16:20
+ */
+public class SocketServerConfig {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 10000;
+    public static final int DEFAULT_MAX_PENDING_REQUESTS_PER_CONNECTION = 256;
+
+    private ConnectionThreadMode threadMode = ConnectionThreadMode.AUTO;
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private int maxPendingRequestsPerConnection = DEFAULT_MAX_PENDING_REQUESTS_PER_CONNECTION;
+
+    /**
+     * 是否实际使用虚拟线程，AUTO或VIRTUAL在当前JVM不支持虚拟线程时退回平台线程
+     */
+    public boolean useVirtualThreads() {
+        return threadMode != ConnectionThreadMode.PLATFORM && ThreadPoolFactory.isVirtualThreadSupported();
+    }
+
+    public ConnectionThreadMode getThreadMode() {
+        return threadMode;
+    }
+
+    public SocketServerConfig setThreadMode(ConnectionThreadMode threadMode) {
+        this.threadMode = threadMode;
+        return this;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public SocketServerConfig setMaxConnections(int maxConnections) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("maxConnections必须大于0");
+        }
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    public int getMaxPendingRequestsPerConnection() {
+        return maxPendingRequestsPerConnection;
+    }
+
+    public SocketServerConfig setMaxPendingRequestsPerConnection(int maxPendingRequestsPerConnection) {
+        if (maxPendingRequestsPerConnection < 1) {
+            throw new IllegalArgumentException("maxPendingRequestsPerConnection必须大于0");
+        }
+        this.maxPendingRequestsPerConnection = maxPendingRequestsPerConnection;
+        return this;
+    }
+}
@@ -1,84 +1,196 @@
 package com.jchen.rpc.transport.socket.util;
 
+import com.jchen.rpc.codec.CommonDecoder;
+import com.jchen.rpc.codec.ProtocolConstants;
 import com.jchen.rpc.entity.RpcRequest;
 import com.jchen.rpc.entity.RpcResponse;
 import com.jchen.rpc.enumeration.PackageType;
 import com.jchen.rpc.enumeration.RpcError;
 import com.jchen.rpc.exception.RpcException;
 import com.jchen.rpc.serializer.CommonSerializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.function.LongPredicate;
 
 /**
  * 为了Socket方式也能够使用多种序列化器，创建一个通用类
- * Socket方式从输入流中读取字节并反序列化
+ * Socket方式从输入流中读取字节并反序列化，只解析v2协议，收到v1协议包时抛出RpcException
+ * 每个连接持有一个，输入流外包装缓冲区，协议头的多个字段通常只需一次read系统调用；
+ * 每个字段都读满指定的长度，在协议包之间遇到流结束时抛出EOFException，表示对端正常关闭了连接
+ * 数据部分读入复用的缓冲区后直接反序列化，序列化器也按编号缓存复用；不是线程安全的，同一时刻只能由一个线程读取
+ * 请求号取自协议头；客户端可以指定响应过滤条件，没有请求在等待的响应跳过数据部分，不再反序列化
  *
  * @Auther: jchen
  * @Date: 2021/03/20/16:59
  */
 public class ObjectReader {
     private static final Logger logger = LoggerFactory.getLogger(ObjectReader.class);
-    private static final int MAGIC_NUMBER = 0xCAFEBABE;
+
+    //输入流缓冲区的大小
+    private static final int BUFFER_SIZE = 8 * 1024;
+    //数据缓冲区的初始大小
+    private static final int INITIAL_DATA_BUFFER_SIZE = 1024;
+    //读过大的协议包后数据缓冲区超过该大小时重新分配，避免长期占用内存
+    private static final int MAX_RETAINED_DATA_BUFFER_SIZE = 64 * 1024;
+
+    private final DataInputStream in;
+    private final int maxFrameLength;
+    //以协议头中的请求号判断响应是否还有请求在等待，为null时读取所有响应
+    private final LongPredicate responseFilter;
+    private final CommonSerializer[] serializers = new CommonSerializer[256];
+    private ByteBuf dataBuffer = Unpooled.buffer(INITIAL_DATA_BUFFER_SIZE);
+
+    public ObjectReader(InputStream in) {
+        this(in, CommonDecoder.DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    /**
+     * @param in 连接的输入流
+     * @param maxFrameLength 允许的最大数据包长度(协议头+数据)，与CommonDecoder含义相同，超过时抛出RpcException，避免错误的长度导致分配过大的内存
+     */
+    public ObjectReader(InputStream in, int maxFrameLength) {
+        this(in, maxFrameLength, null);
+    }
+
+    /**
+     * @param in 连接的输入流
+     * @param maxFrameLength 允许的最大数据包长度(协议头+数据)
+     * @param responseFilter 参数为响应的请求号，返回false时跳过该响应，不再反序列化；为null时读取所有响应
+     */
+    public ObjectReader(InputStream in, int maxFrameLength, LongPredicate responseFilter) {
+        this.in = new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+        this.maxFrameLength = maxFrameLength;
+        this.responseFilter = responseFilter;
+    }
 
     /**
      * 根据MRF协议从输入流通过反序列化读取object信息，支持多种序列化器
-     * @param in 输入流
      * @return 反序列化后的rpcRequest对象或rpcReponse对象
+     * @throws EOFException 对端已关闭连接
      * @throws IOException
      */
-    public static Object readObject(InputStream in) throws IOException {
-        //1.MAGIC_NUMBER魔数
-        byte[] numberBytes = new byte[4];
-        in.read(numberBytes);
-        int magic = bytesToInt(numberBytes);
-        if (magic != MAGIC_NUMBER) {
-            logger.error("不识别的协议包: {}", magic);
+    public Object readObject() throws IOException {
+        while (true) {
+            Object obj = readFrame();
+            //被过滤掉的响应，继续读取下一个协议包
+            if (obj != null) {
+                return obj;
+            }
+        }
+    }
+
+    private Object readFrame() throws IOException {
+        //1.MAGIC_NUMBER魔数，v2协议的前4个字节为魔数(2)、版本号(1)与包类型(1)
+        int magic = in.readInt();
+        if ((magic >>> 16) == ProtocolConstants.MAGIC_NUMBER_V2) {
+            return readObjectV2((byte) (magic >>> 8), magic & 0xFF);
+        }
+        if (magic == ProtocolConstants.MAGIC_NUMBER_V1) {
+            logger.error("收到v1协议包，v1协议已不再支持");
+            throw new RpcException(RpcError.UNSUPPORTED_PROTOCOL_VERSION);
+        }
+        logger.error("不识别的协议包: {}", magic);
+        throw new RpcException(RpcError.UNKNOWN_PROTOCOL);
+    }
+
+    private Object readObjectV2(byte version, int packageCode) throws IOException {
+        if (version != ProtocolConstants.VERSION_2) {
+            logger.error("不识别的协议版本: {}", version);
             throw new RpcException(RpcError.UNKNOWN_PROTOCOL);
         }
-        //2.Package Type包类型，是请求类型还是相应类型
-        in.read(numberBytes);
-        int packageCode = bytesToInt(numberBytes);
-        Class<?> packageClass;
-        if (packageCode == PackageType.REQUEST_PACK.getCode()) {
-            packageClass = RpcRequest.class;
-        } else if (packageCode == PackageType.RESPONSE_PACK.getCode()) {
-            packageClass = RpcResponse.class;
-        } else {
-            logger.error("不识别的数据包: {}", packageCode);
-            throw new RpcException(RpcError.UNKNOWN_PACKAGE_TYPE);
+        //2.Package Type包类型
+        Class<?> packageClass = getPackageClass(packageCode);
+        //3.Serializer Type序列化器类型，之后是1字节的标志位
+        CommonSerializer serializer = getSerializer(in.readUnsignedByte());
+        in.readByte();
+        //4.Request Id请求号
+        long requestId = in.readLong();
+        //5.Data Length数据字节长度
+        int length = in.readInt();
+        //没有请求在等待的响应跳过数据部分
+        if (packageClass == RpcResponse.class && responseFilter != null && !responseFilter.test(requestId)) {
+            logger.warn("收到未知请求号的响应，请求可能已超时，不再反序列化: {}", requestId);
+            skipData(length);
+            return null;
         }
-        //3.Serializer Type序列化器类型
-        in.read(numberBytes);
-        int serializerCode = bytesToInt(numberBytes);
-        CommonSerializer serializer = CommonSerializer.getByCode(serializerCode);
-        if (serializer == null) {
-            logger.error("不识别的反序列化器: {}", serializerCode);
-            throw new RpcException(RpcError.UNKNOWN_SERIALIZER);
+        //6.Data Bytes反序列化后数据内容，数据中不含请求号，取协议头中的请求号
+        Object obj = readData(serializer, length, packageClass);
+        if (obj instanceof RpcRequest) {
+            ((RpcRequest) obj).setRequestId(requestId);
+        } else {
+            ((RpcResponse<?>) obj).setRequestId(requestId);
         }
-        //4.Data Length数据字节长度
-        in.read(numberBytes);
-        int length = bytesToInt(numberBytes);
-        byte[] bytes = new byte[length];
-        //5.Data Bytes反序列化后数据内容
-        in.read(bytes);
-        return serializer.deserialize(bytes, packageClass);
+        return obj;
     }
 
     /**
-     * 将byte[]类型转换为int类型
-     * @param src
-     * @return
+     * 将数据部分读满到复用的缓冲区中，再直接从缓冲区反序列化
      */
-    public static int bytesToInt(byte[] src) {
-        int value;
-        value = ((src[0] & 0xFF)<<24)
-                |((src[1] & 0xFF)<<16)
-                |((src[2] & 0xFF)<<8)
-                |(src[3] & 0xFF);
-        return value;
+    private Object readData(CommonSerializer serializer, int length, Class<?> packageClass) throws IOException {
+        checkLength(length);
+        ByteBuf buffer = dataBuffer;
+        buffer.clear().ensureWritable(length);
+        in.readFully(buffer.array(), buffer.arrayOffset(), length);
+        buffer.writerIndex(length);
+        try {
+            return serializer.deserialize(buffer, packageClass);
+        } finally {
+            if (buffer.capacity() > MAX_RETAINED_DATA_BUFFER_SIZE) {
+                dataBuffer = Unpooled.buffer(INITIAL_DATA_BUFFER_SIZE);
+            }
+        }
+    }
+
+    private void skipData(int length) throws IOException {
+        checkLength(length);
+        int remaining = length;
+        while (remaining > 0) {
+            int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+                //skipBytes在流结束时返回0，readByte则抛出EOFException
+                in.readByte();
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private void checkLength(int length) {
+        if (length < 0 || length > maxFrameLength - ProtocolConstants.HEADER_LENGTH_V2) {
+            logger.error("数据包长度超出限制: {}", length);
+            throw new RpcException(RpcError.FRAME_TOO_LONG, "length:" + length);
+        }
+    }
+
+    private static Class<?> getPackageClass(int packageCode) {
+        if (packageCode == PackageType.REQUEST_PACK.getCode()) {
+            return RpcRequest.class;
+        } else if (packageCode == PackageType.RESPONSE_PACK.getCode()) {
+            return RpcResponse.class;
+        }
+        logger.error("不识别的数据包: {}", packageCode);
+        throw new RpcException(RpcError.UNKNOWN_PACKAGE_TYPE);
+    }
+
+    private CommonSerializer getSerializer(int serializerCode) {
+        CommonSerializer serializer = serializerCode >= 0 && serializerCode < serializers.length ? serializers[serializerCode] : null;
+        if (serializer == null) {
+            serializer = CommonSerializer.getByCode(serializerCode);
+            if (serializer == null) {
+                logger.error("不识别的反序列化器: {}", serializerCode);
+                throw new RpcException(RpcError.UNKNOWN_SERIALIZER);
+            }
+            serializers[serializerCode] = serializer;
+        }
+        return serializer;
     }
 
 }
@@ -1,64 +1,82 @@
 package com.jchen.rpc.transport.socket.util;
 
+import com.jchen.rpc.codec.ProtocolConstants;
 import com.jchen.rpc.entity.RpcRequest;
+import com.jchen.rpc.entity.RpcResponse;
 import com.jchen.rpc.enumeration.PackageType;
 import com.jchen.rpc.serializer.CommonSerializer;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 
 import java.io.IOException;
 import java.io.OutputStream;
 
 /**
  * 为了Socket方式也能够使用多种序列化器，创建一个通用类
- * Socket方式将对象序列化并写入输出流，该方式支持MRF协议，包含：
- * MAGIC_NUMBER魔数；Package Type包类型；Serializer Type序列化器；Data Length数据字节长度；Data Bytes数据内容
+ * Socket方式将对象序列化并写入输出流，该方式使用v2版本的MRF协议，包含：
+ * 魔数；版本号；Package Type包类型；Serializer Type序列化器；标志位；Request Id请求号；Data Length数据字节长度；Data Bytes数据内容
+ * 每个连接持有一个，协议头与对象直接序列化到复用的缓冲区中，拼成完整的协议包后一次写出，每个协议包只有一次write系统调用；
+ * 不是线程安全的，多个线程共用时由调用方加锁
  * @Auther: jchen
  * @Date: 2021/03/20/16:40
  */
 public class ObjectWriter {
-    private static final Logger logger = LoggerFactory.getLogger(ObjectWriter.class);
-    private static final int MAGIC_NUMBER = 0xCAFEBABE;
+
+    //缓冲区的初始大小
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    //写过大的协议包后缓冲区超过该大小时重新分配，避免长期占用内存
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream outputStream;
+    private final CommonSerializer serializer;
+    private ByteBuf buffer = Unpooled.buffer(INITIAL_BUFFER_SIZE);
+
+    /**
+     * @param outputStream 连接的输出流
+     * @param serializer 序列化器
+     */
+    public ObjectWriter(OutputStream outputStream, CommonSerializer serializer) {
+        this.outputStream = outputStream;
+        this.serializer = serializer;
+    }
 
     /**
      * 根据MRF协议将object写入输出流，支持多种序列化器
-     * @param outputStream 输出流
      * @param object 写入输出流的对象，至rpcRequest对象或rpcResponse对象
-     * @param serializer 序列化器
      * @throws IOException
      */
-    public static void writeObject(OutputStream outputStream, Object object, CommonSerializer serializer) throws IOException {
-        //1.MAGIC_NUMBER魔数
-        outputStream.write(intToByte(MAGIC_NUMBER));
+    public void writeObject(Object object) throws IOException {
+        Long requestId;
+        int packageCode;
         if (object instanceof RpcRequest) {
-            //2.Package Type包类型，是请求类型还是相应类型
-            outputStream.write(intToByte(PackageType.REQUEST_PACK.getCode()));
-        }else {
-            outputStream.write(intToByte(PackageType.RESPONSE_PACK.getCode()));
+            requestId = ((RpcRequest) object).getRequestId();
+            packageCode = PackageType.REQUEST_PACK.getCode();
+        } else {
+            requestId = ((RpcResponse<?>) object).getRequestId();
+            packageCode = PackageType.RESPONSE_PACK.getCode();
         }
-        //3.Serializer Type序列化器类型
-        outputStream.write(intToByte(serializer.getCode()));
-        //4.Data Length序列化后数据字节长度
-        byte[] bytes = serializer.serialize(object);
-        outputStream.write(intToByte(bytes.length));
-        //5.Data Bytes序列化后数据内容
-        outputStream.write(bytes);
+        ByteBuf out = buffer.clear();
+        //1.魔数与版本号
+        out.writeShort(ProtocolConstants.MAGIC_NUMBER_V2);
+        out.writeByte(ProtocolConstants.VERSION_2);
+        //2.Package Type包类型，是请求类型还是相应类型
+        out.writeByte(packageCode);
+        //3.Serializer Type序列化器类型与标志位
+        out.writeByte(serializer.getCode());
+        out.writeByte(ProtocolConstants.FLAG_NONE);
+        //4.Request Id请求号
+        out.writeLong(requestId == null ? 0L : requestId);
+        //5.Data Length序列化后数据字节长度，序列化后回填
+        out.writeInt(0);
+        //6.Data Bytes序列化后数据内容
+        serializer.serialize(object, out);
+        out.setInt(ProtocolConstants.LENGTH_FIELD_OFFSET_V2, out.writerIndex() - ProtocolConstants.HEADER_LENGTH_V2);
+        //整个协议包一次写出
+        outputStream.write(out.array(), out.arrayOffset(), out.writerIndex());
         outputStream.flush();
-
-    }
-
-    /**
-     * 将int数转换为byte数组类型
-     * @param value
-     * @return
-     */
-    private static byte[] intToByte(int value) {
-        byte[] src = new byte[4];
-        src[0] = (byte) ((value>>24) & 0xFF);
-        src[1] = (byte) ((value>>16)& 0xFF);
-        src[2] = (byte) ((value>>8)&0xFF);
-        src[3] = (byte) (value & 0xFF);
-        return src;
+        if (out.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            buffer = Unpooled.buffer(INITIAL_BUFFER_SIZE);
+        }
     }
 
 }
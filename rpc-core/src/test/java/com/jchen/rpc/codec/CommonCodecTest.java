@@ -0,0 +1,382 @@
+package com.jchen.rpc.codec;
+
+import com.jchen.rpc.entity.RpcRequest;
+import com.jchen.rpc.entity.RpcResponse;
+import com.jchen.rpc.enumeration.PackageType;
+import com.jchen.rpc.enumeration.RpcError;
+import com.jchen.rpc.exception.RpcException;
+import com.jchen.rpc.serializer.CommonSerializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DecoderException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CommonEncoder与CommonDecoder的编解码往返测试，覆盖v2协议、心跳包与批量包，以及拒绝v1协议包
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/19/10:05
+ */
+public class CommonCodecTest {
+
+    private static final int[] SERIALIZER_CODES = {
+            CommonSerializer.KRYO_SERIALIZER, CommonSerializer.JSON_SERIALIZER,
+            CommonSerializer.HESSIAN_SERIALIZER, CommonSerializer.PROTOBUF_SERIALIZER};
+
+    @Test
+    public void requestRoundTripV2() {
+        for (int code : SERIALIZER_CODES) {
+            EmbeddedChannel encoder = encoder(code);
+            ByteBuf frame = encode(encoder, request(42L, "hello"));
+            assertEquals(ProtocolConstants.MAGIC_NUMBER_V2, frame.getShort(0), "serializer " + code);
+            assertEquals(42L, frame.getLong(6), "serializer " + code);
+
+            RpcRequest decoded = decodeOne(new EmbeddedChannel(new CommonDecoder()), frame);
+            assertEquals(42L, decoded.getRequestId().longValue(), "serializer " + code);
+            assertEquals("com.jchen.rpc.api.HelloService", decoded.getInterfaceName());
+            assertEquals("hello", decoded.getMethodName());
+            assertArrayEquals(new Object[]{"hello"}, decoded.getParameters());
+            assertArrayEquals(new Class<?>[]{String.class}, decoded.getParamTypes());
+        }
+    }
+
+    @Test
+    public void responseRoundTripV2() {
+        for (int code : SERIALIZER_CODES) {
+            ByteBuf frame = encode(encoder(code), RpcResponse.success("world", 7L));
+            RpcResponse<?> decoded = decodeOne(new EmbeddedChannel(new CommonDecoder()), frame);
+            assertEquals(7L, decoded.getRequestId().longValue(), "serializer " + code);
+            assertEquals(200, decoded.getStatusCode().intValue());
+            assertEquals("world", decoded.getData());
+        }
+    }
+
+    @Test
+    public void largeBodyRoundTrip() {
+        //超过Kryo写入ByteBuf时暂存区的大小，分多次写入ByteBuf
+        String large = repeat('x', 16 * 1024);
+        for (int code : SERIALIZER_CODES) {
+            CommonSerializer serializer = CommonSerializer.getByCode(code);
+            ByteBuf out = Unpooled.buffer(16);
+            serializer.serialize(RpcResponse.success(large, 1L), out);
+            assertArrayEquals(serializer.serialize(RpcResponse.success(large, 1L)), ByteBufUtil.getBytes(out), "serializer " + code);
+
+            RpcResponse<?> decoded = decodeOne(new EmbeddedChannel(new CommonDecoder()), encode(encoder(code), RpcResponse.success(large, 2L)));
+            assertEquals(large, decoded.getData(), "serializer " + code);
+        }
+    }
+
+    @Test
+    public void bodyDoesNotCarryRequestId() {
+        for (int code : SERIALIZER_CODES) {
+            CommonSerializer serializer = CommonSerializer.getByCode(code);
+            RpcRequest request = (RpcRequest) serializer.deserialize(serializer.serialize(request(42L, "hello")), RpcRequest.class);
+            assertNull(request.getRequestId(), "serializer " + code);
+            assertEquals("hello", request.getParameters()[0]);
+            RpcResponse<?> response = (RpcResponse<?>) serializer.deserialize(serializer.serialize(RpcResponse.success("world", 7L)), RpcResponse.class);
+            assertNull(response.getRequestId(), "serializer " + code);
+            assertEquals("world", response.getData());
+
+            //数据长度与请求号无关
+            int small = encode(encoder(code), request(1L, "hello")).readableBytes();
+            int large = encode(encoder(code), request(Long.MAX_VALUE, "hello")).readableBytes();
+            assertEquals(small, large, "serializer " + code);
+        }
+    }
+
+    @Test
+    public void dropsResponseNobodyAwaitsWithoutDeserializing() {
+        EmbeddedChannel decoder = new EmbeddedChannel(new CommonDecoder(CommonDecoder.DEFAULT_MAX_FRAME_LENGTH, id -> id == 100L));
+        //数据部分被破坏的响应，反序列化会失败
+        ByteBuf late = corruptBody(encode(encoder(CommonSerializer.KRYO_SERIALIZER), RpcResponse.success("late", 99L)));
+        assertFalse(decoder.writeInbound(late));
+        assertNull(decoder.readInbound());
+
+        RpcResponse<?> awaited = decodeOne(decoder, encode(encoder(CommonSerializer.KRYO_SERIALIZER), RpcResponse.success("ok", 100L)));
+        assertEquals(100L, awaited.getRequestId().longValue());
+        assertEquals("ok", awaited.getData());
+
+        //不过滤时同一个数据包反序列化失败
+        EmbeddedChannel unfiltered = new EmbeddedChannel(new CommonDecoder());
+        ByteBuf corrupted = corruptBody(encode(encoder(CommonSerializer.KRYO_SERIALIZER), RpcResponse.success("late", 99L)));
+        assertThrows(DecoderException.class, () -> unfiltered.writeInbound(corrupted));
+    }
+
+    @Test
+    public void filterDoesNotApplyToRequests() {
+        EmbeddedChannel decoder = new EmbeddedChannel(new CommonDecoder(CommonDecoder.DEFAULT_MAX_FRAME_LENGTH, id -> false));
+        RpcRequest decoded = decodeOne(decoder, encode(encoder(CommonSerializer.KRYO_SERIALIZER), request(5L, "request")));
+        assertEquals(5L, decoded.getRequestId().longValue());
+    }
+
+    @Test
+    public void dropsUnawaitedEntriesOfResponseBatch() {
+        List<Object> responses = Arrays.asList(RpcResponse.success("x", 1L), RpcResponse.success("y", 2L), RpcResponse.success("z", 3L));
+        ByteBuf frames = encode(encoder(CommonSerializer.KRYO_SERIALIZER), new RpcBatch(new ArrayList<>(responses), 1024));
+        EmbeddedChannel decoder = new EmbeddedChannel(new CommonDecoder(CommonDecoder.DEFAULT_MAX_FRAME_LENGTH, id -> id != 2L));
+        List<RpcResponse<?>> decoded = decodeAll(decoder, frames);
+        assertEquals(2, decoded.size());
+        assertEquals("x", decoded.get(0).getData());
+        assertEquals(3L, decoded.get(1).getRequestId().longValue());
+    }
+
+    @Test
+    public void heartBeatCarriesNoData() {
+        RpcRequest heartBeat = new RpcRequest();
+        heartBeat.setHeartBeat(true);
+        ByteBuf frame = encode(encoder(CommonSerializer.KRYO_SERIALIZER), heartBeat);
+        assertEquals(ProtocolConstants.HEADER_LENGTH_V2, frame.readableBytes());
+
+        RpcRequest decoded = decodeOne(new EmbeddedChannel(new CommonDecoder()), frame);
+        assertTrue(decoded.getHeartBeat());
+    }
+
+    @Test
+    public void rejectsV1Frame() {
+        EmbeddedChannel decoder = new EmbeddedChannel(new CommonDecoder());
+        DecoderException e = assertThrows(DecoderException.class, () -> decoder.writeInbound(v1Frame()));
+        assertTrue(e.getCause() instanceof RpcException);
+        assertTrue(e.getCause().getMessage().startsWith(RpcError.UNSUPPORTED_PROTOCOL_VERSION.getMessage()));
+    }
+
+    /**
+     * 旧版本客户端发出的v1请求：魔数(4) | 包类型(4) | 序列化器类型(4) | 数据长度(4) | 数据
+     */
+    public static ByteBuf v1Frame() {
+        byte[] data = CommonSerializer.getByCode(CommonSerializer.KRYO_SERIALIZER).serialize(request(3L, "v1"));
+        ByteBuf frame = Unpooled.buffer();
+        frame.writeInt(ProtocolConstants.MAGIC_NUMBER_V1);
+        frame.writeInt(PackageType.REQUEST_PACK.getCode());
+        frame.writeInt(CommonSerializer.KRYO_SERIALIZER);
+        frame.writeInt(data.length);
+        frame.writeBytes(data);
+        return frame;
+    }
+
+    @Test
+    public void decodesFrameDeliveredByteByByte() {
+        ByteBuf frame = encode(encoder(CommonSerializer.KRYO_SERIALIZER), request(9L, "split"));
+        EmbeddedChannel decoder = new EmbeddedChannel(new CommonDecoder());
+        while (frame.readableBytes() > 1) {
+            assertFalse(decoder.writeInbound(frame.readRetainedSlice(1)));
+        }
+        assertTrue(decoder.writeInbound(frame.readRetainedSlice(1)));
+        RpcRequest decoded = decoder.readInbound();
+        assertEquals(9L, decoded.getRequestId().longValue());
+        frame.release();
+    }
+
+    @Test
+    public void rejectsFrameLongerThanLimit() {
+        ByteBuf frame = encode(encoder(CommonSerializer.KRYO_SERIALIZER), request(1L, "long"));
+        EmbeddedChannel decoder = new EmbeddedChannel(new CommonDecoder(ProtocolConstants.HEADER_LENGTH_V2 + 4));
+        DecoderException e = assertThrows(DecoderException.class, () -> decoder.writeInbound(frame));
+        assertTrue(e.getCause() instanceof RpcException);
+    }
+
+    @Test
+    public void rejectsUnknownMagic() {
+        EmbeddedChannel decoder = new EmbeddedChannel(new CommonDecoder());
+        ByteBuf garbage = Unpooled.buffer().writeInt(0x12345678).writeLong(0L);
+        DecoderException e = assertThrows(DecoderException.class, () -> decoder.writeInbound(garbage));
+        assertTrue(e.getCause() instanceof RpcException);
+    }
+
+    @Test
+    public void batchRoundTrip() {
+        for (int code : SERIALIZER_CODES) {
+            List<Object> requests = Arrays.asList(request(1L, "a"), request(2L, "b"), request(3L, "c"));
+            ByteBuf frames = encode(encoder(code), new RpcBatch(new ArrayList<>(requests), BatchConfig.DEFAULT_MAX_BATCH_BYTES));
+            assertEquals(PackageType.BATCH_REQUEST_PACK.getCode(), frames.getByte(3));
+            assertEquals(ProtocolConstants.HEADER_LENGTH_V2 + frames.getInt(ProtocolConstants.LENGTH_FIELD_OFFSET_V2), frames.readableBytes());
+
+            EmbeddedChannel decoder = new EmbeddedChannel(new CommonDecoder());
+            List<RpcRequest> decoded = decodeAll(decoder, frames);
+            assertEquals(3, decoded.size(), "serializer " + code);
+            for (int i = 0; i < 3; i++) {
+                assertEquals(i + 1L, decoded.get(i).getRequestId().longValue());
+                assertEquals(((RpcRequest) requests.get(i)).getParameters()[0], decoded.get(i).getParameters()[0]);
+            }
+            assertTrue(decoder.attr(ProtocolConstants.BATCH_SUPPORTED).get());
+        }
+    }
+
+    @Test
+    public void batchOfResponsesRoundTrip() {
+        List<Object> responses = Arrays.asList(RpcResponse.success("x", 11L), RpcResponse.success("y", 12L));
+        ByteBuf frames = encode(encoder(CommonSerializer.KRYO_SERIALIZER), new RpcBatch(new ArrayList<>(responses), 1024));
+        assertEquals(PackageType.BATCH_RESPONSE_PACK.getCode(), frames.getByte(3));
+
+        List<RpcResponse<?>> decoded = decodeAll(new EmbeddedChannel(new CommonDecoder()), frames);
+        assertEquals(2, decoded.size());
+        assertEquals(11L, decoded.get(0).getRequestId().longValue());
+        assertEquals("y", decoded.get(1).getData());
+    }
+
+    @Test
+    public void batchSplitsIntoSeveralFramesByMaxBytes() {
+        List<Object> requests = new ArrayList<>();
+        for (long i = 0; i < 20; i++) {
+            requests.add(request(i, "message-" + i));
+        }
+        ByteBuf frames = encode(encoder(CommonSerializer.KRYO_SERIALIZER), new RpcBatch(requests, 200));
+        assertTrue(countFrames(frames) > 1);
+
+        List<RpcRequest> decoded = decodeAll(new EmbeddedChannel(new CommonDecoder()), frames);
+        assertEquals(20, decoded.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, decoded.get(i).getRequestId().longValue());
+            assertEquals("message-" + i, decoded.get(i).getParameters()[0]);
+        }
+    }
+
+    @Test
+    public void batchFillsFramesExactlyUpToMaxBytes() {
+        //条数(4) + 每条[请求号(8) + 长度(4) + 数据]，两条恰好放满一个批量包
+        int entryLength = 12 + dataLength(request(0L, "message-0"));
+        int maxBytes = 4 + 2 * entryLength;
+        assertBatchFrames(maxBytes, 2, PackageType.BATCH_REQUEST_PACK);
+        //少一个字节时每个批量包只能放一条
+        assertBatchFrames(maxBytes - 1, 3, PackageType.BATCH_REQUEST_PACK);
+    }
+
+    @Test
+    public void oversizedMessageOfBatchIsEncodedAsPlainFrame() {
+        int maxBytes = 4 + 12 + dataLength(request(0L, "message-0")) - 1;
+        assertBatchFrames(maxBytes, 3, PackageType.REQUEST_PACK);
+    }
+
+    @Test
+    public void oversizedMessageInsideBatchEndsCurrentBatch() {
+        int maxBytes = 4 + 2 * (12 + dataLength(request(0L, "message-0")));
+        List<Object> requests = new ArrayList<>();
+        requests.add(request(0L, "message-0"));
+        requests.add(request(1L, repeat('x', maxBytes)));
+        requests.add(request(2L, "message-2"));
+        ByteBuf frames = encode(encoder(CommonSerializer.KRYO_SERIALIZER), new RpcBatch(requests, maxBytes));
+        assertEquals(3, countFrames(frames));
+        int second = ProtocolConstants.HEADER_LENGTH_V2 + frames.getInt(ProtocolConstants.LENGTH_FIELD_OFFSET_V2);
+        assertEquals(PackageType.BATCH_REQUEST_PACK.getCode(), frames.getByte(3));
+        assertEquals(PackageType.REQUEST_PACK.getCode(), frames.getByte(second + 3));
+        assertEquals(1L, frames.getLong(second + 6));
+
+        List<RpcRequest> decoded = decodeAll(new EmbeddedChannel(new CommonDecoder()), frames);
+        assertEquals(3, decoded.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, decoded.get(i).getRequestId().longValue());
+            assertEquals(((RpcRequest) requests.get(i)).getParameters()[0], decoded.get(i).getParameters()[0]);
+        }
+    }
+
+    /**
+     * 将三条数据长度相同的请求按maxBytes编码，检查协议包的个数、类型与长度，再解码检查内容
+     */
+    private static void assertBatchFrames(int maxBytes, int expectedFrames, PackageType firstType) {
+        List<Object> requests = new ArrayList<>();
+        for (long i = 0; i < 3; i++) {
+            requests.add(request(i, "message-" + i));
+        }
+        ByteBuf frames = encode(encoder(CommonSerializer.KRYO_SERIALIZER), new RpcBatch(requests, maxBytes));
+        assertEquals(expectedFrames, countFrames(frames));
+        assertEquals(firstType.getCode(), frames.getByte(3));
+        for (int index = 0; index < frames.writerIndex(); ) {
+            int length = frames.getInt(index + ProtocolConstants.LENGTH_FIELD_OFFSET_V2);
+            if (frames.getByte(index + 3) == PackageType.BATCH_REQUEST_PACK.getCode()) {
+                assertTrue(length <= maxBytes, "batch length " + length);
+            }
+            index += ProtocolConstants.HEADER_LENGTH_V2 + length;
+        }
+
+        List<RpcRequest> decoded = decodeAll(new EmbeddedChannel(new CommonDecoder()), frames);
+        assertEquals(3, decoded.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, decoded.get(i).getRequestId().longValue());
+            assertEquals("message-" + i, decoded.get(i).getParameters()[0]);
+        }
+    }
+
+    /**
+     * 消息单独编码时数据部分的长度
+     */
+    private static int dataLength(Object msg) {
+        ByteBuf frame = encode(encoder(CommonSerializer.KRYO_SERIALIZER), msg);
+        try {
+            return frame.getInt(ProtocolConstants.LENGTH_FIELD_OFFSET_V2);
+        } finally {
+            frame.release();
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    static RpcRequest request(long requestId, String argument) {
+        return new RpcRequest(requestId, "com.jchen.rpc.api.HelloService", "hello",
+                new Object[]{argument}, new Class<?>[]{String.class}, false);
+    }
+
+    static EmbeddedChannel encoder(int serializerCode) {
+        return new EmbeddedChannel(new CommonEncoder(CommonSerializer.getByCode(serializerCode)));
+    }
+
+    static ByteBuf encode(EmbeddedChannel encoder, Object msg) {
+        assertTrue(encoder.writeOutbound(msg));
+        ByteBuf frame = encoder.readOutbound();
+        assertNull(encoder.readOutbound());
+        return frame;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T decodeOne(EmbeddedChannel decoder, ByteBuf frame) {
+        assertTrue(decoder.writeInbound(frame));
+        T decoded = decoder.readInbound();
+        assertNull(decoder.readInbound());
+        return decoded;
+    }
+
+    static <T> List<T> decodeAll(EmbeddedChannel decoder, ByteBuf frames) {
+        decoder.writeInbound(frames);
+        List<T> decoded = new ArrayList<>();
+        T msg;
+        while ((msg = decoder.readInbound()) != null) {
+            decoded.add(msg);
+        }
+        return decoded;
+    }
+
+    /**
+     * 将v2协议包的数据部分全部改写为0xFF
+     */
+    static ByteBuf corruptBody(ByteBuf frame) {
+        for (int i = ProtocolConstants.HEADER_LENGTH_V2; i < frame.writerIndex(); i++) {
+            frame.setByte(i, 0xFF);
+        }
+        return frame;
+    }
+
+    /**
+     * 按协议头中的长度字段数出缓冲区中v2协议包的个数，并检查每个协议包的长度
+     */
+    static int countFrames(ByteBuf frames) {
+        int count = 0;
+        int index = frames.readerIndex();
+        while (index < frames.writerIndex()) {
+            assertEquals(ProtocolConstants.MAGIC_NUMBER_V2, frames.getShort(index));
+            index += ProtocolConstants.HEADER_LENGTH_V2 + frames.getInt(index + ProtocolConstants.LENGTH_FIELD_OFFSET_V2);
+            count++;
+        }
+        assertEquals(frames.writerIndex(), index);
+        return count;
+    }
+}
@@ -0,0 +1,104 @@
+package com.jchen.rpc.handler;
+
+import com.jchen.rpc.entity.RpcRequest;
+import com.jchen.rpc.enumeration.BlockingQueueType;
+import com.jchen.rpc.enumeration.DispatchMode;
+import com.jchen.rpc.enumeration.RejectionPolicy;
+import com.jchen.rpc.util.MonitoredThreadPoolExecutor;
+import com.jchen.rpc.util.ThreadPoolConfig;
+import com.jchen.rpc.util.ThreadPoolFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RequestDispatcher的线程池选择与拒绝测试
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/20/15:40
+ */
+public class RequestDispatcherTest {
+
+    private static final AtomicInteger poolIds = new AtomicInteger();
+
+    @Test
+    public void rejectsPoolsThatDropOrRunRejectedTasks() {
+        for (RejectionPolicy policy : new RejectionPolicy[]{
+                RejectionPolicy.CALLER_RUNS, RejectionPolicy.DISCARD, RejectionPolicy.DISCARD_OLDEST}) {
+            ExecutorService pool = newPool(policy);
+            try {
+                assertThrows(IllegalArgumentException.class, () -> new RequestDispatcher(DispatchMode.EXECUTOR, pool), policy.name());
+                RequestDispatcher dispatcher = new RequestDispatcher(DispatchMode.DIRECT);
+                assertThrows(IllegalArgumentException.class, () -> dispatcher.bindService("service", pool), policy.name());
+                assertThrows(IllegalArgumentException.class, () -> dispatcher.bindMethod("service", "method", pool), policy.name());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        ThreadPoolExecutor discarding = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(1), new ThreadPoolExecutor.DiscardPolicy());
+        try {
+            assertThrows(IllegalArgumentException.class, () -> new RequestDispatcher(DispatchMode.EXECUTOR, discarding));
+        } finally {
+            discarding.shutdownNow();
+        }
+    }
+
+    @Test
+    public void returnsFalseWhenPoolIsSaturated() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = saturatedPool(release);
+        try {
+            RequestDispatcher dispatcher = new RequestDispatcher(DispatchMode.EXECUTOR, pool);
+            AtomicInteger executed = new AtomicInteger();
+            assertFalse(dispatcher.dispatch(request(), executed::incrementAndGet));
+            assertEquals(1, dispatcher.getRejectedCount());
+
+            release.countDown();
+            CountDownLatch done = new CountDownLatch(1);
+            //队列空出后可以再次提交
+            while (!dispatcher.dispatch(request(), done::countDown)) {
+                Thread.sleep(10);
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(0, executed.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * 一个线程、队列容量为1的线程池，线程与队列都被阻塞在release上的任务占满
+     */
+    public static MonitoredThreadPoolExecutor saturatedPool(CountDownLatch release) {
+        MonitoredThreadPoolExecutor pool = newPool(RejectionPolicy.ABORT);
+        for (int i = 0; i < 2; i++) {
+            pool.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        return pool;
+    }
+
+    private static MonitoredThreadPoolExecutor newPool(RejectionPolicy policy) {
+        ThreadPoolConfig config = new ThreadPoolConfig().setCorePoolSize(1).setMaximumPoolSize(1)
+                .setQueue(BlockingQueueType.ARRAY, 1).setRejectionPolicy(policy);
+        return ThreadPoolFactory.createThreadPool("dispatcher-test-" + poolIds.incrementAndGet(), true, config);
+    }
+
+    private static RpcRequest request() {
+        return new RpcRequest(1L, "com.jchen.rpc.api.HelloService", "hello",
+                new Object[]{"hello"}, new Class<?>[]{String.class}, false);
+    }
+}
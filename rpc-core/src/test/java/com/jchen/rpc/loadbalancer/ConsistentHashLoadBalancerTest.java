@@ -0,0 +1,122 @@
+package com.jchen.rpc.loadbalancer;
+
+import com.alibaba.nacos.api.naming.pojo.Instance;
+import com.jchen.rpc.entity.RpcRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Auther: jchen
+ * @Date: 2021/04/19/11:40
+ */
+public class ConsistentHashLoadBalancerTest {
+
+    @Test
+    public void sameArgumentAlwaysRoutesToSameInstance() {
+        List<Instance> instances = TestInstances.of("consistentHash", 5);
+        ConsistentHashLoadBalancer loadBalancer = new ConsistentHashLoadBalancer();
+        for (int key = 0; key < 100; key++) {
+            Instance first = loadBalancer.select(instances, request("user-" + key));
+            for (int i = 0; i < 5; i++) {
+                assertSame(first, loadBalancer.select(instances, request("user-" + key)));
+            }
+            //另一个负载均衡器实例（另一个客户端）得到同样的结果
+            assertSame(first, new ConsistentHashLoadBalancer().select(instances, request("user-" + key)));
+        }
+    }
+
+    @Test
+    public void spreadsKeysAcrossInstances() {
+        List<Instance> instances = TestInstances.of("consistentHashSpread", 4);
+        ConsistentHashLoadBalancer loadBalancer = new ConsistentHashLoadBalancer();
+        Map<Instance, Integer> counts = new HashMap<>();
+        for (int key = 0; key < 8000; key++) {
+            counts.merge(loadBalancer.select(instances, request("key-" + key)), 1, Integer::sum);
+        }
+        assertEquals(4, counts.size());
+        for (int count : counts.values()) {
+            assertTrue(count > 1400 && count < 2600, "count " + count);
+        }
+    }
+
+    @Test
+    public void removingInstanceOnlyMovesItsOwnKeys() {
+        List<Instance> instances = TestInstances.of("consistentHashRemove", 4);
+        ConsistentHashLoadBalancer loadBalancer = new ConsistentHashLoadBalancer();
+        Map<String, Instance> before = new HashMap<>();
+        for (int key = 0; key < 2000; key++) {
+            before.put("key-" + key, loadBalancer.select(instances, request("key-" + key)));
+        }
+        Instance removed = instances.get(1);
+        List<Instance> remaining = new ArrayList<>(instances);
+        remaining.remove(removed);
+        for (Map.Entry<String, Instance> entry : before.entrySet()) {
+            Instance after = loadBalancer.select(remaining, request(entry.getKey()));
+            if (entry.getValue() != removed) {
+                assertSame(entry.getValue(), after);
+            } else {
+                assertNotSame(removed, after);
+            }
+        }
+    }
+
+    @Test
+    public void routesByBoundArgument() {
+        List<Instance> instances = TestInstances.of("consistentHashBind", 5);
+        ConsistentHashLoadBalancer loadBalancer = new ConsistentHashLoadBalancer();
+        loadBalancer.bindArgument("com.jchen.rpc.api.HelloService", "hello", 1);
+        Instance expected = loadBalancer.select(instances, request("ignored-0", "tenant"));
+        for (int i = 1; i < 50; i++) {
+            assertSame(expected, loadBalancer.select(instances, request("ignored-" + i, "tenant")));
+        }
+    }
+
+    @Test
+    public void routesByMethodWhenArgumentIsMissing() {
+        List<Instance> instances = TestInstances.of("consistentHashNoArgs", 5);
+        ConsistentHashLoadBalancer loadBalancer = new ConsistentHashLoadBalancer();
+        RpcRequest noArgs = new RpcRequest(1L, "com.jchen.rpc.api.HelloService", "ping", new Object[0], new Class<?>[0], false);
+        Instance expected = loadBalancer.select(instances, noArgs);
+        for (int i = 0; i < 20; i++) {
+            assertSame(expected, loadBalancer.select(instances, noArgs));
+        }
+    }
+
+    @Test
+    public void equalArraysRouteToSameInstance() {
+        List<Instance> instances = TestInstances.of("consistentHashArray", 5);
+        ConsistentHashLoadBalancer loadBalancer = new ConsistentHashLoadBalancer();
+        for (int key = 0; key < 50; key++) {
+            Instance expected = loadBalancer.select(instances, request((Object) new int[]{key, 7}));
+            assertSame(expected, loadBalancer.select(instances, request((Object) new int[]{key, 7})));
+            Instance expectedNames = loadBalancer.select(instances, request((Object) new String[]{"a", "b" + key}));
+            assertSame(expectedNames, loadBalancer.select(instances, request((Object) new String[]{"a", "b" + key})));
+        }
+    }
+
+    @Test
+    public void routesByMethodWhenArgumentHasNoValueBasedToString() {
+        List<Instance> instances = TestInstances.of("consistentHashIdentity", 5);
+        ConsistentHashLoadBalancer loadBalancer = new ConsistentHashLoadBalancer();
+        RpcRequest noArgs = new RpcRequest(1L, "com.jchen.rpc.api.HelloService", "hello", new Object[0], new Class<?>[0], false);
+        Instance expected = loadBalancer.select(instances, noArgs);
+        //默认的toString()含有身份哈希码，每个对象都不同，不能用于路由
+        for (int i = 0; i < 50; i++) {
+            assertSame(expected, loadBalancer.select(instances, request(new Object())));
+        }
+    }
+
+    static RpcRequest request(Object... parameters) {
+        Class<?>[] paramTypes = new Class<?>[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            paramTypes[i] = parameters[i].getClass();
+        }
+        return new RpcRequest(1L, "com.jchen.rpc.api.HelloService", "hello", parameters, paramTypes, false);
+    }
+}
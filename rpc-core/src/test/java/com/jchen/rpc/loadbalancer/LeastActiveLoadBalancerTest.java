@@ -0,0 +1,53 @@
+package com.jchen.rpc.loadbalancer;
+
+import com.alibaba.nacos.api.naming.pojo.Instance;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Auther: jchen
+ * @Date: 2021/04/19/11:30
+ */
+public class LeastActiveLoadBalancerTest {
+
+    @Test
+    public void choosesInstanceWithFewestActiveCalls() {
+        List<Instance> instances = TestInstances.of("leastActive", 3);
+        EndpointStats.of(instances.get(0)).begin();
+        EndpointStats.of(instances.get(0)).begin();
+        EndpointStats.of(instances.get(1)).begin();
+        LeastActiveLoadBalancer loadBalancer = new LeastActiveLoadBalancer();
+        for (int i = 0; i < 100; i++) {
+            assertSame(instances.get(2), loadBalancer.select(instances));
+        }
+    }
+
+    @Test
+    public void breaksTiesRandomly() {
+        List<Instance> instances = TestInstances.of("leastActiveTie", 3);
+        EndpointStats.of(instances.get(2)).begin();
+        Map<Instance, Integer> counts = TestInstances.count(new LeastActiveLoadBalancer(), instances, 10000);
+        assertNull(counts.get(instances.get(2)));
+        for (int i = 0; i < 2; i++) {
+            int count = counts.get(instances.get(i));
+            assertTrue(count > 4500 && count < 5500, "count " + count);
+        }
+    }
+
+    @Test
+    public void followsActiveCallsAsTheyFinish() {
+        List<Instance> instances = TestInstances.of("leastActiveEnd", 2);
+        EndpointStats busy = EndpointStats.of(instances.get(0));
+        long start = busy.begin();
+        LeastActiveLoadBalancer loadBalancer = new LeastActiveLoadBalancer();
+        assertSame(instances.get(1), loadBalancer.select(instances));
+        EndpointStats.of(instances.get(1)).begin();
+        EndpointStats.of(instances.get(1)).begin();
+        busy.end(start);
+        assertSame(instances.get(0), loadBalancer.select(instances));
+    }
+}
@@ -0,0 +1,113 @@
+package com.jchen.rpc.loadbalancer;
+
+import com.alibaba.nacos.api.naming.pojo.Instance;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Auther: jchen
+ * @Date: 2021/04/19/11:35
+ */
+public class PeakEwmaLoadBalancerTest {
+
+    @Test
+    public void prefersFasterInstance() {
+        List<Instance> instances = TestInstances.of("peakEwma", 2);
+        observe(instances.get(0), 50);
+        observe(instances.get(1), 1);
+        PeakEwmaLoadBalancer loadBalancer = new PeakEwmaLoadBalancer();
+        for (int i = 0; i < 100; i++) {
+            assertSame(instances.get(1), loadBalancer.select(instances));
+        }
+    }
+
+    @Test
+    public void slowestInstanceIsNeverChosenAmongSeveral() {
+        List<Instance> instances = TestInstances.of("peakEwmaMany", 4);
+        observe(instances.get(0), 1);
+        observe(instances.get(1), 1);
+        observe(instances.get(2), 1);
+        observe(instances.get(3), 100);
+        Map<Instance, Integer> counts = TestInstances.count(new PeakEwmaLoadBalancer(), instances, 3000);
+        //只要慢的实例参与比较就不会被选中，三个快的实例之间按负载的细微差别选择
+        assertNull(counts.get(instances.get(3)));
+        assertEquals(3000, counts.values().stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    public void costRisesToPeakImmediately() {
+        List<Instance> instances = TestInstances.of("peakEwmaPeak", 1);
+        EndpointStats stats = EndpointStats.of(instances.get(0));
+        observe(instances.get(0), 1);
+        observe(instances.get(0), 80);
+        assertTrue(stats.getCost() >= TimeUnit.MILLISECONDS.toNanos(79));
+    }
+
+    @Test
+    public void avoidsUntriedInstanceWithCallsInFlight() {
+        List<Instance> instances = TestInstances.of("peakEwmaPenalty", 2);
+        //还没有收到过响应但已有调用在进行的实例负载最高
+        EndpointStats.of(instances.get(0)).begin();
+        observe(instances.get(1), 500);
+        PeakEwmaLoadBalancer loadBalancer = new PeakEwmaLoadBalancer();
+        for (int i = 0; i < 100; i++) {
+            assertSame(instances.get(1), loadBalancer.select(instances));
+        }
+    }
+
+    @Test
+    public void distinguishesUntriedInstancesByActiveCalls() {
+        List<Instance> instances = TestInstances.of("peakEwmaUntried", 2);
+        for (int i = 0; i < 3; i++) {
+            EndpointStats.of(instances.get(0)).begin();
+        }
+        EndpointStats.of(instances.get(1)).begin();
+        PeakEwmaLoadBalancer loadBalancer = new PeakEwmaLoadBalancer();
+        for (int i = 0; i < 100; i++) {
+            assertSame(instances.get(1), loadBalancer.select(instances));
+        }
+    }
+
+    @Test
+    public void instanceAndAddressShareStats() {
+        Instance instance = TestInstances.of("peakEwmaAddress", 1).get(0);
+        EndpointStats stats = EndpointStats.of(new InetSocketAddress(instance.getIp(), instance.getPort()));
+        assertSame(stats, EndpointStats.of(instance));
+        //注册中心更新后得到的新实例对象仍对应同一份统计
+        Instance copy = new Instance();
+        copy.setIp(instance.getIp());
+        copy.setPort(instance.getPort());
+        assertSame(stats, EndpointStats.of(copy));
+    }
+
+    @Test
+    public void statsOfRemovedInstanceAreReclaimed() throws InterruptedException {
+        Instance instance = TestInstances.of("peakEwmaRemoved", 1).get(0);
+        WeakReference<EndpointStats> stats = new WeakReference<>(EndpointStats.of(instance));
+        //实例随快照被替换，不再被引用
+        instance = null;
+        for (int i = 0; i < 50 && stats.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+            //与负载均衡选择其他实例时一样访问统计表，表在读写时清除已回收实例的条目
+            EndpointStats.of(TestInstances.of("peakEwmaOther", 1).get(0));
+        }
+        assertNull(stats.get());
+    }
+
+    /**
+     * 模拟一次耗时为millis毫秒的调用
+     */
+    static void observe(Instance instance, long millis) {
+        EndpointStats stats = EndpointStats.of(instance);
+        stats.begin();
+        stats.end(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
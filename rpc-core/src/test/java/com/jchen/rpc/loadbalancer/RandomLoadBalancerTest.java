@@ -0,0 +1,27 @@
+package com.jchen.rpc.loadbalancer;
+
+import com.alibaba.nacos.api.naming.pojo.Instance;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Auther: jchen
+ * @Date: 2021/04/19/11:15
+ */
+public class RandomLoadBalancerTest {
+
+    @Test
+    public void spreadsRequestsEvenly() {
+        List<Instance> instances = TestInstances.of("random", 3);
+        Map<Instance, Integer> counts = TestInstances.count(new RandomLoadBalancer(), instances, 30000);
+        assertEquals(3, counts.size());
+        for (Instance instance : instances) {
+            int count = counts.get(instance);
+            assertTrue(count > 9000 && count < 11000, "count " + count);
+        }
+    }
+}
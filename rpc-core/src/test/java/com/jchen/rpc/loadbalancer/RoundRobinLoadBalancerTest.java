@@ -0,0 +1,64 @@
+package com.jchen.rpc.loadbalancer;
+
+import com.alibaba.nacos.api.naming.pojo.Instance;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Auther: jchen
+ * @Date: 2021/04/19/11:20
+ */
+public class RoundRobinLoadBalancerTest {
+
+    @Test
+    public void cyclesThroughInstancesInOrder() {
+        List<Instance> instances = TestInstances.of("roundRobin", 3);
+        RoundRobinLoadBalancer loadBalancer = new RoundRobinLoadBalancer();
+        for (int i = 0; i < 9; i++) {
+            assertSame(instances.get(i % 3), loadBalancer.select(instances));
+        }
+    }
+
+    @Test
+    public void keepsSeparateCounterPerService() {
+        List<Instance> first = TestInstances.of("first", 2);
+        List<Instance> second = TestInstances.of("second", 2);
+        RoundRobinLoadBalancer loadBalancer = new RoundRobinLoadBalancer();
+        assertSame(first.get(0), loadBalancer.select(first));
+        assertSame(second.get(0), loadBalancer.select(second));
+        assertSame(first.get(1), loadBalancer.select(first));
+    }
+
+    @Test
+    public void distributesExactlyUnderConcurrency() throws InterruptedException {
+        List<Instance> instances = TestInstances.of("concurrentRoundRobin", 4);
+        RoundRobinLoadBalancer loadBalancer = new RoundRobinLoadBalancer();
+        Map<Instance, AtomicInteger> counts = new ConcurrentHashMap<>();
+        int threads = 4;
+        int perThread = 10000;
+        CountDownLatch done = new CountDownLatch(threads);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    counts.computeIfAbsent(loadBalancer.select(instances), k -> new AtomicInteger()).incrementAndGet();
+                }
+                done.countDown();
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        done.await();
+        for (Instance instance : instances) {
+            assertEquals(threads * perThread / 4, counts.get(instance).get());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.jchen.rpc.loadbalancer;
+
+import com.alibaba.nacos.api.naming.pojo.Instance;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 负载均衡测试用的实例列表
+ * EndpointStats按地址在所有客户端之间共用，每次生成的实例使用不重复的地址，测试之间互不影响
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/19/11:10
+ */
+class TestInstances {
+
+    private static final AtomicInteger subnet = new AtomicInteger();
+
+    private TestInstances() {
+    }
+
+    static List<Instance> of(String serviceName, double... weights) {
+        int net = subnet.incrementAndGet();
+        List<Instance> instances = new ArrayList<>(weights.length);
+        for (int i = 0; i < weights.length; i++) {
+            Instance instance = new Instance();
+            instance.setServiceName(serviceName);
+            instance.setIp("10." + (net >> 8 & 0xFF) + "." + (net & 0xFF) + "." + (i + 1));
+            instance.setPort(9000);
+            instance.setWeight(weights[i]);
+            instances.add(instance);
+        }
+        return instances;
+    }
+
+    static List<Instance> of(String serviceName, int count) {
+        double[] weights = new double[count];
+        for (int i = 0; i < count; i++) {
+            weights[i] = 1.0;
+        }
+        return of(serviceName, weights);
+    }
+
+    /**
+     * 选择rounds次，统计每个实例被选中的次数
+     */
+    static Map<Instance, Integer> count(LoadBalancer loadBalancer, List<Instance> instances, int rounds) {
+        Map<Instance, Integer> counts = new HashMap<>();
+        for (int i = 0; i < rounds; i++) {
+            counts.merge(loadBalancer.select(instances), 1, Integer::sum);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,71 @@
+package com.jchen.rpc.loadbalancer;
+
+import com.alibaba.nacos.api.naming.pojo.Instance;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Auther: jchen
+ * @Date: 2021/04/19/11:25
+ */
+public class WeightedRoundRobinLoadBalancerTest {
+
+    @Test
+    public void distributesByWeightSmoothly() {
+        List<Instance> instances = TestInstances.of("weighted", 5, 1, 1);
+        WeightedRoundRobinLoadBalancer loadBalancer = new WeightedRoundRobinLoadBalancer();
+        Instance a = instances.get(0);
+        Instance b = instances.get(1);
+        Instance c = instances.get(2);
+        //平滑加权轮询的一轮：a a b a c a a，权重大的实例不会连续被选中多次
+        Instance[] expected = {a, a, b, a, c, a, a};
+        for (int round = 0; round < 3; round++) {
+            for (Instance instance : expected) {
+                assertSame(instance, loadBalancer.select(instances));
+            }
+        }
+    }
+
+    @Test
+    public void countsAreProportionalToWeights() {
+        List<Instance> instances = TestInstances.of("weightedCounts", 3, 2, 0.5);
+        Map<Instance, Integer> counts = TestInstances.count(new WeightedRoundRobinLoadBalancer(), instances, 1100);
+        assertEquals(600, counts.get(instances.get(0)).intValue());
+        assertEquals(400, counts.get(instances.get(1)).intValue());
+        assertEquals(100, counts.get(instances.get(2)).intValue());
+    }
+
+    @Test
+    public void skipsZeroWeightInstances() {
+        List<Instance> instances = TestInstances.of("weightedZero", 1, 0, 1);
+        Map<Instance, Integer> counts = TestInstances.count(new WeightedRoundRobinLoadBalancer(), instances, 100);
+        assertNull(counts.get(instances.get(1)));
+        assertEquals(50, counts.get(instances.get(0)).intValue());
+    }
+
+    @Test
+    public void allZeroWeightsFallBackToRoundRobin() {
+        List<Instance> instances = TestInstances.of("weightedAllZero", 0, 0);
+        Map<Instance, Integer> counts = TestInstances.count(new WeightedRoundRobinLoadBalancer(), instances, 10);
+        assertEquals(5, counts.get(instances.get(0)).intValue());
+        assertEquals(5, counts.get(instances.get(1)).intValue());
+    }
+
+    @Test
+    public void rebuildsScheduleWhenInstanceListChanges() {
+        List<Instance> instances = TestInstances.of("weightedChange", 1, 1);
+        WeightedRoundRobinLoadBalancer loadBalancer = new WeightedRoundRobinLoadBalancer();
+        loadBalancer.select(instances);
+        //新的快照是新的列表对象
+        List<Instance> updated = new ArrayList<>(instances.subList(1, 2));
+        updated.addAll(TestInstances.of("weightedChange", 1));
+        for (int i = 0; i < 10; i++) {
+            assertNotSame(instances.get(0), loadBalancer.select(updated));
+        }
+    }
+}
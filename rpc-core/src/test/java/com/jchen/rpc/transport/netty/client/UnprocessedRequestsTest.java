@@ -0,0 +1,122 @@
+package com.jchen.rpc.transport.netty.client;
+
+import com.jchen.rpc.entity.RpcResponse;
+import com.jchen.rpc.enumeration.RpcError;
+import com.jchen.rpc.exception.RpcException;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * UnprocessedRequests的响应匹配、超时与连接断开测试
+ * 未处理请求表为所有实例共用，每个测试使用不重复的请求号
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/19/10:40
+ */
+public class UnprocessedRequestsTest {
+
+    private static final AtomicLong ids = new AtomicLong(0x7E57_0000_0000L);
+
+    private final UnprocessedRequests unprocessedRequests = new UnprocessedRequests();
+    private EmbeddedChannel channel;
+
+    @BeforeEach
+    public void setUp() {
+        channel = newChannel();
+    }
+
+    @Test
+    public void completesFutureWithMatchingResponse() throws Exception {
+        long requestId = ids.incrementAndGet();
+        CompletableFuture<RpcResponse> future = new CompletableFuture<>();
+        unprocessedRequests.put(requestId, future, channel, 0);
+        assertEquals(1, pending(channel));
+
+        unprocessedRequests.complete(RpcResponse.success("ok", requestId));
+        assertEquals("ok", future.get(1, TimeUnit.SECONDS).getData());
+        assertEquals(0, pending(channel));
+    }
+
+    @Test
+    public void ignoresResponseForUnknownRequest() {
+        CompletableFuture<RpcResponse> future = new CompletableFuture<>();
+        long requestId = ids.incrementAndGet();
+        unprocessedRequests.put(requestId, future, channel, 0);
+
+        unprocessedRequests.complete(RpcResponse.success("late", ids.incrementAndGet()));
+        assertFalse(future.isDone());
+        assertEquals(1, pending(channel));
+        unprocessedRequests.remove(requestId);
+        assertEquals(0, pending(channel));
+    }
+
+    @Test
+    public void failsRequestAfterTimeout() {
+        long requestId = ids.incrementAndGet();
+        CompletableFuture<RpcResponse> future = new CompletableFuture<>();
+        unprocessedRequests.put(requestId, future, channel, 50);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof RpcException);
+        assertTrue(e.getCause().getMessage().startsWith(RpcError.RESPONSE_TIMEOUT.getMessage()));
+        assertEquals(0, pending(channel));
+
+        //超时后到达的响应直接丢弃
+        unprocessedRequests.complete(RpcResponse.success("late", requestId));
+        assertTrue(future.isCompletedExceptionally());
+    }
+
+    @Test
+    public void responseBeforeTimeoutCancelsIt() throws Exception {
+        long requestId = ids.incrementAndGet();
+        CompletableFuture<RpcResponse> future = new CompletableFuture<>();
+        unprocessedRequests.put(requestId, future, channel, 100);
+        unprocessedRequests.complete(RpcResponse.success("ok", requestId));
+
+        Thread.sleep(300);
+        assertEquals("ok", future.get().getData());
+    }
+
+    @Test
+    public void failAllOnlyFailsRequestsOfClosedChannel() {
+        EmbeddedChannel other = newChannel();
+        CompletableFuture<RpcResponse> first = new CompletableFuture<>();
+        CompletableFuture<RpcResponse> second = new CompletableFuture<>();
+        CompletableFuture<RpcResponse> onOther = new CompletableFuture<>();
+        unprocessedRequests.put(ids.incrementAndGet(), first, channel, 0);
+        unprocessedRequests.put(ids.incrementAndGet(), second, channel, 0);
+        long otherId = ids.incrementAndGet();
+        unprocessedRequests.put(otherId, onOther, other, 0);
+
+        unprocessedRequests.failAll(channel);
+        for (CompletableFuture<RpcResponse> future : new CompletableFuture[]{first, second}) {
+            ExecutionException e = assertThrows(ExecutionException.class, future::get);
+            assertTrue(e.getCause().getMessage().startsWith(RpcError.CHANNEL_CLOSED.getMessage()));
+        }
+        assertEquals(0, pending(channel));
+        assertFalse(onOther.isDone());
+        assertEquals(1, pending(other));
+
+        unprocessedRequests.complete(RpcResponse.success("ok", otherId));
+        assertTrue(onOther.isDone());
+    }
+
+    private static EmbeddedChannel newChannel() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.attr(ChannelPool.PENDING_REQUESTS).set(new AtomicInteger());
+        return channel;
+    }
+
+    private static int pending(EmbeddedChannel channel) {
+        return channel.attr(ChannelPool.PENDING_REQUESTS).get().get();
+    }
+}
@@ -0,0 +1,86 @@
+package com.jchen.rpc.transport.netty.server;
+
+import com.jchen.rpc.entity.RpcRequest;
+import com.jchen.rpc.entity.RpcResponse;
+import com.jchen.rpc.enumeration.DispatchMode;
+import com.jchen.rpc.enumeration.ResponseCode;
+import com.jchen.rpc.handler.RequestDispatcher;
+import com.jchen.rpc.handler.RequestDispatcherTest;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * NettyServerHandler写回响应、背压以及线程池已满时返回SERVER_BUSY的测试
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/20/15:10
+ */
+public class NettyServerHandlerTest {
+
+    @Test
+    public void writesResponseWhenChannelIsNotWritable() {
+        EmbeddedChannel channel = newChannel(new RequestDispatcher(DispatchMode.DIRECT));
+        //未flush的数据超过高水位，Channel变为不可写
+        channel.write(Unpooled.wrappedBuffer(new byte[64]));
+        assertFalse(channel.isWritable());
+        assertFalse(channel.config().isAutoRead());
+
+        channel.writeInbound(request(1L));
+        channel.flush();
+        ((ByteBuf) channel.readOutbound()).release();
+        RpcResponse<?> response = channel.readOutbound();
+        assertNotNull(response);
+        assertEquals(1L, response.getRequestId().longValue());
+    }
+
+    @Test
+    public void resumesReadingWhenChannelBecomesWritable() {
+        EmbeddedChannel channel = newChannel(new RequestDispatcher(DispatchMode.DIRECT));
+        channel.write(Unpooled.wrappedBuffer(new byte[64]));
+        assertFalse(channel.config().isAutoRead());
+
+        channel.flush();
+        assertTrue(channel.isWritable());
+        assertTrue(channel.config().isAutoRead());
+        ((ByteBuf) channel.readOutbound()).release();
+    }
+
+    @Test
+    public void answersServerBusyWhenPoolIsSaturated() {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = RequestDispatcherTest.saturatedPool(release);
+        try {
+            EmbeddedChannel channel = newChannel(new RequestDispatcher(DispatchMode.EXECUTOR, pool));
+            channel.writeInbound(request(2L));
+            RpcResponse<?> response = channel.readOutbound();
+            assertNotNull(response);
+            assertEquals(2L, response.getRequestId().longValue());
+            assertEquals(ResponseCode.SERVER_BUSY.getCode(), response.getStatusCode().intValue());
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    static EmbeddedChannel newChannel(RequestDispatcher requestDispatcher) {
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyServerHandler(requestDispatcher));
+        channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(8, 16));
+        return channel;
+    }
+
+    /**
+     * 没有注册的服务，RequestHandler直接返回失败的响应
+     */
+    static RpcRequest request(long requestId) {
+        return new RpcRequest(requestId, "com.jchen.rpc.api.UnknownService", "hello",
+                new Object[]{"hello"}, new Class<?>[]{String.class}, false);
+    }
+}
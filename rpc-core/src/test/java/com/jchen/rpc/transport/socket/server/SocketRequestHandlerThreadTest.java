@@ -0,0 +1,77 @@
+package com.jchen.rpc.transport.socket.server;
+
+import com.jchen.rpc.entity.RpcRequest;
+import com.jchen.rpc.entity.RpcResponse;
+import com.jchen.rpc.enumeration.DispatchMode;
+import com.jchen.rpc.enumeration.ResponseCode;
+import com.jchen.rpc.handler.RequestDispatcher;
+import com.jchen.rpc.handler.RequestDispatcherTest;
+import com.jchen.rpc.handler.RequestHandler;
+import com.jchen.rpc.serializer.CommonSerializer;
+import com.jchen.rpc.transport.socket.util.ObjectReader;
+import com.jchen.rpc.transport.socket.util.ObjectWriter;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SocketRequestHandlerThread在线程池已满时的处理测试
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/20/16:05
+ */
+public class SocketRequestHandlerThreadTest {
+
+    @Test
+    public void answersServerBusyAndReturnsPermit() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = RequestDispatcherTest.saturatedPool(release);
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             Socket client = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+             Socket accepted = serverSocket.accept()) {
+            client.setSoTimeout(5000);
+            //同时执行的请求数上限为1，拒绝时许可没有归还的话第二个请求将一直等待
+            Thread handlerThread = new Thread(new SocketRequestHandlerThread(accepted, new RequestHandler(),
+                    new RequestDispatcher(DispatchMode.EXECUTOR, pool), CommonSerializer.getByCode(CommonSerializer.KRYO_SERIALIZER),
+                    1, () -> { }));
+            handlerThread.setDaemon(true);
+            handlerThread.start();
+            ObjectWriter objectWriter = new ObjectWriter(client.getOutputStream(), CommonSerializer.getByCode(CommonSerializer.KRYO_SERIALIZER));
+            ObjectReader objectReader = new ObjectReader(client.getInputStream());
+
+            objectWriter.writeObject(request(1L));
+            RpcResponse<?> busy = (RpcResponse<?>) objectReader.readObject();
+            assertEquals(1L, busy.getRequestId().longValue());
+            assertEquals(ResponseCode.SERVER_BUSY.getCode(), busy.getStatusCode().intValue());
+
+            objectWriter.writeObject(request(2L));
+            RpcResponse<?> secondBusy = (RpcResponse<?>) objectReader.readObject();
+            assertEquals(2L, secondBusy.getRequestId().longValue());
+            assertEquals(ResponseCode.SERVER_BUSY.getCode(), secondBusy.getStatusCode().intValue());
+
+            //线程池空出后请求被执行，服务未注册，得到的是执行失败而不是繁忙的响应
+            release.countDown();
+            RpcResponse<?> response;
+            long requestId = 3L;
+            do {
+                objectWriter.writeObject(request(requestId));
+                response = (RpcResponse<?>) objectReader.readObject();
+                assertEquals(requestId++, response.getRequestId().longValue());
+            } while (response.getStatusCode() == ResponseCode.SERVER_BUSY.getCode());
+            assertEquals(ResponseCode.CLASS_NOT_FOUND.getCode(), response.getStatusCode().intValue());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static RpcRequest request(long requestId) {
+        return new RpcRequest(requestId, "com.jchen.rpc.api.UnknownService", "hello",
+                new Object[]{"hello"}, new Class<?>[]{String.class}, false);
+    }
+}
@@ -0,0 +1,95 @@
+package com.jchen.rpc.transport.socket.util;
+
+import com.jchen.rpc.codec.CommonCodecTest;
+import com.jchen.rpc.codec.CommonDecoder;
+import com.jchen.rpc.codec.ProtocolConstants;
+import com.jchen.rpc.entity.RpcRequest;
+import com.jchen.rpc.entity.RpcResponse;
+import com.jchen.rpc.enumeration.RpcError;
+import com.jchen.rpc.exception.RpcException;
+import com.jchen.rpc.serializer.CommonSerializer;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DecoderException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Socket方式的ObjectWriter与ObjectReader往返测试
+ *
+ * @Auther: jchen
+ * @Date: 2021/04/19/14:20
+ */
+public class ObjectReaderTest {
+
+    @Test
+    public void roundTripTakesRequestIdFromHeader() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ObjectWriter writer = new ObjectWriter(out, CommonSerializer.getByCode(CommonSerializer.KRYO_SERIALIZER));
+        writer.writeObject(new RpcRequest(8L, "com.jchen.rpc.api.HelloService", "hello", new Object[]{"a"}, new Class<?>[]{String.class}, false));
+        writer.writeObject(RpcResponse.success("b", 9L));
+
+        ObjectReader reader = new ObjectReader(new ByteArrayInputStream(out.toByteArray()));
+        RpcRequest request = (RpcRequest) reader.readObject();
+        assertEquals(8L, request.getRequestId().longValue());
+        assertEquals("a", request.getParameters()[0]);
+        RpcResponse<?> response = (RpcResponse<?>) reader.readObject();
+        assertEquals(9L, response.getRequestId().longValue());
+        assertThrows(EOFException.class, reader::readObject);
+    }
+
+    @Test
+    public void skipsResponseNobodyAwaitsWithoutDeserializing() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ObjectWriter writer = new ObjectWriter(out, CommonSerializer.getByCode(CommonSerializer.KRYO_SERIALIZER));
+        writer.writeObject(RpcResponse.success("first", 1L));
+        int lateStart = out.size();
+        writer.writeObject(RpcResponse.success("late", 2L));
+        int lateEnd = out.size();
+        writer.writeObject(RpcResponse.success("third", 3L));
+        byte[] bytes = out.toByteArray();
+        //破坏被跳过的响应的数据部分
+        for (int i = lateStart + ProtocolConstants.HEADER_LENGTH_V2; i < lateEnd; i++) {
+            bytes[i] = (byte) 0xFF;
+        }
+
+        ObjectReader reader = new ObjectReader(new ByteArrayInputStream(bytes), CommonDecoder.DEFAULT_MAX_FRAME_LENGTH, id -> id != 2L);
+        assertEquals("first", ((RpcResponse<?>) reader.readObject()).getData());
+        RpcResponse<?> third = (RpcResponse<?>) reader.readObject();
+        assertEquals(3L, third.getRequestId().longValue());
+        assertEquals("third", third.getData());
+        assertThrows(EOFException.class, reader::readObject);
+    }
+
+    @Test
+    public void rejectsV1Frame() {
+        byte[] frame = ByteBufUtil.getBytes(CommonCodecTest.v1Frame());
+        ObjectReader reader = new ObjectReader(new ByteArrayInputStream(frame));
+        RpcException e = assertThrows(RpcException.class, reader::readObject);
+        assertTrue(e.getMessage().startsWith(RpcError.UNSUPPORTED_PROTOCOL_VERSION.getMessage()));
+    }
+
+    @Test
+    public void maxFrameLengthCoversHeaderLikeCommonDecoder() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ObjectWriter(out, CommonSerializer.getByCode(CommonSerializer.KRYO_SERIALIZER)).writeObject(RpcResponse.success("limit", 5L));
+        byte[] frame = out.toByteArray();
+
+        assertEquals(5L, ((RpcResponse<?>) new ObjectReader(new ByteArrayInputStream(frame), frame.length).readObject()).getRequestId().longValue());
+        EmbeddedChannel decoder = new EmbeddedChannel(new CommonDecoder(frame.length));
+        assertTrue(decoder.writeInbound(Unpooled.wrappedBuffer(frame)));
+
+        ObjectReader reader = new ObjectReader(new ByteArrayInputStream(frame), frame.length - 1);
+        assertThrows(RpcException.class, reader::readObject);
+        EmbeddedChannel smallDecoder = new EmbeddedChannel(new CommonDecoder(frame.length - 1));
+        DecoderException e = assertThrows(DecoderException.class, () -> smallDecoder.writeInbound(Unpooled.wrappedBuffer(frame)));
+        assertTrue(e.getCause() instanceof RpcException);
+    }
+}